@@ -2,7 +2,6 @@ package elegit;
 
 import elegit.treefx.CellLabel;
 import org.eclipse.jgit.api.errors.GitAPIException;
-import org.eclipse.jgit.lib.BranchTrackingStatus;
 import org.eclipse.jgit.lib.ObjectId;
 
 import java.io.IOException;
@@ -84,7 +83,11 @@ public abstract class BranchHelper extends RefHelper {
         }
     }
 
-    public BranchTrackingStatus getStatus() throws IOException {
-        return BranchTrackingStatus.of(this.repoHelper.repo, this.refName);
+    /**
+     * @return how far this branch is ahead of and behind its upstream branch, or null if it doesn't have one
+     * @throws IOException
+     */
+    public BranchTrackingModel.TrackingStatus getStatus() throws IOException {
+        return this.repoHelper.getBranchModel().getTrackingStatus(this.refName);
     }
 }
@@ -5,7 +5,6 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.jgit.api.*;
 import org.eclipse.jgit.api.errors.*;
-import org.eclipse.jgit.lib.BranchTrackingStatus;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.transport.PushResult;
@@ -32,6 +31,7 @@ public class BranchModel {
     private BranchHelper currentBranch;
     private List<LocalBranchHelper> localBranchesTyped;
     private List<RemoteBranchHelper> remoteBranchesTyped;
+    private BranchTrackingModel trackingModel;
 
     static final Logger logger = LogManager.getLogger();
 
@@ -44,6 +44,7 @@ public class BranchModel {
      */
     public BranchModel(RepoHelper repoHelper) throws GitAPIException, IOException {
         this.repoHelper = repoHelper;
+        this.trackingModel = new BranchTrackingModel(repoHelper);
         this.updateAllBranches();
     }
 
@@ -281,6 +282,16 @@ public class BranchModel {
      */
     public BranchHelper getCurrentBranch() { return this.currentBranch; }
 
+    /**
+     * @param branchName the name of a local branch
+     * @return how far the branch is ahead of and behind its upstream branch, or null if it
+     * doesn't have one. Kept until either branch moves
+     * @throws IOException
+     */
+    public BranchTrackingModel.TrackingStatus getTrackingStatus(String branchName) throws IOException {
+        return this.trackingModel.getStatus(branchName);
+    }
+
     /**
      * Getter for the current remote branch head
      * @return the head of the current remote branch (if one exists)
@@ -295,19 +306,17 @@ public class BranchModel {
     }
 
     public String getCurrentRemoteBranch() throws IOException {
-        if (BranchTrackingStatus.of(this.repoHelper.repo, this.currentBranch.getRefName())!=null) {
-            return Repository.shortenRefName(
-                    BranchTrackingStatus.of(this.repoHelper.repo, this.currentBranch.getRefName())
-                            .getRemoteTrackingBranch());
+        BranchTrackingModel.TrackingStatus status = this.getTrackingStatus(this.currentBranch.getRefName());
+        if (status != null) {
+            return Repository.shortenRefName(status.getRemoteTrackingBranch());
         }
         return null;
     }
 
     public String getCurrentRemoteAbbrevBranch() throws IOException {
-        if (BranchTrackingStatus.of(this.repoHelper.repo, this.currentBranch.getRefName())!=null) {
-            String name =  Repository.shortenRefName(
-                    BranchTrackingStatus.of(this.repoHelper.repo, this.currentBranch.getRefName())
-                            .getRemoteTrackingBranch());
+        BranchTrackingModel.TrackingStatus status = this.getTrackingStatus(this.currentBranch.getRefName());
+        if (status != null) {
+            String name =  Repository.shortenRefName(status.getRemoteTrackingBranch());
             if (name.length() > CellLabel.MAX_CHAR_PER_LABEL) {
                 name = name.substring(0,24)+"...";
             }
@@ -440,7 +449,7 @@ public class BranchModel {
             return false;
         try {
             // If the branch is the local's remote tracking branch, it is current
-            BranchTrackingStatus status = BranchTrackingStatus.of(this.repoHelper.repo, this.currentBranch.getRefName());
+            BranchTrackingModel.TrackingStatus status = this.getTrackingStatus(this.currentBranch.getRefName());
             if (branch instanceof RemoteBranchHelper && status != null && this.repoHelper.repo.shortenRefName(
                     status.getRemoteTrackingBranch()).equals(branch.getRefName())) {
                 return true;
@@ -0,0 +1,212 @@
+package elegit;
+
+import org.eclipse.jgit.lib.BranchConfig;
+import org.eclipse.jgit.lib.BranchTrackingStatus;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of how far each local branch is ahead of and behind its upstream branch.
+ *
+ * Whenever a status is asked for and some tracked branch moved, the counts for every tracked
+ * branch that moved are worked out together in one pass over the commit graph, instead of one
+ * merge base walk per branch. Each status is kept until its local or upstream tip moves.
+ */
+public class BranchTrackingModel {
+
+    // Two bits per branch, local then upstream, so a word holds this many branches
+    private static final int BRANCHES_PER_PASS = 32;
+    private static final long LOCAL_BITS = 0x5555555555555555L;
+
+    private final RepoHelper repoHelper;
+
+    // The last status worked out for each tracked local branch, keyed by short name
+    private final Map<String, TrackingStatus> statuses;
+
+    /**
+     * @param repoHelper the repository whose branches to keep track of
+     */
+    public BranchTrackingModel(RepoHelper repoHelper) {
+        this.repoHelper = repoHelper;
+        this.statuses = new HashMap<>();
+    }
+
+    /**
+     * @param branchName the name of a local branch, short or full
+     * @return the tracking status of the branch, or null if it doesn't have an upstream branch
+     * @throws IOException
+     */
+    public synchronized TrackingStatus getStatus(String branchName) throws IOException {
+        String shortName = Repository.shortenRefName(branchName);
+        TrackingStatus current = this.readTips(shortName);
+        if (current == null) {
+            this.statuses.remove(shortName);
+            return null;
+        }
+
+        TrackingStatus cached = this.statuses.get(shortName);
+        if (cached == null || !cached.hasSameTips(current)) {
+            this.updateStatuses();
+            cached = this.statuses.get(shortName);
+        }
+        return cached;
+    }
+
+    /**
+     * Recounts every tracked local branch whose local or upstream tip moved since it was last counted
+     */
+    private void updateStatuses() throws IOException {
+        Map<String, Ref> localRefs = this.repoHelper.getRepo().getRefDatabase().getRefs(Constants.R_HEADS);
+
+        List<TrackingStatus> moved = new ArrayList<>();
+        Map<String, TrackingStatus> newStatuses = new HashMap<>();
+        for (String shortName : localRefs.keySet()) {
+            TrackingStatus current = this.readTips(shortName);
+            if (current == null) continue;
+
+            TrackingStatus cached = this.statuses.get(shortName);
+            if (cached != null && cached.hasSameTips(current)) {
+                newStatuses.put(shortName, cached);
+            } else {
+                moved.add(current);
+                newStatuses.put(shortName, current);
+            }
+        }
+
+        this.count(moved);
+        this.statuses.clear();
+        this.statuses.putAll(newStatuses);
+    }
+
+    /**
+     * Fills in the ahead and behind counts of the given statuses. A commit counts as ahead if it
+     * can be reached from the local tip but not the upstream tip, and as behind the other way round.
+     *
+     * The graph lists parents before children, so going through it backwards and handing each
+     * commit's marks on to its parents marks everything reachable from each tip in a single pass.
+     */
+    private void count(List<TrackingStatus> toCount) throws IOException {
+        CommitGraph graph = this.repoHelper.getCommitGraph();
+
+        List<TrackingStatus> inGraph = new ArrayList<>();
+        for (TrackingStatus status : toCount) {
+            if (this.repoHelper.getCommit(status.localTip) != null && this.repoHelper.getCommit(status.upstreamTip) != null) {
+                inGraph.add(status);
+            } else {
+                // A tip moved since the graph was last updated, so JGit has to walk it
+                BranchTrackingStatus jgitStatus = BranchTrackingStatus.of(this.repoHelper.getRepo(), status.localBranch);
+                if (jgitStatus != null) {
+                    status.aheadCount = jgitStatus.getAheadCount();
+                    status.behindCount = jgitStatus.getBehindCount();
+                }
+            }
+        }
+
+        for (int start = 0; start < inGraph.size(); start += BRANCHES_PER_PASS) {
+            List<TrackingStatus> pass = inGraph.subList(start, Math.min(start + BRANCHES_PER_PASS, inGraph.size()));
+
+            long[] marks = new long[graph.size()];
+            int highest = -1;
+            for (int k = 0; k < pass.size(); k++) {
+                int localIndex = this.repoHelper.getCommit(pass.get(k).localTip).getIndex();
+                int upstreamIndex = this.repoHelper.getCommit(pass.get(k).upstreamTip).getIndex();
+                marks[localIndex] |= 1L << (2 * k);
+                marks[upstreamIndex] |= 1L << (2 * k + 1);
+                highest = Math.max(highest, Math.max(localIndex, upstreamIndex));
+            }
+
+            int[] ahead = new int[pass.size()];
+            int[] behind = new int[pass.size()];
+            for (int i = highest; i >= 0; i--) {
+                long mark = marks[i];
+                if (mark == 0) continue;
+                for (int n = 0; n < graph.getParentCount(i); n++) {
+                    marks[graph.getParent(i, n)] |= mark;
+                }
+
+                for (long bits = mark & ~(mark >>> 1) & LOCAL_BITS; bits != 0; bits &= bits - 1) {
+                    ahead[Long.numberOfTrailingZeros(bits) / 2]++;
+                }
+                for (long bits = (mark >>> 1) & ~mark & LOCAL_BITS; bits != 0; bits &= bits - 1) {
+                    behind[Long.numberOfTrailingZeros(bits) / 2]++;
+                }
+            }
+
+            for (int k = 0; k < pass.size(); k++) {
+                pass.get(k).aheadCount = ahead[k];
+                pass.get(k).behindCount = behind[k];
+            }
+        }
+    }
+
+    /**
+     * @param shortName the short name of a local branch
+     * @return a status with the current tips of the branch and its upstream branch, but no counts
+     * yet, or null if it doesn't have an upstream branch
+     */
+    private TrackingStatus readTips(String shortName) throws IOException {
+        Repository repo = this.repoHelper.getRepo();
+        String upstreamBranch = new BranchConfig(repo.getConfig(), shortName).getTrackingBranch();
+        if (upstreamBranch == null) return null;
+
+        Ref localRef = repo.exactRef(Constants.R_HEADS + shortName);
+        Ref upstreamRef = repo.exactRef(upstreamBranch);
+        if (localRef == null || upstreamRef == null || localRef.getObjectId() == null || upstreamRef.getObjectId() == null) {
+            return null;
+        }
+        return new TrackingStatus(shortName, upstreamBranch, localRef.getObjectId(), upstreamRef.getObjectId());
+    }
+
+    /**
+     * How far a local branch is ahead of and behind its upstream branch, as of the given tips
+     */
+    public static class TrackingStatus {
+        private final String localBranch;
+        private final String remoteTrackingBranch;
+        private final ObjectId localTip;
+        private final ObjectId upstreamTip;
+        private int aheadCount;
+        private int behindCount;
+
+        TrackingStatus(String localBranch, String remoteTrackingBranch, ObjectId localTip, ObjectId upstreamTip) {
+            this.localBranch = localBranch;
+            this.remoteTrackingBranch = remoteTrackingBranch;
+            this.localTip = localTip;
+            this.upstreamTip = upstreamTip;
+        }
+
+        /**
+         * @return the full name of the upstream branch, e.g. 'refs/remotes/origin/master'
+         */
+        public String getRemoteTrackingBranch() {
+            return this.remoteTrackingBranch;
+        }
+
+        /**
+         * @return the number of commits on the local branch that aren't on the upstream branch
+         */
+        public int getAheadCount() {
+            return this.aheadCount;
+        }
+
+        /**
+         * @return the number of commits on the upstream branch that aren't on the local branch
+         */
+        public int getBehindCount() {
+            return this.behindCount;
+        }
+
+        private boolean hasSameTips(TrackingStatus other) {
+            return this.remoteTrackingBranch.equals(other.remoteTrackingBranch)
+                    && this.localTip.equals(other.localTip) && this.upstreamTip.equals(other.upstreamTip);
+        }
+    }
+}
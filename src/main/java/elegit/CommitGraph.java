@@ -0,0 +1,408 @@
+package elegit;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectIdOwnerMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The commit graph of a repository, stored in flat arrays instead of as linked objects.
+ * Each commit gets an int index when it is added, and commits must be added parents first,
+ * so a commit's parents always have lower indices than it does.
+ *
+ * The parents and children of every commit are kept in compressed sparse row form: the
+ * parents of commit i are parents[parentStart[i]] up to parents[parentStart[i+1]], and the
+ * same goes for children. Parents only ever get appended, but a new commit adds a child to
+ * older ones, so the children arrays are rebuilt from the parents the next time they're read.
+ *
+ * Which commits are reachable from a local ref and which from a remote ref is kept in two
+ * bitsets over the same indices, so a commit's type is a constant time lookup.
+ *
+ * Every commit also gets a generation number, one more than the highest of its parents'. An
+ * ancestor always has both a lower index and a lower generation than its descendants, which
+ * lets ancestry queries skip every commit that can't be on a path between the two.
+ *
+ * The CommitHelpers handed out are views onto this graph, and their indices are only stable
+ * until the next call to retain.
+ */
+public class CommitGraph {
+
+    private int size;
+    // Counts the changes to which commits are in the graph, so walks can tell they're out of date
+    private int modCount;
+
+    private CommitHelper[] commits;
+    private long[] times;
+    private int[] generations;
+
+    private int[] parentStart;
+    private int[] parents;
+
+    private int[] childStart;
+    private int[] children;
+    private boolean childrenStale;
+
+    private ObjectIdOwnerMap<CommitHelper> ids;
+
+    // The commits reachable from a local ref and from a remote ref, by index
+    private BitSet local;
+    private BitSet remote;
+
+    // The repository the commits are parsed from when their details are needed
+    private final RepoHelper repoHelper;
+
+    /**
+     * @param repoHelper the repoHelper with the repository necessary to parse the commits
+     */
+    public CommitGraph(RepoHelper repoHelper) {
+        this.repoHelper = repoHelper;
+        this.commits = new CommitHelper[16];
+        this.times = new long[16];
+        this.generations = new int[16];
+        this.parentStart = new int[17];
+        this.parents = new int[16];
+        this.childStart = new int[1];
+        this.children = new int[0];
+        this.ids = new ObjectIdOwnerMap<>();
+        this.local = new BitSet();
+        this.remote = new BitSet();
+    }
+
+    /**
+     * @return the number of commits in the graph
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return a number that changes every time commits are added to or dropped from the graph
+     */
+    public int getModCount() {
+        return this.modCount;
+    }
+
+    /**
+     * @param index the index of a commit in the graph
+     * @return the commit with the given index
+     */
+    public CommitHelper get(int index) {
+        return this.commits[index];
+    }
+
+    /**
+     * @param id the id of a commit
+     * @return the commit with the given id, or null if it isn't in the graph
+     */
+    public CommitHelper get(AnyObjectId id) {
+        return this.ids.get(id);
+    }
+
+    /**
+     * @param index the index of a commit in the graph
+     * @return the time the commit was authored, in milliseconds
+     */
+    public long getTime(int index) {
+        return this.times[index];
+    }
+
+    /**
+     * @param index the index of a commit in the graph
+     * @return the length of the longest path from the commit to a root, plus one
+     */
+    public int getGeneration(int index) {
+        return this.generations[index];
+    }
+
+    /**
+     * @param index the index of a commit in the graph
+     * @return how many parents the commit has in the graph
+     */
+    public int getParentCount(int index) {
+        return this.parentStart[index + 1] - this.parentStart[index];
+    }
+
+    /**
+     * @param index the index of a commit in the graph
+     * @param n which of the commit's parents to get
+     * @return the index of the commit's nth parent
+     */
+    public int getParent(int index, int n) {
+        return this.parents[this.parentStart[index] + n];
+    }
+
+    /**
+     * @param index the index of a commit in the graph
+     * @return how many children the commit has in the graph
+     */
+    public int getChildCount(int index) {
+        this.updateChildren();
+        return this.childStart[index + 1] - this.childStart[index];
+    }
+
+    /**
+     * @param index the index of a commit in the graph
+     * @param n which of the commit's children to get
+     * @return the index of the commit's nth child
+     */
+    public int getChild(int index, int n) {
+        this.updateChildren();
+        return this.children[this.childStart[index] + n];
+    }
+
+    /**
+     * @param index the index of a commit in the graph
+     * @return true if the commit is reachable from a local ref
+     */
+    public boolean isLocal(int index) {
+        return this.local.get(index);
+    }
+
+    /**
+     * @param index the index of a commit in the graph
+     * @return true if the commit is reachable from a remote ref
+     */
+    public boolean isRemote(int index) {
+        return this.remote.get(index);
+    }
+
+    /**
+     * @return a copy of the indices of the commits reachable from a local ref
+     */
+    public BitSet getLocal() {
+        return (BitSet) this.local.clone();
+    }
+
+    /**
+     * @return a copy of the indices of the commits reachable from a remote ref
+     */
+    public BitSet getRemote() {
+        return (BitSet) this.remote.clone();
+    }
+
+    /**
+     * Sets which commits are reachable from the local and the remote refs. The graph
+     * keeps the given bitsets, so they shouldn't be changed afterwards
+     *
+     * @param local the indices of the commits reachable from a local ref
+     * @param remote the indices of the commits reachable from a remote ref
+     */
+    public void setReachable(BitSet local, BitSet remote) {
+        this.local = local;
+        this.remote = remote;
+    }
+
+    /**
+     * Checks whether one commit is an ancestor of another, within the given number of generations
+     *
+     * @param ancestor the index of the possible ancestor
+     * @param descendant the index of the possible descendant
+     * @param depth how many generations apart the two can be at most, or zero or less for any number
+     * @return true if descendant can be reached from ancestor by following child links
+     */
+    public boolean isAncestor(int ancestor, int descendant, int depth) {
+        if (ancestor >= descendant || this.generations[ancestor] >= this.generations[descendant]) {
+            return false;
+        }
+
+        // Goes up from the descendant a generation at a time. Anything with a lower index or
+        // generation than the ancestor is either the ancestor or can't lead to it
+        BitSet seen = new BitSet(descendant);
+        int[] level = {descendant};
+        int levelSize = 1;
+        for (int distance = 1; levelSize > 0 && (depth <= 0 || distance <= depth); distance++) {
+            int[] nextLevel = new int[Math.max(8, levelSize * 2)];
+            int nextLevelSize = 0;
+            for (int i = 0; i < levelSize; i++) {
+                for (int j = this.parentStart[level[i]]; j < this.parentStart[level[i] + 1]; j++) {
+                    int parent = this.parents[j];
+                    if (parent == ancestor) return true;
+                    if (parent < ancestor || this.generations[parent] <= this.generations[ancestor]
+                            || seen.get(parent)) continue;
+                    seen.set(parent);
+                    if (nextLevelSize == nextLevel.length) {
+                        nextLevel = Arrays.copyOf(nextLevel, nextLevelSize * 2);
+                    }
+                    nextLevel[nextLevelSize++] = parent;
+                }
+            }
+            level = nextLevel;
+            levelSize = nextLevelSize;
+        }
+        return false;
+    }
+
+    /**
+     * @param index the index of a commit in the graph
+     * @param allGenerations whether to include grandparents and further back, or just the parents
+     * @return the indices of the commit's ancestors, not including the commit itself
+     */
+    public BitSet getAncestors(int index, boolean allGenerations) {
+        return this.getRelatives(index, allGenerations, true);
+    }
+
+    /**
+     * @param index the index of a commit in the graph
+     * @param allGenerations whether to include grandchildren and further on, or just the children
+     * @return the indices of the commit's descendants, not including the commit itself
+     */
+    public BitSet getDescendants(int index, boolean allGenerations) {
+        this.updateChildren();
+        return this.getRelatives(index, allGenerations, false);
+    }
+
+    /**
+     * Finds the relatives of a commit in one direction, visiting each at most once
+     */
+    private BitSet getRelatives(int index, boolean allGenerations, boolean ancestors) {
+        int[] start = ancestors ? this.parentStart : this.childStart;
+        int[] links = ancestors ? this.parents : this.children;
+
+        BitSet relatives = new BitSet(this.size);
+        int[] stack = new int[Math.max(1, this.size)];
+        int stackSize = 0;
+        stack[stackSize++] = index;
+        while (stackSize > 0) {
+            int cur = stack[--stackSize];
+            for (int j = start[cur]; j < start[cur + 1]; j++) {
+                int relative = links[j];
+                if (relatives.get(relative)) continue;
+                relatives.set(relative);
+                if (allGenerations) stack[stackSize++] = relative;
+            }
+        }
+        return relatives;
+    }
+
+    /**
+     * Adds a commit to the graph, without parsing it. Its parents have to be in the graph already
+     *
+     * @param id the id of the commit to add
+     * @param time the time the commit was authored, in milliseconds
+     * @param parentIndices the indices of the commit's parents
+     * @return the new commit
+     */
+    public CommitHelper add(AnyObjectId id, long time, int[] parentIndices) {
+        if (this.size == this.commits.length) {
+            int capacity = this.size * 2;
+            this.commits = Arrays.copyOf(this.commits, capacity);
+            this.times = Arrays.copyOf(this.times, capacity);
+            this.generations = Arrays.copyOf(this.generations, capacity);
+            this.parentStart = Arrays.copyOf(this.parentStart, capacity + 1);
+        }
+        int parentEnd = this.parentStart[this.size] + parentIndices.length;
+        if (parentEnd > this.parents.length) {
+            this.parents = Arrays.copyOf(this.parents, Math.max(parentEnd, this.parents.length * 2));
+        }
+        System.arraycopy(parentIndices, 0, this.parents, this.parentStart[this.size], parentIndices.length);
+        this.parentStart[this.size + 1] = parentEnd;
+
+        int generation = 1;
+        for (int parent : parentIndices) {
+            generation = Math.max(generation, this.generations[parent] + 1);
+        }
+        this.generations[this.size] = generation;
+
+        CommitHelper commit = new CommitHelper(id, this, this.size, this.repoHelper);
+        this.commits[this.size] = commit;
+        this.times[this.size] = time;
+        this.ids.add(commit);
+        this.size++;
+        this.modCount++;
+        this.childrenStale = true;
+        return commit;
+    }
+
+    /**
+     * Drops every commit that isn't marked from the graph and compacts the rest, which keeps
+     * their order but changes their indices. The parents of every marked commit must be marked.
+     *
+     * @param keep the indices of the commits to keep
+     * @return the commits that were dropped, which are no longer views onto this graph
+     */
+    public List<CommitHelper> retain(BitSet keep) {
+        List<CommitHelper> dropped = new ArrayList<>();
+        if (keep.cardinality() == this.size) {
+            return dropped;
+        }
+
+        int[] newIndices = new int[this.size];
+        int newSize = 0;
+        int newParentEnd = 0;
+        BitSet newLocal = new BitSet(keep.cardinality());
+        BitSet newRemote = new BitSet(keep.cardinality());
+        // ObjectIdOwnerMap can't remove entries, so the commits that stay go into a fresh one
+        ObjectIdOwnerMap<CommitHelper> newIds = new ObjectIdOwnerMap<>();
+        for (int i = 0; i < this.size; i++) {
+            CommitHelper commit = this.commits[i];
+            if (!keep.get(i)) {
+                newIndices[i] = -1;
+                commit.setGraph(null, -1);
+                dropped.add(commit);
+                continue;
+            }
+            newIndices[i] = newSize;
+
+            // Compacting in place is safe since nothing moves to a higher index
+            int start = this.parentStart[i];
+            int end = this.parentStart[i + 1];
+            this.parentStart[newSize] = newParentEnd;
+            for (int j = start; j < end; j++) {
+                int newParent = newIndices[this.parents[j]];
+                if (newParent >= 0) this.parents[newParentEnd++] = newParent;
+            }
+            this.commits[newSize] = commit;
+            this.times[newSize] = this.times[i];
+            // Every parent of a kept commit is kept, so its generation doesn't change
+            this.generations[newSize] = this.generations[i];
+            if (this.local.get(i)) newLocal.set(newSize);
+            if (this.remote.get(i)) newRemote.set(newSize);
+            commit.setGraph(this, newSize);
+            newIds.add(commit);
+            newSize++;
+        }
+        this.parentStart[newSize] = newParentEnd;
+        Arrays.fill(this.commits, newSize, this.size, null);
+
+        this.size = newSize;
+        this.ids = newIds;
+        this.local = newLocal;
+        this.remote = newRemote;
+        this.modCount++;
+        this.childrenStale = true;
+        return dropped;
+    }
+
+    /**
+     * Rebuilds the children arrays from the parent arrays if commits were added or
+     * dropped since they were last built
+     */
+    private void updateChildren() {
+        if (!this.childrenStale) return;
+
+        int[] newChildStart = new int[this.size + 1];
+        int parentEnd = this.parentStart[this.size];
+        for (int j = 0; j < parentEnd; j++) {
+            newChildStart[this.parents[j] + 1]++;
+        }
+        for (int i = 0; i < this.size; i++) {
+            newChildStart[i + 1] += newChildStart[i];
+        }
+
+        // Going through the children in order keeps each commit's children in order too
+        int[] newChildren = new int[parentEnd];
+        int[] next = Arrays.copyOf(newChildStart, this.size);
+        for (int i = 0; i < this.size; i++) {
+            for (int j = this.parentStart[i]; j < this.parentStart[i + 1]; j++) {
+                newChildren[next[this.parents[j]]++] = i;
+            }
+        }
+
+        this.childStart = newChildStart;
+        this.children = newChildren;
+        this.childrenStale = false;
+    }
+}
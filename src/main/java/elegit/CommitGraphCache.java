@@ -0,0 +1,322 @@
+package elegit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdOwnerMap;
+import org.eclipse.jgit.lib.Repository;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * A compact on-disk copy of a repository's commit graph, so that reopening a repository
+ * doesn't have to walk and parse its whole history again. It lives in the 'elegit' folder
+ * of the repository's .git directory and is made of two files:
+ *
+ * 'commits' holds one record per commit, parents before children: the commit id, its time,
+ * and the indices of its parents among the earlier records. New commits are appended to it,
+ * and it is only rewritten when commits have to be dropped.
+ *
+ * 'refs' holds the local and remote ref tips the graph was built from, and which commits
+ * are reachable from the local and the remote refs. It is small and rewritten on every save.
+ *
+ * Anything that can't be read back exactly as it was written is treated as no cache at all.
+ */
+public class CommitGraphCache {
+
+    // Every file starts with these, followed by the stamp of the commits file
+    private static final int MAGIC = 0x45474347;
+    private static final int VERSION = 1;
+
+    // magic, version and stamp
+    private static final int COMMITS_HEADER_LENGTH = 4 + 4 + 8;
+
+    private final File commitsFile;
+    private final File refsFile;
+
+    // The index of every commit in the commits file, valid once the cache is loaded or saved
+    private ObjectIdOwnerMap<IndexedCommit> indices;
+    private int commitCount;
+    // Identifies one version of the commits file, so a refs file is never read against another
+    private long stamp;
+    // Where the last known good record ends; anything past it is from an interrupted save
+    private long commitsLength;
+
+    static final Logger logger = LogManager.getLogger();
+
+    /**
+     * @param repo the repository to cache the commit graph of
+     */
+    public CommitGraphCache(Repository repo) {
+        File cacheDirectory = new File(repo.getDirectory(), "elegit");
+        this.commitsFile = new File(cacheDirectory, "commits");
+        this.refsFile = new File(cacheDirectory, "refs");
+        this.indices = new ObjectIdOwnerMap<>();
+    }
+
+    /**
+     * Reads the cached commit graph from disk
+     *
+     * @return the cached graph, or null if there is no usable cache
+     */
+    public Contents load() {
+        if (!commitsFile.isFile() || !refsFile.isFile()) {
+            return null;
+        }
+        try (DataInputStream refsIn = open(refsFile); DataInputStream commitsIn = open(commitsFile)) {
+            long refsStamp = readHeader(refsIn);
+            if (readHeader(commitsIn) != refsStamp) {
+                return null;
+            }
+            int count = refsIn.readInt();
+            Map<String, ObjectId> localRefTips = readRefTips(refsIn);
+            Map<String, ObjectId> remoteRefTips = readRefTips(refsIn);
+            BitSet local = readBits(refsIn);
+            BitSet remote = readBits(refsIn);
+
+            ObjectIdOwnerMap<IndexedCommit> newIndices = new ObjectIdOwnerMap<>();
+            List<ObjectId> ids = new ArrayList<>(count);
+            long[] times = new long[count];
+            int[][] parents = new int[count][];
+            long length = COMMITS_HEADER_LENGTH;
+            byte[] rawId = new byte[Constants.OBJECT_ID_LENGTH];
+            for (int i = 0; i < count; i++) {
+                commitsIn.readFully(rawId);
+                IndexedCommit indexedCommit = new IndexedCommit(ObjectId.fromRaw(rawId), i);
+                newIndices.add(indexedCommit);
+                ids.add(indexedCommit);
+                times[i] = commitsIn.readLong();
+                parents[i] = new int[commitsIn.readUnsignedShort()];
+                for (int j = 0; j < parents[i].length; j++) {
+                    parents[i][j] = commitsIn.readInt();
+                    if (parents[i][j] < 0 || parents[i][j] >= i) {
+                        return null;
+                    }
+                }
+                length += Constants.OBJECT_ID_LENGTH + 8 + 2 + 4 * parents[i].length;
+            }
+
+            this.indices = newIndices;
+            this.commitCount = count;
+            this.stamp = refsStamp;
+            this.commitsLength = length;
+            return new Contents(ids, times, parents, local, remote, localRefTips, remoteRefTips);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Couldn't read the commit graph cache, ignoring it");
+            logger.debug(e.getStackTrace());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the given commit graph to disk. Commits that are already in the cache are left
+     * where they are and new ones are appended, unless some cached commit isn't in the graph
+     * anymore, in which case the whole cache is rewritten
+     *
+     * @param localCommits the commits reachable from a local ref, parents before children
+     * @param remoteCommits the commits reachable from a remote ref, parents before children
+     * @param localRefTips the ids of the local refs, keyed by full ref name
+     * @param remoteRefTips the ids of the remote refs, keyed by full ref name
+     * @throws IOException
+     */
+    public void save(List<CommitHelper> localCommits, List<CommitHelper> remoteCommits,
+                     Map<String, ObjectId> localRefTips, Map<String, ObjectId> remoteRefTips) throws IOException {
+        try {
+            commitsFile.getParentFile().mkdirs();
+
+            boolean append = commitsFile.isFile() && this.stamp != 0 && countIndexed(localCommits, remoteCommits) == this.commitCount;
+            if (!append) {
+                this.indices = new ObjectIdOwnerMap<>();
+                this.commitCount = 0;
+                this.stamp = new Random().nextLong() | 1;
+                this.commitsLength = COMMITS_HEADER_LENGTH;
+            }
+
+            // Local commits never have remote-only parents, so local ones first keeps parents first
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            DataOutputStream recordsOut = new DataOutputStream(records);
+            for (List<CommitHelper> commits : Arrays.asList(localCommits, remoteCommits)) {
+                for (CommitHelper commit : commits) {
+                    if (indices.get(commit) != null) continue;
+                    writeRecord(recordsOut, commit);
+                    indices.add(new IndexedCommit(commit, this.commitCount++));
+                }
+            }
+            recordsOut.flush();
+
+            if (append) {
+                try (RandomAccessFile out = new RandomAccessFile(commitsFile, "rw")) {
+                    out.setLength(this.commitsLength);
+                    out.seek(this.commitsLength);
+                    out.write(records.toByteArray());
+                }
+            } else {
+                File tempFile = new File(commitsFile.getPath() + ".tmp");
+                try (DataOutputStream out = create(tempFile)) {
+                    writeHeader(out);
+                    records.writeTo(out);
+                }
+                Files.move(tempFile.toPath(), commitsFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            }
+            this.commitsLength += records.size();
+
+            File tempFile = new File(refsFile.getPath() + ".tmp");
+            try (DataOutputStream out = create(tempFile)) {
+                writeHeader(out);
+                out.writeInt(this.commitCount);
+                writeRefTips(out, localRefTips);
+                writeRefTips(out, remoteRefTips);
+                writeBits(out, toBits(localCommits));
+                writeBits(out, toBits(remoteCommits));
+            }
+            Files.move(tempFile.toPath(), refsFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // What's on disk may not match the indices anymore, so start over next time
+            this.stamp = 0;
+            throw e;
+        }
+    }
+
+    /**
+     * @return how many of the given commits are already in the cache, counting each once
+     */
+    private int countIndexed(List<CommitHelper> localCommits, List<CommitHelper> remoteCommits) {
+        BitSet found = new BitSet(this.commitCount);
+        for (List<CommitHelper> commits : Arrays.asList(localCommits, remoteCommits)) {
+            for (CommitHelper commit : commits) {
+                IndexedCommit indexedCommit = indices.get(commit);
+                if (indexedCommit != null) found.set(indexedCommit.index);
+            }
+        }
+        return found.cardinality();
+    }
+
+    private void writeRecord(DataOutputStream out, CommitHelper commit) throws IOException {
+        CommitGraph graph = commit.getGraph();
+        int parentCount = commit.getParentCount();
+        if (parentCount > 0xffff) {
+            throw new IOException("Too many parents to cache for " + commit.getName());
+        }
+        commit.copyRawTo(out);
+        out.writeLong(graph.getTime(commit.getIndex()));
+        out.writeShort(parentCount);
+        for (int n = 0; n < parentCount; n++) {
+            out.writeInt(indices.get(graph.get(graph.getParent(commit.getIndex(), n))).index);
+        }
+    }
+
+    private BitSet toBits(List<CommitHelper> commits) {
+        BitSet bits = new BitSet(this.commitCount);
+        for (CommitHelper commit : commits) {
+            bits.set(indices.get(commit).index);
+        }
+        return bits;
+    }
+
+    private void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(this.stamp);
+    }
+
+    /**
+     * @return the stamp of the file being read
+     */
+    private long readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Unknown commit graph cache format");
+        }
+        return in.readLong();
+    }
+
+    private void writeRefTips(DataOutputStream out, Map<String, ObjectId> refTips) throws IOException {
+        out.writeInt(refTips.size());
+        for (Map.Entry<String, ObjectId> refTip : refTips.entrySet()) {
+            out.writeUTF(refTip.getKey());
+            refTip.getValue().copyRawTo(out);
+        }
+    }
+
+    private Map<String, ObjectId> readRefTips(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<String, ObjectId> refTips = new HashMap<>();
+        byte[] rawId = new byte[Constants.OBJECT_ID_LENGTH];
+        for (int i = 0; i < count; i++) {
+            String refName = in.readUTF();
+            in.readFully(rawId);
+            refTips.put(refName, ObjectId.fromRaw(rawId));
+        }
+        return refTips;
+    }
+
+    private void writeBits(DataOutputStream out, BitSet bits) throws IOException {
+        long[] words = bits.toLongArray();
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    private BitSet readBits(DataInputStream in) throws IOException {
+        long[] words = new long[in.readInt()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.readLong();
+        }
+        return BitSet.valueOf(words);
+    }
+
+    private static DataInputStream open(File file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    }
+
+    private static DataOutputStream create(File file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    }
+
+    /**
+     * A commit id and where its record is in the commits file
+     */
+    private static class IndexedCommit extends ObjectIdOwnerMap.Entry {
+        // ObjectId is serializable, though these never are serialized
+        private static final long serialVersionUID = 1L;
+
+        final int index;
+
+        IndexedCommit(AnyObjectId id, int index) {
+            super(id);
+            this.index = index;
+        }
+    }
+
+    /**
+     * The commit graph as read from the cache. Commits are referred to by their index in
+     * the ids list, and come parents first
+     */
+    public static class Contents {
+        final List<ObjectId> ids;
+        final long[] times;
+        final int[][] parents;
+        final BitSet local;
+        final BitSet remote;
+        final Map<String, ObjectId> localRefTips;
+        final Map<String, ObjectId> remoteRefTips;
+
+        Contents(List<ObjectId> ids, long[] times, int[][] parents, BitSet local, BitSet remote,
+                 Map<String, ObjectId> localRefTips, Map<String, ObjectId> remoteRefTips) {
+            this.ids = ids;
+            this.times = times;
+            this.parents = parents;
+            this.local = local;
+            this.remote = remote;
+            this.localRefTips = localRefTips;
+            this.remoteRefTips = remoteRefTips;
+        }
+    }
+}
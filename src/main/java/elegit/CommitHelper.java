@@ -1,6 +1,10 @@
 package elegit;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdOwnerMap;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.revwalk.RevCommit;
 
@@ -8,30 +12,56 @@ import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A wrapper class for commits to make them easier to interact with and preserves certain
  * aspects that are expensive to look up with JGit's standard RevCommit, e.g. parents,
  * children, and author.
+ *
+ * The commits of a repository are views onto its CommitGraph, which holds their times
+ * and the links between them. A helper for a commit outside of the graph, e.g. a stash,
+ * has no parents or children.
+ *
+ * Like JGit's own RevObjects, a CommitHelper is its own id, so it can be stored in and
+ * looked up from an ObjectIdOwnerMap. Equality and hashing are by commit id.
  */
-public class CommitHelper{
+public class CommitHelper extends ObjectIdOwnerMap.Entry{
 
-    // The commit this helper wraps
+    // ObjectId is serializable, though helpers never are serialized
+    private static final long serialVersionUID = 1L;
+
+    // The graph this commit is in, and its index there
+    CommitGraph graph;
+    int index;
+
+    // The commit this helper wraps. Only kept for helpers outside of a graph; the
+    // ones in a graph parse it from the repository whenever it is needed
     RevCommit commit;
-    // The author of this commit
+    // The repoHelper to parse the commit with
+    RepoHelper repoHelper;
+    // The author of this commit, read the first time any detail of the commit is
     PersonIdent author;
 
-    // The parents and children of this commit
-    ParentCommitHelper parents;
-    List<CommitHelper> children;
+    List<TagHelper> tags;
 
-    // The short and full message of this commit
-    String shortMessage;
-    String fullMessage;
+    // The short and full messages of the most recently read commits, keyed by a plain
+    // copy of their ids so the cache doesn't hold on to any graph
+    private static final int MESSAGE_CACHE_SIZE = 1024;
+    private static final Map<ObjectId, String[]> messageCache = Collections.synchronizedMap(
+            new LinkedHashMap<ObjectId, String[]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ObjectId, String[]> eldest) {
+                    return size() > MESSAGE_CACHE_SIZE;
+                }
+            });
 
-    List<TagHelper> tags;
+    static final Logger logger = LogManager.getLogger();
 
     /**
      * Constructs a helper for the given commit. Note that if c is not a fully parsed commit
@@ -41,12 +71,28 @@ public class CommitHelper{
      * @param c a fully parsed commit
      */
     public CommitHelper(RevCommit c) throws IOException{
+        super(c);
+        this.index = -1;
         this.commit = c;
-        this.author = c.getAuthorIdent();
-        this.children = new ArrayList<>();
-        this.parents = new ParentCommitHelper(this);
-        this.fullMessage = c.getFullMessage();
-        this.shortMessage = c.getShortMessage();
+        this.readDetails(c);
+    }
+
+    /**
+     * Constructs a helper for the commit with the given id without parsing it. The commit is
+     * parsed the first time anything but its id, time, parents or children is asked for, and
+     * again whenever its message has dropped out of the message cache.
+     * Only the CommitGraph makes these, as it adds commits
+     *
+     * @param id the id of the commit
+     * @param graph the graph the commit is in
+     * @param index the index of the commit in the graph
+     * @param repoHelper the repoHelper with the repository necessary to parse the commit
+     */
+    CommitHelper(AnyObjectId id, CommitGraph graph, int index, RepoHelper repoHelper){
+        super(id);
+        this.graph = graph;
+        this.index = index;
+        this.repoHelper = repoHelper;
     }
 
     /**
@@ -71,18 +117,11 @@ public class CommitHelper{
         this(repoHelper.getRepo().resolve(refString), repoHelper);
     }
 
-    /**
-     * @return the unique name of the commit (the hash)
-     */
-    public String getName(){
-        return commit.getName();
-    }
-
     /**
      * @return the unique ObjectId of the commit
      */
     public ObjectId getObjectId(){
-        return this.commit.getId();
+        return this;
     }
 
     /**
@@ -97,32 +136,35 @@ public class CommitHelper{
      * @return the commit message
      */
     public String getMessage(boolean fullMessage){
-        if(fullMessage){
-            return this.fullMessage;
-        }else{
-            return this.shortMessage;
+        String[] messages = messageCache.get(this);
+        if(messages == null){
+            messages = this.readDetails(this.getCommit());
         }
+        return fullMessage ? messages[1] : messages[0];
     }
 
     /**
      * @return the name of the author of this commit
      */
     public String getAuthorName(){
-        return author.getName();
+        return this.getAuthor().getName();
     }
 
     /**
      * @return the email of the author of this commit
      */
     public String getAuthorEmail(){
-        return author.getEmailAddress();
+        return this.getAuthor().getEmailAddress();
     }
 
     /**
      * @return the date object corresponding to the time of this commit
      */
     public Date getWhen(){
-        return author.getWhen();
+        if(graph != null){
+            return new Date(graph.getTime(index));
+        }
+        return this.getAuthor().getWhen();
     }
 
     /**
@@ -133,31 +175,22 @@ public class CommitHelper{
         return formatter.format(this.getWhen());
     }
 
-    /**
-     * Add an additional parent to this commit. If parent is null, this method
-     * does effectively nothing
-     * @param parent the commit to add
-     */
-    public void addParent(CommitHelper parent){
-        if(parents == null){
-            this.parents = new ParentCommitHelper(this, parent);
-        }else {
-            this.parents.addParent(parent);
-        }
-    }
-
     /**
      * @return the number of parents this commit has
      */
     public int getParentCount(){
-        return parents.count();
+        return graph == null ? 0 : graph.getParentCount(index);
     }
 
     /**
      * @return the parents of this commit in an ArrayList
      */
     public List<CommitHelper> getParents(){
-        return parents.toList();
+        List<CommitHelper> parents = new ArrayList<>(this.getParentCount());
+        for(int n = 0; n < this.getParentCount(); n++){
+            parents.add(graph.get(graph.getParent(index, n)));
+        }
+        return parents;
     }
 
     /**
@@ -171,34 +204,70 @@ public class CommitHelper{
      * @return true if commit is a child of this commit, otherwise false
      */
     public boolean isChild(CommitHelper commit, int depth){
-        depth--;
-        if(children.contains(commit)) return true;
-        else if(depth != 0){
-            for(CommitHelper child : children){
-                if(child.isChild(commit, depth)){
-                    return true;
-                }
-            }
-        }
-        return false;
+        if(graph == null || commit.graph != graph) return false;
+        return graph.isAncestor(index, commit.index, depth);
     }
 
     /**
-     * @param child the new child of this commit
+     * @param allGenerations whether to include grandparents and further back, or just the parents
+     * @return this commit's ancestors, parents before children
      */
-    public void addChild(CommitHelper child){
-        if(!isChild(child, 1)){
-            children.add(child);
+    public List<CommitHelper> getAncestors(boolean allGenerations){
+        return graph == null ? new ArrayList<>() : toCommits(graph.getAncestors(index, allGenerations));
+    }
+
+    /**
+     * @param allGenerations whether to include grandchildren and further on, or just the children
+     * @return this commit's descendants, parents before children
+     */
+    public List<CommitHelper> getDescendants(boolean allGenerations){
+        return graph == null ? new ArrayList<>() : toCommits(graph.getDescendants(index, allGenerations));
+    }
+
+    private List<CommitHelper> toCommits(BitSet indices){
+        List<CommitHelper> commits = new ArrayList<>(indices.cardinality());
+        for(int i = indices.nextSetBit(0); i >= 0; i = indices.nextSetBit(i + 1)){
+            commits.add(graph.get(i));
         }
+        return commits;
     }
 
     /**
      * @return the list of this commits children
      */
     public List<CommitHelper> getChildren(){
+        int childCount = graph == null ? 0 : graph.getChildCount(index);
+        List<CommitHelper> children = new ArrayList<>(childCount);
+        for(int n = 0; n < childCount; n++){
+            children.add(graph.get(graph.getChild(index, n)));
+        }
         return children;
     }
 
+    /**
+     * @return the graph this commit is in, or null if it isn't in one
+     */
+    public CommitGraph getGraph(){
+        return graph;
+    }
+
+    /**
+     * @return the index of this commit in its graph
+     */
+    public int getIndex(){
+        return index;
+    }
+
+    /**
+     * Called by the graph when this commit is added to, moved within or dropped from it
+     * @param graph the graph this commit is now in, or null
+     * @param index the index of this commit in the graph
+     */
+    void setGraph(CommitGraph graph, int index){
+        this.graph = graph;
+        this.index = index;
+    }
+
     @Override
     public String toString(){
         String s = this.getAuthorName();
@@ -255,87 +324,49 @@ public class CommitHelper{
     public boolean hasTag(String tagName) { return this.getTagNames().contains(tagName); }
 
     /**
-     * @return the commit object for this helper
+     * @return the commit object for this helper, or null if it couldn't be parsed
      */
     public RevCommit getCommit() {
-        return this.commit;
-    }
-
-    @Override
-    public int hashCode(){
-        return this.commit.hashCode();
-    }
-
-    @Override
-    public boolean equals(Object other){
-        return (other instanceof CommitHelper) && this.commit.equals(((CommitHelper) other).getCommit());
+        if(this.commit != null){
+            return this.commit;
+        }
+        try{
+            return this.repoHelper.parseRawCommit(this);
+        }catch(IOException e){
+            logger.error("IOException while parsing commit " + this.getName());
+            logger.debug(e.getStackTrace());
+            return null;
+        }
     }
 
     /**
-     * A helper class for the parents of a commit. Any number of commits that
-     * can be parents of the same commit
+     * @return the author of this commit, reading it from the commit if it hasn't been yet
      */
-    private class ParentCommitHelper{
-
-        private CommitHelper child;
-        private ArrayList<CommitHelper> parents;
-
-        /**
-         * Sets parent to be the parent of child
-         * @param child the child commit
-         * @param parent the first parent commit
-         */
-        public ParentCommitHelper(CommitHelper child, CommitHelper parent){
-            parents = new ArrayList<>();
-            parents.add(parent);
-            this.setChild(child);
-        }
-
-        /**
-         * Sets the child as the child, no parents yet
-         * @param child CommitHelper
-         */
-        public ParentCommitHelper(CommitHelper child){
-            parents = new ArrayList<>();
-            this.setChild(child);
-        }
-
-        /**
-         * @return the number of parent commits associated with this object
-         */
-        public int count(){
-            return parents.size();
-        }
-
-        /**
-         * @return the stored parent commits in list form
-         */
-        public List<CommitHelper> toList(){
-            return parents;
-        }
-
-        /**
-         * Adds the given child to the children of each parent commit
-         * @param child the child associated with this object
-         */
-        private void setChild(CommitHelper child){
-            this.child = child;
-            for(CommitHelper parent : parents) {
-                if(parent != null) {
-                    parent.addChild(child);
-                }
-            }
+    private PersonIdent getAuthor(){
+        if(this.author == null){
+            this.readDetails(this.getCommit());
         }
+        return this.author;
+    }
 
-        /**
-         * Adds the given parent to this object and child to its children
-         * @param parent the parent to add
-         */
-        public void addParent(CommitHelper parent){
-            if(!parents.contains(parent)) {
-                parent.addChild(this.child);
-                parents.add(parent);
-            }
+    /**
+     * Takes the author and messages from the given commit. The author is kept with its name and
+     * email interned, since the same few authors make most commits, and the messages go into the
+     * message cache. The commit itself, and so its raw body, isn't kept
+     *
+     * @param c this commit, parsed, or null if it couldn't be
+     * @return the short and full message of the commit
+     */
+    private String[] readDetails(RevCommit c){
+        if(c == null){
+            if(this.author == null) this.author = new PersonIdent("", "");
+            return new String[]{"", ""};
         }
+        PersonIdent ident = c.getAuthorIdent();
+        this.author = new PersonIdent(ident.getName().intern(), ident.getEmailAddress().intern(),
+                                      ident.getWhen(), ident.getTimeZone());
+        String[] messages = {c.getShortMessage(), c.getFullMessage()};
+        messageCache.put(this.copy(), messages);
+        return messages;
     }
 }
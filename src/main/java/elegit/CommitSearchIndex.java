@@ -0,0 +1,391 @@
+package elegit;
+
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * An in-memory index for finding commits as the user types, by a prefix of their id or by the
+ * beginnings of words in their author or message.
+ *
+ * Every commit gets a number when it is added, and everything in the index refers to commits by
+ * that number, so nothing has to change when the commit graph is compacted. Commits dropped from
+ * the graph are skipped when searching and thrown out once they make up most of the index.
+ *
+ * Ids are kept sorted, so all the ids with a given prefix sit next to each other and are found
+ * with a binary search. Commits added since the last id search are sorted among themselves and
+ * merged in on the next one.
+ *
+ * Author names, emails and messages are split into lowercase words, each mapped to the commits
+ * it appears in. The words are sorted when they are searched after new ones came in, so all the
+ * words starting with what has been typed so far are found with a binary search.
+ *
+ * Commits loaded from the commit graph cache come without their text. indexMissingText reads it
+ * from the repository, and until it has, those commits can only be found by id.
+ */
+public class CommitSearchIndex {
+
+    // Shorter hex strings are too likely to be a word to be looked up as ids too
+    private static final int MIN_ID_PREFIX_LENGTH = 4;
+    // How many commits indexMissingText reads before adding them to the index
+    private static final int TEXT_BATCH_SIZE = 1000;
+
+    // Every commit, by number, and whether its text is in the index
+    private CommitHelper[] commits;
+    private int commitCount;
+    private BitSet hasText;
+    // How many of the commits have been dropped from their graph
+    private int deadCount;
+
+    // Commit numbers ordered by id, for the first sortedCount commits
+    private int[] byId;
+    private int sortedCount;
+
+    // The commits each word appears in, and every word in order once searched
+    private HashMap<String, Postings> words;
+    private String[] sortedWords;
+
+    public CommitSearchIndex() {
+        this.clear();
+    }
+
+    /**
+     * Empties the index
+     */
+    public synchronized void clear() {
+        this.commits = new CommitHelper[1024];
+        this.commitCount = 0;
+        this.hasText = new BitSet();
+        this.deadCount = 0;
+        this.byId = new int[0];
+        this.sortedCount = 0;
+        this.words = new HashMap<>();
+        this.sortedWords = null;
+    }
+
+    /**
+     * Adds a commit that was just wrapped to the index
+     *
+     * @param commit the new commit
+     * @param rawCommit the commit it wraps, or null if only its id is known. Its text is only
+     *                  indexed if its body was kept
+     */
+    public synchronized void add(CommitHelper commit, RevCommit rawCommit) {
+        if (this.commitCount == this.commits.length) {
+            this.commits = Arrays.copyOf(this.commits, this.commitCount * 2);
+        }
+        int number = this.commitCount++;
+        this.commits[number] = commit;
+        if (rawCommit != null && rawCommit.getRawBuffer() != null) {
+            this.addWords(number, wordsOf(rawCommit));
+        }
+    }
+
+    /**
+     * Notes that the given commits were dropped from the graph, and throws out dropped commits
+     * once they make up most of the index
+     *
+     * @param dropped the commits dropped from the graph
+     */
+    public synchronized void removed(Collection<CommitHelper> dropped) {
+        this.deadCount += dropped.size();
+        if (this.deadCount > this.commitCount - this.deadCount) {
+            this.compact();
+        }
+    }
+
+    /**
+     * @return whether any commit can't be found by its text yet
+     */
+    public synchronized boolean isMissingText() {
+        return this.hasText.cardinality() < this.commitCount - this.deadCount;
+    }
+
+    /**
+     * Reads the author and message of every commit that doesn't have them in the index yet and
+     * adds them. Commits are read a batch at a time without holding up searches in between
+     *
+     * @param objectAccess the pool to read the commits with
+     * @throws IOException
+     */
+    public void indexMissingText(ObjectAccessPool objectAccess) throws IOException {
+        List<CommitHelper> missing = new ArrayList<>();
+        List<Integer> missingNumbers = new ArrayList<>();
+        synchronized (this) {
+            for (int i = this.hasText.nextClearBit(0); i < this.commitCount; i = this.hasText.nextClearBit(i + 1)) {
+                if (isLive(this.commits[i])) {
+                    missing.add(this.commits[i]);
+                    missingNumbers.add(i);
+                }
+            }
+        }
+
+        try (ObjectAccessPool.Lease lease = objectAccess.borrow()) {
+            for (int start = 0; start < missing.size(); start += TEXT_BATCH_SIZE) {
+                int end = Math.min(start + TEXT_BATCH_SIZE, missing.size());
+                List<Set<String>> batch = new ArrayList<>(end - start);
+                for (int i = start; i < end; i++) {
+                    byte[] raw = lease.getReader().open(missing.get(i), Constants.OBJ_COMMIT).getCachedBytes();
+                    batch.add(wordsOf(RevCommit.parse(raw)));
+                }
+                synchronized (this) {
+                    for (int i = start; i < end; i++) {
+                        int number = missingNumbers.get(i);
+                        // The index may have been compacted or cleared in the meantime
+                        if (number < this.commitCount && this.commits[number] == missing.get(i)) {
+                            this.addWords(number, batch.get(i - start));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param prefix the beginning of a commit id
+     * @return the commits whose ids start with the prefix
+     */
+    public synchronized List<CommitHelper> findByIdPrefix(String prefix) {
+        List<CommitHelper> found = new ArrayList<>();
+        for (int number : this.idPrefixMatches(prefix)) {
+            found.add(this.commits[number]);
+        }
+        return found;
+    }
+
+    /**
+     * Finds the commits matching every word of the query. A word matches a commit if its id
+     * starts with it, or if a word in its author name, author email or message does
+     *
+     * @param query what has been typed so far
+     * @param limit the most commits to return
+     * @return the matching commits, most recently added first
+     */
+    public synchronized List<CommitHelper> search(String query, int limit) {
+        BitSet matches = null;
+        for (String word : splitWords(query)) {
+            BitSet wordMatches = new BitSet(this.commitCount);
+            for (Postings postings : this.wordPrefixMatches(word)) {
+                for (int i = 0; i < postings.size; i++) {
+                    wordMatches.set(postings.numbers[i]);
+                }
+            }
+            for (int number : this.idPrefixMatches(word)) {
+                wordMatches.set(number);
+            }
+
+            if (matches == null) {
+                matches = wordMatches;
+            } else {
+                matches.and(wordMatches);
+            }
+            if (matches.isEmpty()) break;
+        }
+
+        List<CommitHelper> found = new ArrayList<>();
+        if (matches == null) return found;
+        for (int i = matches.previousSetBit(this.commitCount - 1); i >= 0 && found.size() < limit; i = matches.previousSetBit(i - 1)) {
+            if (isLive(this.commits[i])) found.add(this.commits[i]);
+        }
+        return found;
+    }
+
+    /**
+     * @return the postings of every word starting with the given prefix
+     */
+    private List<Postings> wordPrefixMatches(String prefix) {
+        if (this.sortedWords == null) {
+            this.sortedWords = this.words.keySet().toArray(new String[this.words.size()]);
+            Arrays.sort(this.sortedWords);
+        }
+
+        List<Postings> found = new ArrayList<>();
+        int i = Arrays.binarySearch(this.sortedWords, prefix);
+        for (i = i < 0 ? -i - 1 : i; i < this.sortedWords.length && this.sortedWords[i].startsWith(prefix); i++) {
+            found.add(this.words.get(this.sortedWords[i]));
+        }
+        return found;
+    }
+
+    /**
+     * @return the numbers of the live commits whose ids start with the given prefix, or none if
+     * it isn't a long enough hex string
+     */
+    private List<Integer> idPrefixMatches(String prefix) {
+        List<Integer> found = new ArrayList<>();
+        if (prefix.length() < MIN_ID_PREFIX_LENGTH || prefix.length() > Constants.OBJECT_ID_STRING_LENGTH
+                || !isHex(prefix)) {
+            return found;
+        }
+        this.sortNewIds();
+
+        AbbreviatedObjectId abbreviatedId = AbbreviatedObjectId.fromString(prefix);
+        int low = 0;
+        int high = this.sortedCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (abbreviatedId.prefixCompare(this.commits[this.byId[mid]]) > 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < this.sortedCount && abbreviatedId.prefixCompare(this.commits[this.byId[i]]) == 0; i++) {
+            if (isLive(this.commits[this.byId[i]])) found.add(this.byId[i]);
+        }
+        return found;
+    }
+
+    /**
+     * Sorts the commits added since the last id search by id and merges them into byId
+     */
+    private void sortNewIds() {
+        if (this.sortedCount == this.commitCount) return;
+
+        Integer[] newNumbers = new Integer[this.commitCount - this.sortedCount];
+        for (int i = 0; i < newNumbers.length; i++) {
+            newNumbers[i] = this.sortedCount + i;
+        }
+        Comparator<Integer> byIdOrder = (a, b) -> this.commits[a].compareTo(this.commits[b]);
+        Arrays.sort(newNumbers, byIdOrder);
+
+        int[] merged = new int[this.commitCount];
+        int i = 0, j = 0, k = 0;
+        while (i < this.byId.length || j < newNumbers.length) {
+            if (j == newNumbers.length || (i < this.byId.length && byIdOrder.compare(this.byId[i], newNumbers[j]) <= 0)) {
+                merged[k++] = this.byId[i++];
+            } else {
+                merged[k++] = newNumbers[j++];
+            }
+        }
+        this.byId = merged;
+        this.sortedCount = this.commitCount;
+    }
+
+    private void addWords(int number, Set<String> commitWords) {
+        for (String word : commitWords) {
+            Postings postings = this.words.get(word);
+            if (postings == null) {
+                postings = new Postings();
+                this.words.put(word, postings);
+                this.sortedWords = null;
+            }
+            postings.add(number);
+        }
+        this.hasText.set(number);
+    }
+
+    /**
+     * Drops the commits that are no longer in their graph and numbers the rest again
+     */
+    private void compact() {
+        int[] newNumbers = new int[this.commitCount];
+        CommitHelper[] newCommits = new CommitHelper[Math.max(1024, this.commitCount - this.deadCount)];
+        BitSet newHasText = new BitSet();
+        int newCount = 0;
+        for (int i = 0; i < this.commitCount; i++) {
+            if (isLive(this.commits[i])) {
+                if (newCount == newCommits.length) newCommits = Arrays.copyOf(newCommits, newCount * 2);
+                newCommits[newCount] = this.commits[i];
+                if (this.hasText.get(i)) newHasText.set(newCount);
+                newNumbers[i] = newCount++;
+            } else {
+                newNumbers[i] = -1;
+            }
+        }
+
+        Iterator<Postings> postingsIterator = this.words.values().iterator();
+        while (postingsIterator.hasNext()) {
+            Postings postings = postingsIterator.next();
+            int size = 0;
+            for (int i = 0; i < postings.size; i++) {
+                int newNumber = newNumbers[postings.numbers[i]];
+                if (newNumber >= 0) postings.numbers[size++] = newNumber;
+            }
+            postings.size = size;
+            if (size == 0) {
+                postingsIterator.remove();
+                this.sortedWords = null;
+            }
+        }
+
+        // Renumbering keeps the order, so the sorted ids only need the dropped ones taken out
+        int[] newById = new int[newCount];
+        int sorted = 0;
+        for (int i = 0; i < this.sortedCount; i++) {
+            int newNumber = newNumbers[this.byId[i]];
+            if (newNumber >= 0) newById[sorted++] = newNumber;
+        }
+
+        this.commits = newCommits;
+        this.commitCount = newCount;
+        this.hasText = newHasText;
+        this.deadCount = 0;
+        // Anything not sorted yet was numbered after everything sorted, and still is
+        this.byId = Arrays.copyOf(newById, sorted);
+        this.sortedCount = sorted;
+    }
+
+    private static boolean isLive(CommitHelper commit) {
+        return commit.getGraph() != null;
+    }
+
+    private static boolean isHex(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.digit(s.charAt(i), 16) < 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the distinct words in the author name, author email and message of the commit
+     */
+    private static Set<String> wordsOf(RevCommit rawCommit) {
+        Set<String> commitWords = new HashSet<>();
+        PersonIdent author = rawCommit.getAuthorIdent();
+        if (author != null) {
+            commitWords.addAll(splitWords(author.getName()));
+            commitWords.addAll(splitWords(author.getEmailAddress()));
+        }
+        commitWords.addAll(splitWords(rawCommit.getFullMessage()));
+        return commitWords;
+    }
+
+    /**
+     * @return the lowercase runs of letters and digits in the text, in order
+     */
+    static List<String> splitWords(String text) {
+        List<String> textWords = new ArrayList<>();
+        if (text == null) return textWords;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                textWords.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return textWords;
+    }
+
+    /**
+     * The numbers of the commits a word appears in
+     */
+    private static class Postings {
+        int[] numbers = new int[2];
+        int size;
+
+        void add(int number) {
+            if (this.size == this.numbers.length) {
+                this.numbers = Arrays.copyOf(this.numbers, this.size * 2);
+            }
+            this.numbers[this.size++] = number;
+        }
+    }
+}
@@ -4,13 +4,17 @@ import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.Property;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleObjectProperty;
+import javafx.scene.Node;
 import elegit.treefx.Cell;
 import elegit.treefx.Highlighter;
 import elegit.treefx.TreeGraphModel;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -24,12 +28,12 @@ public class CommitTreeController{
     public static List<CommitTreeModel> allCommitTreeModels = new ArrayList<>();
 
     // The list of selected cells
-    private static List<String> selectedCellIds = new ArrayList<>();
+    private static List<ObjectId> selectedCellIds = new ArrayList<>();
 
     // The session controller if this controller needs to access other models/views
     static SessionController sessionController;
 
-    private static ObjectProperty<String> selectedIDProperty = new SimpleObjectProperty<>();
+    private static ObjectProperty<ObjectId> selectedIDProperty = new SimpleObjectProperty<>();
     static Property<Boolean> multipleNotSelectedProperty = new SimpleBooleanProperty(true);
 
     /**
@@ -37,7 +41,7 @@ public class CommitTreeController{
      * it depending on whether it had already been selected
      * @param clickedCellId the id of the cell that was clicked
      */
-    public static void handleMouseClicked(String clickedCellId){
+    public static void handleMouseClicked(ObjectId clickedCellId){
         if(selectedCellIds.size()==1 && clickedCellId.equals(selectedCellIds.get(0))){
             resetSelection();
         } else if (selectedCellIds.size()==0) {
@@ -74,7 +78,7 @@ public class CommitTreeController{
      * Getter method for all selected cells
      * @return the list of selected cells
      */
-    static List<String> getSelectedIds() {
+    static List<ObjectId> getSelectedIds() {
         return selectedCellIds;
     }
 
@@ -85,6 +89,28 @@ public class CommitTreeController{
         resetSelection();
     }
 
+    /**
+     * Shows the menu for the cell that was right clicked
+     * @param cell the cell that was right clicked
+     * @param anchor the node that was clicked, which may be a canvas the cell is drawn on
+     * @param screenX the x coordinate of the click on the screen
+     * @param screenY the y coordinate of the click on the screen
+     */
+    public static void handleContextMenu(Cell cell, Node anchor, double screenX, double screenY){
+        getCommitTreeModel().showCommitMenu(cell.getCellId(), anchor, screenX, screenY);
+    }
+
+    /**
+     * Shows the menu for the branch or tag whose label was clicked
+     * @param ref the branch or tag
+     * @param anchor the label that was clicked
+     * @param screenX the x coordinate of the click on the screen
+     * @param screenY the y coordinate of the click on the screen
+     */
+    public static void handleRefLabelClicked(RefHelper ref, Node anchor, double screenX, double screenY){
+        getCommitTreeModel().showRefMenu(ref, anchor, screenX, screenY);
+    }
+
     /**
      * Takes in the cell that was moused over, and highlights it using highlightCommit
      * @param cell the cell generated the mouseover event
@@ -102,12 +128,13 @@ public class CommitTreeController{
      * @param descendants whether to highlight the commit's children
      * @param allGenerations whether to highlight further generations than just parents/children (i.e. grandparents, grandchildren etc)
      */
-    private static void selectCommitInGraph(String commitID, boolean ancestors, boolean descendants, boolean allGenerations){
+    private static void selectCommitInGraph(ObjectId commitID, boolean ancestors, boolean descendants, boolean allGenerations){
         for(CommitTreeModel model : allCommitTreeModels){
             if(model.treeGraph == null) continue;
             TreeGraphModel m = model.treeGraph.treeGraphModel;
+            RepoHelper repo = model.sessionModel.getCurrentRepoHelper();
 
-            selectCommitInGraph(commitID, m, true, ancestors, descendants, allGenerations);
+            selectCommitInGraph(commitID, m, repo, true, ancestors, descendants, allGenerations);
         }
 
         selectedCellIds.add(commitID);
@@ -123,7 +150,7 @@ public class CommitTreeController{
      * @param commitID the id of the commit to select
      * @param isOverCell whether to highlight or un-highlight the corresponding cells
      */
-    private static void highlightCommitInGraph(String commitID, boolean isOverCell){
+    private static void highlightCommitInGraph(ObjectId commitID, boolean isOverCell){
         for(CommitTreeModel model : allCommitTreeModels){
             if(model.treeGraph == null) continue;
             TreeGraphModel m = model.treeGraph.treeGraphModel;
@@ -140,13 +167,24 @@ public class CommitTreeController{
      * commit and its edges
      * @param commitID the commit to select
      * @param model the model wherein the corresponding cell should be highlighted
+     * @param repo the repository the commit is in, whose commit graph the relatives are found in
      * @param enable whether to select or deselect the commit
      * @param ancestors whether to highlight the commit's parents
      * @param descendants whether to highlight the commit's children
      * @param allGenerations whether to highlight further generations than just parents/children (i.e. grandparents, grandchildren etc)
      */
-    private static void selectCommitInGraph(String commitID, TreeGraphModel model, boolean enable, boolean ancestors, boolean descendants, boolean allGenerations){
-        Highlighter.highlightSelectedCell(commitID, model, enable, ancestors, descendants, allGenerations);
+    private static void selectCommitInGraph(ObjectId commitID, TreeGraphModel model, RepoHelper repo, boolean enable, boolean ancestors, boolean descendants, boolean allGenerations){
+        List<CommitHelper> relatives = new ArrayList<>();
+        CommitHelper commit = (repo == null || !(ancestors || descendants)) ? null : repo.getCommit(commitID);
+        if(commit != null){
+            if(ancestors){
+                relatives.addAll(commit.getAncestors(allGenerations));
+            }
+            if(descendants){
+                relatives.addAll(commit.getDescendants(allGenerations));
+            }
+        }
+        Highlighter.highlightSelectedCell(commitID, model, enable, relatives);
         if(enable){
             Highlighter.updateCellEdges(commitID, commitID, model, true);
         }else{
@@ -162,9 +200,9 @@ public class CommitTreeController{
      * @param descendants whether to highlight the commit's children
      * @param allGenerations whether to highlight further generations than just parents/children (i.e. grandparents, grandchildren etc)
      */
-    public static void selectCommit(String id, boolean ancestors, boolean descendants, boolean allGenerations){
+    public static void selectCommit(AnyObjectId id, boolean ancestors, boolean descendants, boolean allGenerations){
         resetSelection();
-        selectCommitInGraph(id, ancestors, descendants, allGenerations);
+        selectCommitInGraph(id.copy(), ancestors, descendants, allGenerations);
         sessionController.selectCommit(id);
     }
 
@@ -186,7 +224,7 @@ public class CommitTreeController{
      * @param cellID the id to check
      * @return true if it is selected, false otherwise
      */
-    private static boolean isSelected(String cellID){
+    private static boolean isSelected(ObjectId cellID){
         return selectedCellIds.size()==1 && selectedCellIds.get(0).equals(cellID);
     }
 
@@ -226,33 +264,35 @@ public class CommitTreeController{
 
     /**
      * Uses the Highlighter class to emphasize and scroll to the cell corresponding
-     * to the given commit in every view corresponding to a tracked CommitTreeModel
-     * @param commit the commit to focus
+     * to the commit with the given ID in every view corresponding to a tracked CommitTreeModel.
+     * A CommitHelper is its own ID, so commits can be passed in directly
+     * @param commitID the ID of the commit to focus
      */
-    public static void focusCommitInGraph(CommitHelper commit){
-        if(commit == null) return;
-
+    public static void focusCommitInGraph(AnyObjectId commitID){
+        if(commitID == null) return;
         for(CommitTreeModel model : allCommitTreeModels){
-            if(model.treeGraph != null && model.treeGraph.treeGraphModel.containsID(commit.getId())){
-                Cell c = model.treeGraph.treeGraphModel.cellMap.get(commit.getId());
+            if(model.treeGraph != null && model.treeGraph.treeGraphModel.containsID(commitID)){
+                Cell c = model.treeGraph.treeGraphModel.cellMap.get(commitID);
                 Highlighter.emphasizeCell(c);
             }
         }
     }
 
     /**
-     * Uses the Highlighter class to emphasize and scroll to the cell corresponding
-     * to the cell with the given ID in every view corresponding to a tracked CommitTreeModel
-     * @param commitID the ID of the commit to focus
+     * Highlights the cells of the given commits, and only those, as the results of a commit
+     * search in every view corresponding to a tracked CommitTreeModel
+     * @param commits the commits matching the search
      */
-    public static void focusCommitInGraph(String commitID){
-        if(commitID == null) return;
+    public static void highlightSearchResults(Collection<CommitHelper> commits){
+        List<Cell> cells = new ArrayList<>();
         for(CommitTreeModel model : allCommitTreeModels){
-            if(model.treeGraph != null && model.treeGraph.treeGraphModel.containsID(commitID)){
-                Cell c = model.treeGraph.treeGraphModel.cellMap.get(commitID);
-                Highlighter.emphasizeCell(c);
+            if(model.treeGraph == null) continue;
+            for(CommitHelper commit : commits){
+                Cell c = model.treeGraph.treeGraphModel.cellMap.get(commit);
+                if(c != null) cells.add(c);
             }
         }
+        Highlighter.highlightSearchResults(cells);
     }
 
     /**
@@ -283,7 +323,7 @@ public class CommitTreeController{
         return true;
     }
 
-    public static ObjectProperty<String> selectedIDProperty(){
+    public static ObjectProperty<ObjectId> selectedIDProperty(){
         return selectedIDProperty;
     }
 
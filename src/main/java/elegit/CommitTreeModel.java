@@ -3,17 +3,24 @@ package elegit;
 import elegit.exceptions.MissingRepoException;
 import elegit.treefx.*;
 import elegit.treefx.Cell;
+import javafx.concurrent.Task;
+import javafx.scene.Node;
 import javafx.scene.control.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.jgit.api.ResetCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -33,14 +40,29 @@ public abstract class CommitTreeModel{
 
     // A list of commits in this model
     private List<CommitHelper> commitsInModel;
-    private List<CommitHelper> localCommitsInModel;
-    private List<CommitHelper> remoteCommitsInModel;
+    // The commits in this model that were drawn as local and as remote
+    private Set<CommitHelper> localCommitsInModel;
+    private Set<CommitHelper> remoteCommitsInModel;
     private List<BranchHelper> branchesInModel;
     private List<TagHelper> tagsInModel;
 
     // A list of tags that haven't been pushed yet
     public List<TagHelper> tagsToBePushed;
 
+    // How many commits are loaded into the tree at a time
+    static final int HISTORY_PAGE_SIZE = 500;
+    // The walk the pages of history are loaded from, and the commits that were in the repository
+    // at the last refresh but are still waiting for their page
+    private HistoryWalk historyWalk;
+    private Set<CommitHelper> unloadedCommits = new HashSet<>();
+    private volatile boolean isLoadingOlderCommits;
+
+    // The menus for commits, branch labels and tag labels. Each is made the first time it is
+    // needed and then shared, acting on whichever commit or ref it was last shown for
+    private ContextMenu commitMenu, branchLabelMenu, tagLabelMenu;
+    private CommitHelper menuCommit;
+    private RefHelper menuRef;
+
     static final Logger logger = LogManager.getLogger();
 
     /**
@@ -55,8 +77,8 @@ public abstract class CommitTreeModel{
         this.view.setName("Generic commit tree");
         CommitTreeController.allCommitTreeModels.add(this);
         this.commitsInModel = new ArrayList<>();
-        this.localCommitsInModel = new ArrayList<>();
-        this.remoteCommitsInModel = new ArrayList<>();
+        this.localCommitsInModel = new HashSet<>();
+        this.remoteCommitsInModel = new HashSet<>();
         this.branchesInModel = new ArrayList<>();
     }
 
@@ -76,21 +98,29 @@ public abstract class CommitTreeModel{
      * @param id the id to check
      * @return true if the given id corresponds to a commit in the tree, false otherwise
      */
-    public boolean containsID(String id){
+    public boolean containsID(AnyObjectId id){
         return treeGraph != null && treeGraph.treeGraphModel.containsID(id);
     }
 
     /**
      * Initializes the treeGraph, unselects any previously selected commit,
-     * and then adds all commits tracked by this model to the tree
+     * and then adds the newest page of commits tracked by this model to the tree.
+     * Older pages are added as the tree is scrolled towards them
      */
     public synchronized void init(){
         treeGraph = this.createNewTreeGraph();
+        treeGraph.setOnScrolledToOldest(this::loadOlderCommitsInBackground);
 
         CommitTreeController.resetSelection();
 
+        this.historyWalk = null;
+        this.unloadedCommits = new HashSet<>();
         if (this.sessionModel.getCurrentRepoHelper() != null) {
-            this.addAllCommitsToTree();
+            this.addNextPageToTree(this.sessionModel.getCurrentRepoHelper());
+            if (!this.historyWalk.isDone()) {
+                this.unloadedCommits.addAll(this.getAllCommits(this.sessionModel.getCurrentRepoHelper()));
+                this.unloadedCommits.removeAll(this.commitsInModel);
+            }
             //this.branchesInModel = getAllBranches(this.sessionModel.getCurrentRepoHelper());
             this.branchesInModel = this.sessionModel.getCurrentRepoHelper().getBranchModel().getAllBranches();
         }
@@ -129,33 +159,44 @@ public abstract class CommitTreeModel{
         RepoHelper repo = this.sessionModel.getCurrentRepoHelper();
 
         // Added commits are all commits in the current repo helper that aren't in the model's list
-        List<CommitHelper> commitsToAdd = new ArrayList<>(this.getAllCommits(this.sessionModel.getCurrentRepoHelper()));
-        commitsToAdd.removeAll(this.getCommitsInModel());
+        List<CommitHelper> allCommits = this.getAllCommits(repo);
+        Set<CommitHelper> allCommitsSet = new HashSet<>(allCommits);
+        List<CommitHelper> commitsToAdd = new ArrayList<>(allCommits);
+        commitsToAdd.removeAll(new HashSet<>(this.getCommitsInModel()));
+        // Until the whole history is loaded, the commits that were already there are left for their
+        // pages. Anything else is new, however old its date, e.g. after a rebase, and goes in now
+        if (!this.unloadedCommits.isEmpty()) {
+            this.unloadedCommits.retainAll(allCommitsSet);
+            commitsToAdd.removeAll(this.unloadedCommits);
+        }
         updateModel.setCommitsToAdd(commitsToAdd);
 
         // Removed commits are those in the model, but not in the current repo helper
         List<CommitHelper> commitsToRemove = new ArrayList<>(this.commitsInModel);
-        commitsToRemove.removeAll(this.getAllCommits(this.sessionModel.getCurrentRepoHelper()));
+        commitsToRemove.removeAll(allCommitsSet);
         updateModel.setCommitsToRemove(commitsToRemove);
 
-        // Updated commits are ones that have changed whether they are tracked locally
-        // or uploaded to the server.
-        // (remote-model's remote)+(model's remote-remote)+(local-model's local)+(model's local-local)
-        List<CommitHelper> commitsToUpdate = new ArrayList<>(this.localCommitsInModel);
-        commitsToUpdate.removeAll(repo.getLocalCommits());
-        updateModel.updateCommits(commitsToUpdate);
-        commitsToUpdate = new ArrayList<>(repo.getLocalCommits());
-        commitsToUpdate.removeAll(this.localCommitsInModel);
-        updateModel.updateCommits(commitsToUpdate);
-        commitsToUpdate = new ArrayList<>(this.remoteCommitsInModel);
-        commitsToUpdate.removeAll(repo.getRemoteCommits());
-        updateModel.updateCommits(commitsToUpdate);
-        commitsToUpdate = new ArrayList<>(repo.getRemoteCommits());
-        commitsToUpdate.removeAll(this.remoteCommitsInModel);
-        updateModel.updateCommits(commitsToUpdate);
-
-        commitsToUpdate = updateModel.getCommitsToUpdate();
-        commitsToUpdate.removeAll(commitsToRemove);
+        // Updated commits are ones still in the model that have changed whether they are tracked
+        // locally or uploaded to the server, i.e. where the drawn and the current types differ
+        CommitGraph commitGraph = repo.getCommitGraph();
+        BitSet inModel = new BitSet(commitGraph.size());
+        BitSet changed = new BitSet(commitGraph.size());
+        BitSet changedRemote = new BitSet(commitGraph.size());
+        for (CommitHelper commitHelper : this.commitsInModel) {
+            if (commitHelper.getGraph() != commitGraph) continue;
+            inModel.set(commitHelper.getIndex());
+            if (this.localCommitsInModel.contains(commitHelper)) changed.set(commitHelper.getIndex());
+            if (this.remoteCommitsInModel.contains(commitHelper)) changedRemote.set(commitHelper.getIndex());
+        }
+        changed.xor(commitGraph.getLocal());
+        changedRemote.xor(commitGraph.getRemote());
+        changed.or(changedRemote);
+        changed.and(inModel);
+
+        List<CommitHelper> commitsToUpdate = new ArrayList<>(changed.cardinality());
+        for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+            commitsToUpdate.add(commitGraph.get(i));
+        }
         updateModel.setCommitsToUpdate(commitsToUpdate);
 
         /* ************************ BRANCHES ************************ */
@@ -203,11 +244,69 @@ public abstract class CommitTreeModel{
     }
 
     /**
-     * Gets all commits tracked by this model and adds them to the tree
-     * @return true if the tree was updated, otherwise false
+     * Adds the next page of older commits to the tree and updates the view, without moving
+     * the focus away from where it is
+     * @return true if any commits were added
+     */
+    public synchronized boolean loadOlderCommits() throws IOException {
+        RepoHelper repo = this.sessionModel.getCurrentRepoHelper();
+        if (repo == null || this.treeGraph == null || !this.addNextPageToTree(repo)) return false;
+
+        this.treeGraph.update();
+        this.view.displayTreeGraph(this.treeGraph, null);
+        CommitTreeController.setBranchHeads(this, repo);
+        return true;
+    }
+
+    /**
+     * Loads the next page of older commits on a background thread, unless they are
+     * already being loaded or there are none left
      */
-    private boolean addAllCommitsToTree() {
-        return this.addCommitsToTree(this.getAllCommits(this.sessionModel.getCurrentRepoHelper()));
+    private void loadOlderCommitsInBackground() {
+        if (this.isLoadingOlderCommits || this.historyWalk == null || this.historyWalk.isDone()) return;
+        this.isLoadingOlderCommits = true;
+
+        Thread th = new Thread(new Task<Void>(){
+            @Override
+            protected Void call() {
+                try {
+                    loadOlderCommits();
+                } catch (IOException e) {
+                    logger.error("Couldn't load older commits into the tree");
+                    logger.debug(e.getStackTrace());
+                } finally {
+                    isLoadingOlderCommits = false;
+                }
+                return null;
+            }
+        });
+        th.setName("Load older commits: " + this.view.getName());
+        th.setDaemon(true);
+        th.start();
+    }
+
+    /**
+     * Walks the next page of the history and adds it to the tree. If the repository's commits
+     * changed since the last page, the walk starts over and skips the commits already in the tree
+     * @param repo the repository to get the commits from
+     * @return true if any commits were added
+     */
+    private boolean addNextPageToTree(RepoHelper repo) {
+        if (this.historyWalk == null || this.historyWalk.isStale()) {
+            this.historyWalk = repo.walkHistory();
+        }
+
+        List<CommitHelper> page = new ArrayList<>(HISTORY_PAGE_SIZE);
+        while (page.size() < HISTORY_PAGE_SIZE && !this.historyWalk.isDone()) {
+            for (CommitHelper commitHelper : this.historyWalk.next(HISTORY_PAGE_SIZE - page.size())) {
+                if (!treeGraph.treeGraphModel.containsID(commitHelper)) {
+                    page.add(commitHelper);
+                    this.unloadedCommits.remove(commitHelper);
+                }
+            }
+        }
+        if (this.historyWalk.isDone()) this.unloadedCommits.clear();
+        return this.addCommitsToTree(page);
     }
 
     /**
@@ -230,8 +329,7 @@ public abstract class CommitTreeModel{
         if(commits.size() == 0) return false;
 
         for(CommitHelper curCommitHelper : commits){
-            List<CommitHelper> parents = curCommitHelper.getParents();
-            this.addCommitToTree(curCommitHelper, parents, treeGraph.treeGraphModel);
+            this.addCommitToTree(curCommitHelper, treeGraph.treeGraphModel);
         }
 
         return true;
@@ -261,17 +359,18 @@ public abstract class CommitTreeModel{
     }
 
     /**
-     * Adds a single commit to the tree with the given parents. Ensures the given parents are
-     * already added to the tree, and if they aren't, adds them
+     * Adds a single commit to the tree and links it to whichever of its parents
+     * and children are already in the tree. Parents that aren't loaded yet get
+     * linked when their page is added
      * @param commitHelper the commit to be added
-     * @param parents a list of this commit's parents
      * @param graphModel the treeGraphModel to add the commit to
      */
-    private void addCommitToTree(CommitHelper commitHelper, List<CommitHelper> parents, TreeGraphModel graphModel){
-        List<String> parentIds = new ArrayList<>(parents.size());
+    private void addCommitToTree(CommitHelper commitHelper, TreeGraphModel graphModel){
+        CommitGraph commitGraph = commitHelper.getGraph();
+        int parentCount = commitHelper.getParentCount();
+        List<CommitHelper> parents = new ArrayList<>(parentCount);
 
         RepoHelper repo = sessionModel.getCurrentRepoHelper();
-        String displayLabel = repo.getCommitDescriptorString(commitHelper, false);
         List<String> branchLabels = repo.getBranchModel().getBranchesWithHead(commitHelper);
         List<RefHelper> refLabels = repo.getRefsForCommit(commitHelper);
         Cell.CellType computedType = repo.getCommitType(commitHelper);
@@ -282,20 +381,28 @@ public abstract class CommitTreeModel{
         if (computedType == Cell.CellType.BOTH || computedType == Cell.CellType.REMOTE)
             this.remoteCommitsInModel.add(commitHelper);
 
-        for(CommitHelper parent : parents){
-            if(!graphModel.containsID(RepoHelper.getCommitId(parent))){
-                addCommitToTree(parent, parent.getParents(), graphModel);
+        for(int n = 0; n < parentCount; n++){
+            CommitHelper parent = commitGraph.get(commitGraph.getParent(commitHelper.getIndex(), n));
+            if(graphModel.containsID(parent)){
+                parents.add(parent);
             }
-            parentIds.add(RepoHelper.getCommitId(parent));
         }
 
-        String commitID = RepoHelper.getCommitId(commitHelper);
-        if(graphModel.containsID(commitID)){
-            graphModel.setCellType(commitID, computedType);
+        if(graphModel.containsID(commitHelper)){
+            graphModel.setCellType(commitHelper, computedType);
             return;
         }
 
-        graphModel.addCell(commitID, commitHelper.getWhen().getTime(), displayLabel, refLabels, getContextMenu(commitHelper), parentIds, computedType);
+        graphModel.addCell(commitHelper, commitHelper.getWhen().getTime(), () -> repo.getCommitDescriptorString(commitHelper, false),
+                refLabels, parents, computedType);
+
+        // Pages come newest first, so the children of a commit can be in the tree before it is
+        for(int n = 0; n < commitGraph.getChildCount(commitHelper.getIndex()); n++){
+            CommitHelper child = commitGraph.get(commitGraph.getChild(commitHelper.getIndex(), n));
+            if(graphModel.containsID(child)){
+                graphModel.addCellParent(child, commitHelper);
+            }
+        }
     }
 
 
@@ -306,18 +413,15 @@ public abstract class CommitTreeModel{
      * @param graphModel the graph model to remove the commit from
      */
     private void removeCommitFromTree(CommitHelper commitHelper, TreeGraphModel graphModel){
-        String commitID = RepoHelper.getCommitId(commitHelper);
-
         this.commitsInModel.remove(commitHelper);
         this.localCommitsInModel.remove(commitHelper);
         this.remoteCommitsInModel.remove(commitHelper);
 
-        graphModel.removeCell(commitID);
+        graphModel.removeCell(commitHelper);
     }
 
     private void updateCommitFill(CommitHelper helper, TreeGraphModel graphModel, RepoHelper repo) {
-        Cell.CellType type = (repo.getLocalCommits().contains(helper)) ?
-                (repo.getRemoteCommits().contains(helper)) ? Cell.CellType.BOTH : Cell.CellType.LOCAL : Cell.CellType.REMOTE;
+        Cell.CellType type = repo.getCommitType(helper);
         this.localCommitsInModel.remove(helper);
         this.remoteCommitsInModel.remove(helper);
         switch (type) {
@@ -334,21 +438,62 @@ public abstract class CommitTreeModel{
             default:
                 break;
         }
-        graphModel.setCellType(helper.getId(), type);
+        graphModel.setCellType(helper, type);
     }
 
     /**
-     * Constructs and returns a context menu corresponding to the given tag. Will
-     * be shown on right click on the tag label
-     * @param tagHelper the tag that this context menu will refer to
+     * Shows the menu for the given commit, which is made the first time a commit
+     * is right clicked
+     * @param commitId the commit that was right clicked
+     * @param anchor the node that was clicked
+     * @param screenX the x coordinate of the click on the screen
+     * @param screenY the y coordinate of the click on the screen
+     */
+    void showCommitMenu(ObjectId commitId, Node anchor, double screenX, double screenY) {
+        CommitHelper commit = sessionModel.getCurrentRepoHelper().getCommit(commitId);
+        if (commit == null) return;
+        if (this.commitMenu == null) this.commitMenu = getContextMenu();
+        this.menuCommit = commit;
+        show(this.commitMenu, anchor, screenX, screenY);
+    }
+
+    /**
+     * Shows the menu for the given branch or tag, which is made the first time a label
+     * of its kind is clicked
+     * @param ref the branch or tag whose label was clicked
+     * @param anchor the label that was clicked
+     * @param screenX the x coordinate of the click on the screen
+     * @param screenY the y coordinate of the click on the screen
+     */
+    void showRefMenu(RefHelper ref, Node anchor, double screenX, double screenY) {
+        this.menuRef = ref;
+        if (ref instanceof TagHelper) {
+            if (this.tagLabelMenu == null) this.tagLabelMenu = getTagLabelMenu();
+            show(this.tagLabelMenu, anchor, screenX, screenY);
+        } else {
+            if (this.branchLabelMenu == null) this.branchLabelMenu = getBranchLabelMenu();
+            show(this.branchLabelMenu, anchor, screenX, screenY);
+        }
+    }
+
+    private static void show(ContextMenu menu, Node anchor, double screenX, double screenY) {
+        // The menu may still be up for another commit or ref
+        menu.hide();
+        menu.show(anchor, screenX, screenY);
+    }
+
+    /**
+     * Constructs and returns the context menu for tags. Will be shown on right
+     * click on a tag label, for the tag it was last shown for
      * @return the context menu with a delete option
      */
-    public ContextMenu getTagLabelMenu(TagHelper tagHelper) {
+    private ContextMenu getTagLabelMenu() {
         ContextMenu contextMenu = new ContextMenu();
 
         MenuItem deleteitem = new MenuItem("Delete");
         deleteitem.setOnAction(event -> {
             logger.info("Delete tag dialog started.");
+            TagHelper tagHelper = (TagHelper) this.menuRef;
             if (tagHelper.presentDeleteDialog()) {
                 try {
                     sessionModel.getCurrentRepoHelper().getTagModel().deleteTag(tagHelper.getRefName());
@@ -364,19 +509,18 @@ public abstract class CommitTreeModel{
     }
 
     /**
-     * Constructs and returns a context menu corresponding to the given branch. Will
-     * be shown on right click on the branch label
-     * @param branch the branch to have a menu for
+     * Constructs and returns the context menu for branches. Will be shown on right
+     * click on a branch label, for the branch it was last shown for
      * @return the context menu with various options related to branches
      */
-    private ContextMenu getBranchLabelMenu(BranchHelper branch) {
+    private ContextMenu getBranchLabelMenu() {
         ContextMenu contextMenu = new ContextMenu();
 
         MenuItem checkoutItem = new MenuItem("Checkout");
-        checkoutItem.setOnAction(event -> CommitTreeController.sessionController.checkoutBranch(branch) );
+        checkoutItem.setOnAction(event -> CommitTreeController.sessionController.checkoutBranch((BranchHelper) this.menuRef));
 
         MenuItem deleteitem = new MenuItem("Delete");
-        deleteitem.setOnAction(event -> CommitTreeController.sessionController.deleteBranch(branch) );
+        deleteitem.setOnAction(event -> CommitTreeController.sessionController.deleteBranch((BranchHelper) this.menuRef));
 
         contextMenu.getItems().addAll(checkoutItem, deleteitem);
 
@@ -385,22 +529,21 @@ public abstract class CommitTreeModel{
 
 
     /**
-     * Constructs and returns a context menu corresponding to the given commit. Will
-     * be shown on right click in the tree diagram
-     * @param commit the commit for which this context menu is for
-     * @return the context menu for the commit
+     * Constructs and returns the context menu for commits. Will be shown on right
+     * click in the tree diagram, for the commit it was last shown for
+     * @return the context menu for commits
      */
-    private ContextMenu getContextMenu(CommitHelper commit){
+    private ContextMenu getContextMenu(){
         ContextMenu contextMenu = new ContextMenu();
 
         MenuItem checkoutItem = new MenuItem("Checkout files...");
         checkoutItem.setOnAction(event -> {
             logger.info("Checkout files from commit button clicked");
-            CommitTreeController.sessionController.handleCheckoutFilesButton(commit);
+            CommitTreeController.sessionController.handleCheckoutFilesButton(this.menuCommit);
         });
-        Menu relativesMenu = getRelativesMenu(commit);
-        Menu revertMenu = getRevertMenu(commit);
-        Menu resetMenu = getResetMenu(commit);
+        Menu relativesMenu = getRelativesMenu();
+        Menu revertMenu = getRevertMenu();
+        Menu resetMenu = getResetMenu();
 
         contextMenu.getItems().addAll(revertMenu, resetMenu, checkoutItem, new SeparatorMenuItem(), relativesMenu);
 
@@ -409,28 +552,27 @@ public abstract class CommitTreeModel{
 
     /**
      * Helper method for getContextMenu that gets the relativesMenu
-     * @param commit CommitHelper
      * @return relativesMenu
      */
-    private Menu getRelativesMenu(CommitHelper commit) {
+    private Menu getRelativesMenu() {
         Menu relativesMenu = new Menu("Show Relatives");
 
         MenuItem parentsItem = new MenuItem("Parents");
         parentsItem.setOnAction(event -> {
             logger.info("Selected see parents");
-            CommitTreeController.selectCommit(commit.getId(), true, false, false);
+            CommitTreeController.selectCommit(this.menuCommit, true, false, false);
         });
 
         MenuItem childrenItem = new MenuItem("Children");
         childrenItem.setOnAction(event -> {
             logger.info("Selected see children");
-            CommitTreeController.selectCommit(commit.getId(), false, true, false);
+            CommitTreeController.selectCommit(this.menuCommit, false, true, false);
         });
 
         MenuItem parentsAndChildrenItem = new MenuItem("Both");
         parentsAndChildrenItem.setOnAction(event -> {
             logger.info("Selected see children and parents");
-            CommitTreeController.selectCommit(commit.getId(), true, true, false);
+            CommitTreeController.selectCommit(this.menuCommit, true, true, false);
         });
 
         relativesMenu.getItems().setAll(parentsItem, childrenItem, parentsAndChildrenItem);
@@ -440,22 +582,21 @@ public abstract class CommitTreeModel{
 
     /**
      * Helper method for getContextMenu that initializes the revert part of the menu
-     * @param commit CommitHelper
      * @return revertMenu
      */
-    private Menu getRevertMenu(CommitHelper commit) {
+    private Menu getRevertMenu() {
         Menu revertMenu = new Menu("Revert...");
         MenuItem revertItem = new MenuItem("Revert this commit");
         MenuItem revertMultipleItem = new MenuItem("Revert multiple commits...");
         revertMultipleItem.disableProperty().bind(CommitTreeController.multipleNotSelectedProperty);
         MenuItem helpItem = new MenuItem("Help");
 
-        revertItem.setOnAction(event -> CommitTreeController.sessionController.handleRevertButton(commit));
+        revertItem.setOnAction(event -> CommitTreeController.sessionController.handleRevertButton(this.menuCommit));
 
         revertMultipleItem.setOnAction(event -> {
             // Some fancy lambda syntax and collect call
             List<CommitHelper> commits = commitsInModel.stream().filter(commitHelper ->
-                    CommitTreeController.getSelectedIds().contains(commitHelper.getName())).collect(Collectors.toList());
+                    CommitTreeController.getSelectedIds().contains(commitHelper)).collect(Collectors.toList());
             CommitTreeController.sessionController.handleRevertMultipleButton(commits);
         });
 
@@ -466,13 +607,13 @@ public abstract class CommitTreeModel{
         return revertMenu;
     }
 
-    private Menu getResetMenu(CommitHelper commit) {
+    private Menu getResetMenu() {
         Menu resetMenu = new Menu("Reset...");
         MenuItem resetItem = new MenuItem("Reset to this commit");
         MenuItem helpItem = new MenuItem("Help");
-        Menu advancedMenu = getAdvancedResetMenu(commit);
+        Menu advancedMenu = getAdvancedResetMenu();
 
-        resetItem.setOnAction(event -> CommitTreeController.sessionController.handleResetButton(commit));
+        resetItem.setOnAction(event -> CommitTreeController.sessionController.handleResetButton(this.menuCommit));
 
         helpItem.setOnAction(event -> PopUpWindows.showResetHelpAlert());
 
@@ -481,18 +622,18 @@ public abstract class CommitTreeModel{
         return resetMenu;
     }
 
-    private Menu getAdvancedResetMenu(CommitHelper commit) {
+    private Menu getAdvancedResetMenu() {
         Menu resetMenu = new Menu("Advanced");
         MenuItem hardItem = new MenuItem("reset --hard");
         MenuItem mixedItem = new MenuItem("reset --mixed");
         MenuItem softItem = new MenuItem("reset --soft");
 
         hardItem.setOnAction(event ->
-                CommitTreeController.sessionController.handleAdvancedResetButton(commit, ResetCommand.ResetType.HARD));
+                CommitTreeController.sessionController.handleAdvancedResetButton(this.menuCommit, ResetCommand.ResetType.HARD));
         mixedItem.setOnAction(event ->
-                CommitTreeController.sessionController.handleAdvancedResetButton(commit, ResetCommand.ResetType.MIXED));
+                CommitTreeController.sessionController.handleAdvancedResetButton(this.menuCommit, ResetCommand.ResetType.MIXED));
         softItem.setOnAction(event ->
-                CommitTreeController.sessionController.handleAdvancedResetButton(commit, ResetCommand.ResetType.SOFT));
+                CommitTreeController.sessionController.handleAdvancedResetButton(this.menuCommit, ResetCommand.ResetType.SOFT));
 
         resetMenu.getItems().setAll(hardItem, mixedItem, softItem);
 
@@ -528,11 +669,9 @@ public abstract class CommitTreeModel{
      * @param tracked whether or not the commit is the head of a tracked branch
      */
     public void setCommitAsBranchHead(CommitHelper helper, boolean tracked) {
-        String commitId="";
-        commitId = helper.getId();
         CellShape shape = (tracked) ? Cell.TRACKED_BRANCH_HEAD_SHAPE : Cell.UNTRACKED_BRANCH_HEAD_SHAPE;
 
-        treeGraph.treeGraphModel.setCellShape(commitId, shape);
+        treeGraph.treeGraphModel.setCellShape(helper, shape);
         /*
         RepoHelper repo = sessionModel.getCurrentRepoHelper();
         String displayLabel = repo.getCommitDescriptorString(commitId, false);
@@ -553,42 +692,34 @@ public abstract class CommitTreeModel{
 
         List<RemoteBranchHelper> remotes = repo.getBranchModel().getRemoteBranchesTyped();
 
-        Map<RefHelper, ContextMenu> menuMap = new HashMap<>();
         List<String> remoteBranches = new ArrayList<>();
 
         this.tagsInModel = repo.getTagModel().getAllTags();
 
-        Map<String, List<RefHelper>> commitLabelMap = new HashMap<>();
+        Map<CommitHelper, List<RefHelper>> commitLabelMap = new HashMap<>();
 
-        addCommitRefMaps(refHelpers, commitLabelMap, menuMap);
+        addCommitRefMaps(refHelpers, commitLabelMap);
 
         for (RemoteBranchHelper helper : remotes) {
             remoteBranches.add(helper.getRefName());
         }
 
         // Set the labels
-        for (String commit : commitLabelMap.keySet()) {
+        for (CommitHelper commit : commitLabelMap.keySet()) {
             if(this.sessionModel.getCurrentRepoHelper().getCommit(commit) != null) {
-                String displayLabel = repo.getCommitDescriptorString(commit, false);
-                treeGraph.treeGraphModel.setCellLabels(commit, displayLabel, commitLabelMap.get(commit));
+                treeGraph.treeGraphModel.setCellLabels(commit, () -> repo.getCommitDescriptorString(commit, false),
+                        commitLabelMap.get(commit));
                 treeGraph.treeGraphModel.setCurrentCellLabels(commit, this.sessionModel.getCurrentRepoHelper().getBranchModel().getCurrentAbbrevBranches());
 
-                treeGraph.treeGraphModel.setLabelMenus(commit, menuMap);
                 treeGraph.treeGraphModel.setRemoteBranchCells(commit, remoteBranches);
             }
         }
     }
 
-    private void addCommitRefMaps(List<RefHelper> helpers, Map<String, List<RefHelper>> commitLabelMap,
-                                                          Map<RefHelper, ContextMenu> menuMap) {
-        String commitId;
+    private void addCommitRefMaps(List<RefHelper> helpers, Map<CommitHelper, List<RefHelper>> commitLabelMap) {
+        CommitHelper commitId;
         for (RefHelper helper : helpers) {
-            commitId = helper.getCommit().getId();
-
-            if (helper instanceof TagHelper)
-                menuMap.put(helper, getTagLabelMenu((TagHelper)helper));
-            else
-                menuMap.put(helper, getBranchLabelMenu((BranchHelper)helper));
+            commitId = helper.getCommit();
 
             if (commitLabelMap.containsKey(commitId))
                 commitLabelMap.get(commitId).add(helper);
@@ -604,14 +735,14 @@ public abstract class CommitTreeModel{
      * Forgets information about tracked/untracked branch heads in the tree and updates the model
      */
     public void resetBranchHeads(){
-        List<String> resetIDs = treeGraph.treeGraphModel.resetCellShapes();
+        List<ObjectId> resetIDs = treeGraph.treeGraphModel.resetCellShapes();
         RepoHelper repo = sessionModel.getCurrentRepoHelper();
         this.branchesInModel = repo.getBranchModel().getAllBranches();
-        for(String id : resetIDs){
-            if(this.sessionModel.getCurrentRepoHelper().getCommit(id) != null) {
-                String displayLabel = repo.getCommitDescriptorString(id, false);
+        for(ObjectId id : resetIDs){
+            CommitHelper commit = repo.getCommit(id);
+            if(commit != null) {
                 List<RefHelper> branchLabels = new ArrayList<>();
-                treeGraph.treeGraphModel.setCellLabels(id, displayLabel, branchLabels);
+                treeGraph.treeGraphModel.setCellLabels(id, () -> repo.getCommitDescriptorString(commit, false), branchLabels);
             }
         }
         updateAllRefLabels();
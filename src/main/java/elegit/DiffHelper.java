@@ -7,7 +7,6 @@ import javafx.scene.text.Text;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.diff.DiffFormatter;
 import org.eclipse.jgit.lib.ObjectId;
-import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevTree;
@@ -40,10 +39,12 @@ import java.util.ArrayList;
  */
 public class DiffHelper {
 
+    RepoHelper repoHelper;
     Repository repo;
     String pathFilter;
 
     public DiffHelper(Path relativeFilePath, RepoHelper repo) throws IOException {
+        this.repoHelper = repo;
         this.repo = repo.getRepo();
         this.pathFilter = relativeFilePath.toString();
     }
@@ -60,7 +61,7 @@ public class DiffHelper {
         formatter.setRepository(this.repo);
         formatter.setPathFilter(PathFilter.create(this.pathFilter.replaceAll("\\\\","/")));
 
-        AbstractTreeIterator commitTreeIterator = prepareTreeParser(this.repo, head.getName());
+        AbstractTreeIterator commitTreeIterator = prepareTreeParser(head.getName());
         FileTreeIterator workTreeIterator = new FileTreeIterator(this.repo);
 
         // Scan gets difference between the two iterators.
@@ -114,18 +115,16 @@ public class DiffHelper {
         return scrollPane;
     }
 
-    private static AbstractTreeIterator prepareTreeParser(Repository repository, String objectId) throws IOException {
+    private AbstractTreeIterator prepareTreeParser(String objectId) throws IOException {
         // from the commit we can build the tree which allows us to construct the TreeParser
-        try (RevWalk walk = new RevWalk(repository)){
+        try (ObjectAccessPool.Lease lease = this.repoHelper.getObjectAccess().borrow()){
+            RevWalk walk = lease.getWalk();
             RevCommit commit = walk.parseCommit(ObjectId.fromString(objectId));
             RevTree tree = walk.parseTree(commit.getTree().getId());
 
+            // The parser reads the whole tree up front, so it doesn't need the reader afterwards
             CanonicalTreeParser oldTreeParser = new CanonicalTreeParser();
-            try (ObjectReader oldReader = repository.newObjectReader()){
-                oldTreeParser.reset(oldReader, tree.getId());
-            }
-
-            walk.dispose();
+            oldTreeParser.reset(lease.getReader(), tree.getId());
             return oldTreeParser;
         }
     }
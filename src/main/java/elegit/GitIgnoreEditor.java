@@ -102,6 +102,7 @@ public class GitIgnoreEditor {
                     bw.newLine();
                 }
             } catch (IOException ignored) {}
+            repoHelper.invalidateIgnoreRules(gitIgnoreFile);
         }
 
         try{
@@ -0,0 +1,83 @@
+package elegit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A resumable walk over a repository's commit graph that hands out the history a page at a time,
+ * newest commits first. Every commit comes after all of its children, and of the commits whose
+ * children have all been walked the newest one goes next, which is the order the tree layout
+ * sorts cells in.
+ *
+ * The walk keeps its place between pages, so getting the next page only costs as much as the
+ * commits on it. It works on the graph as it was when the walk started: once commits are added
+ * to or dropped from the graph the walk is stale, and a new one has to be started.
+ */
+public class HistoryWalk {
+
+    private final CommitGraph graph;
+    private final int modCount;
+
+    // How many children of each commit haven't been walked yet, by index
+    private final int[] remainingChildren;
+    // The commits whose children have all been walked, newest first
+    private final PriorityQueue<Integer> ready;
+
+    /**
+     * @param graph the commit graph to walk
+     */
+    HistoryWalk(CommitGraph graph) {
+        this.graph = graph;
+        this.modCount = graph.getModCount();
+        this.remainingChildren = new int[graph.size()];
+        this.ready = new PriorityQueue<>(16, (i, j) -> {
+            int byTime = Long.compare(graph.getTime(j), graph.getTime(i));
+            // Children come later in the graph, so the later one goes first on a tie
+            return byTime != 0 ? byTime : Integer.compare(j, i);
+        });
+
+        for (int i = 0; i < graph.size(); i++) {
+            this.remainingChildren[i] = graph.getChildCount(i);
+            if (this.remainingChildren[i] == 0) {
+                this.ready.add(i);
+            }
+        }
+    }
+
+    /**
+     * @return true if every commit has been walked
+     */
+    public boolean isDone() {
+        return this.ready.isEmpty();
+    }
+
+    /**
+     * @return true if the graph changed since this walk started, so it shouldn't be continued
+     */
+    public boolean isStale() {
+        return this.graph.getModCount() != this.modCount;
+    }
+
+    /**
+     * Walks the next page of the history
+     *
+     * @param count the most commits to walk
+     * @return the next commits in the walk, newest first. Fewer than count only once the walk is done
+     */
+    public List<CommitHelper> next(int count) {
+        List<CommitHelper> page = new ArrayList<>(Math.min(count, this.graph.size()));
+        while (page.size() < count && !this.ready.isEmpty()) {
+            int cur = this.ready.poll();
+            page.add(this.graph.get(cur));
+
+            for (int n = 0; n < this.graph.getParentCount(cur); n++) {
+                int parent = this.graph.getParent(cur, n);
+                if (--this.remainingChildren[parent] == 0) {
+                    this.ready.add(parent);
+                }
+            }
+        }
+        return page;
+    }
+}
@@ -0,0 +1,291 @@
+package elegit;
+
+import org.eclipse.jgit.ignore.IgnoreNode;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the tracked files of a repository that its ignore rules match, and remembers what it
+ * found in each directory so later checks only redo the directories that changed.
+ *
+ * Like git, each .gitignore only applies to the directory it is in and the ones below it, with
+ * deeper files taking precedence, then info/exclude, then the global excludes file. Each ignore
+ * file is parsed once and kept until its modification time or size changes or it is invalidated.
+ * A directory is matched again only if its tree in HEAD or the rules that apply to it changed, so
+ * after an edit to one .gitignore only the directories below it are matched again.
+ */
+class IgnoreRuleCache {
+
+    private final Path workTree;
+
+    // The parsed rules of every ignore file looked at so far
+    private final Map<Path, Rules> rulesByFile;
+    // What each directory of HEAD's tree held the last time, by its path in the repository
+    private Map<String, Directory> directories;
+    // The rules from outside of the work tree
+    private RuleChain globalChain, excludeChain;
+
+    private long directoriesMatched;
+
+    /**
+     * @param workTree the root of the work tree the .gitignore files are in
+     */
+    IgnoreRuleCache(Path workTree) {
+        this.workTree = workTree;
+        this.rulesByFile = new HashMap<>();
+        this.directories = new HashMap<>();
+    }
+
+    /**
+     * Finds every tracked file and directory in the given tree that an ignore rule matches,
+     * reusing what was found for the directories that haven't changed since the last call
+     *
+     * @param treeWalk a walk to read trees with
+     * @param tree the tree of the commit to check, usually HEAD's
+     * @param globalIgnore the global excludes file, or null if there isn't one
+     * @param infoExclude the info/exclude file of the repository, which need not exist
+     * @return the paths of the ignored files and directories, relative to the work tree
+     * @throws IOException
+     */
+    synchronized Collection<String> getTrackedIgnoredFiles(TreeWalk treeWalk, AnyObjectId tree,
+                                                           Path globalIgnore, Path infoExclude) throws IOException {
+        this.globalChain = globalIgnore == null ? null
+                : RuleChain.extend(null, "", this.getRules(globalIgnore), this.globalChain);
+        this.excludeChain = RuleChain.extend(this.globalChain, "", this.getRules(infoExclude), this.excludeChain);
+
+        Map<String, Directory> visited = new HashMap<>();
+        Collection<String> ignored = new HashSet<>();
+        this.visit("", tree.copy(), this.excludeChain, false, treeWalk, visited, ignored);
+
+        // Directories that are gone from the tree are dropped along the way
+        this.directories = visited;
+        return ignored;
+    }
+
+    /**
+     * Makes the given ignore file be parsed again the next time it is needed, even if its
+     * modification time and size look the same, e.g. right after saving it
+     *
+     * @param ignoreFile the ignore file that changed
+     */
+    synchronized void invalidate(Path ignoreFile) {
+        this.rulesByFile.remove(ignoreFile);
+    }
+
+    /**
+     * @return how many times the entries of a directory have been matched against the rules
+     */
+    synchronized long getDirectoriesMatched() {
+        return this.directoriesMatched;
+    }
+
+    /**
+     * Adds the ignored entries of the given directory, and of every directory below it, to the
+     * given collection. Directories whose tree and rules are the same as last time aren't read
+     * or matched again
+     */
+    private void visit(String path, ObjectId treeId, RuleChain parentChain, boolean isIgnored, TreeWalk treeWalk,
+                       Map<String, Directory> visited, Collection<String> ignored) throws IOException {
+        String prefix = path.isEmpty() ? "" : path + "/";
+        Directory cached = this.directories.get(path);
+
+        Rules rules = this.getRules(this.workTree.resolve(prefix + Constants.DOT_GIT_IGNORE));
+        RuleChain chain = RuleChain.extend(parentChain, prefix, rules, cached == null ? null : cached.chain);
+
+        Directory directory;
+        if (cached != null && cached.chain == chain && cached.isIgnored == isIgnored && cached.treeId.equals(treeId)) {
+            directory = cached;
+        } else {
+            directory = this.match(prefix, treeId, chain, isIgnored, treeWalk);
+        }
+
+        visited.put(path, directory);
+        ignored.addAll(directory.ignored);
+        for (int i = 0; i < directory.subdirectoryNames.length; i++) {
+            this.visit(prefix + directory.subdirectoryNames[i], directory.subdirectoryIds[i], chain,
+                       directory.subdirectoriesIgnored[i], treeWalk, visited, ignored);
+        }
+    }
+
+    /**
+     * Reads the entries of a directory and matches each against the rules that apply to it
+     *
+     * @param prefix the path of the directory, with a trailing slash unless it is the root
+     * @param treeId the tree of the directory
+     * @param chain the rules that apply inside the directory
+     * @param isIgnored whether the directory itself is ignored
+     * @param treeWalk the walk to read the tree with
+     * @return what was found in the directory
+     * @throws IOException
+     */
+    private Directory match(String prefix, ObjectId treeId, RuleChain chain, boolean isIgnored,
+                            TreeWalk treeWalk) throws IOException {
+        List<String> ignored = new ArrayList<>();
+        List<String> subdirectoryNames = new ArrayList<>();
+        List<ObjectId> subdirectoryIds = new ArrayList<>();
+        List<Boolean> subdirectoriesIgnored = new ArrayList<>();
+
+        treeWalk.reset(treeId);
+        treeWalk.setRecursive(false);
+        while (treeWalk.next()) {
+            String entryPath = prefix + treeWalk.getNameString();
+            boolean isSubtree = treeWalk.isSubtree();
+
+            IgnoreNode.MatchResult result = chain.match(entryPath, isSubtree);
+            boolean isEntryIgnored = result == IgnoreNode.MatchResult.IGNORED
+                    || (isIgnored && result == IgnoreNode.MatchResult.CHECK_PARENT);
+            if (isEntryIgnored) ignored.add(entryPath);
+
+            if (isSubtree) {
+                subdirectoryNames.add(treeWalk.getNameString());
+                subdirectoryIds.add(treeWalk.getObjectId(0));
+                subdirectoriesIgnored.add(isEntryIgnored);
+            }
+        }
+        this.directoriesMatched++;
+
+        boolean[] subdirectoriesIgnoredArray = new boolean[subdirectoriesIgnored.size()];
+        for (int i = 0; i < subdirectoriesIgnoredArray.length; i++) {
+            subdirectoriesIgnoredArray[i] = subdirectoriesIgnored.get(i);
+        }
+        return new Directory(treeId, chain, isIgnored, ignored,
+                             subdirectoryNames.toArray(new String[subdirectoryNames.size()]),
+                             subdirectoryIds.toArray(new ObjectId[subdirectoryIds.size()]),
+                             subdirectoriesIgnoredArray);
+    }
+
+    /**
+     * @param file the ignore file to get the rules of
+     * @return the rules in the file, parsed again only if it changed since they were last parsed
+     * @throws IOException
+     */
+    private Rules getRules(Path file) throws IOException {
+        long modified = -1;
+        long size = -1;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (attributes.isRegularFile()) {
+                modified = attributes.lastModifiedTime().toMillis();
+                size = attributes.size();
+            }
+        } catch (NoSuchFileException e) {
+            // No rules here
+        }
+
+        Rules rules = this.rulesByFile.get(file);
+        if (rules == null || rules.modified != modified || rules.size != size) {
+            IgnoreNode node = null;
+            if (modified >= 0) {
+                node = new IgnoreNode();
+                try (InputStream in = Files.newInputStream(file)) {
+                    node.parse(in);
+                }
+            }
+            rules = new Rules(modified, size, node);
+            this.rulesByFile.put(file, rules);
+        }
+        return rules;
+    }
+
+    /**
+     * The parsed rules of one ignore file, as of when it was read
+     */
+    private static class Rules {
+        final long modified;
+        final long size;
+        // Null if there is no such file
+        final IgnoreNode node;
+
+        Rules(long modified, long size, IgnoreNode node) {
+            this.modified = modified;
+            this.size = size;
+            this.node = node;
+        }
+    }
+
+    /**
+     * The rules that apply inside one directory: its own, then those of the directories above
+     * it. A chain is only replaced when some rules in it change, so an unchanged chain is the
+     * very same object as last time
+     */
+    private static class RuleChain {
+        final RuleChain parent;
+        // The path of the directory the rules are in, which their patterns are relative to
+        final String prefix;
+        final Rules rules;
+
+        private RuleChain(RuleChain parent, String prefix, Rules rules) {
+            this.parent = parent;
+            this.prefix = prefix;
+            this.rules = rules;
+        }
+
+        /**
+         * @return the chain of the given rules on top of the given parent, which is the cached
+         * chain if that was built from the same parent and rules
+         */
+        static RuleChain extend(RuleChain parent, String prefix, Rules rules, RuleChain cached) {
+            if (cached != null && cached.parent == parent && cached.rules == rules) {
+                return cached;
+            }
+            return new RuleChain(parent, prefix, rules);
+        }
+
+        /**
+         * @param path the path of an entry, relative to the work tree
+         * @param isDirectory whether the entry is a directory
+         * @return whether the innermost rule matching the entry ignores it, or CHECK_PARENT if
+         * no rule matches it
+         */
+        IgnoreNode.MatchResult match(String path, boolean isDirectory) {
+            for (RuleChain chain = this; chain != null; chain = chain.parent) {
+                if (chain.rules.node == null) continue;
+                IgnoreNode.MatchResult result = chain.rules.node.isIgnored(path.substring(chain.prefix.length()), isDirectory);
+                if (result == IgnoreNode.MatchResult.IGNORED || result == IgnoreNode.MatchResult.NOT_IGNORED) {
+                    return result;
+                }
+            }
+            return IgnoreNode.MatchResult.CHECK_PARENT;
+        }
+    }
+
+    /**
+     * What was found in one directory of a tree
+     */
+    private static class Directory {
+        final ObjectId treeId;
+        final RuleChain chain;
+        final boolean isIgnored;
+        // The ignored entries directly in this directory
+        final List<String> ignored;
+        final String[] subdirectoryNames;
+        final ObjectId[] subdirectoryIds;
+        final boolean[] subdirectoriesIgnored;
+
+        Directory(ObjectId treeId, RuleChain chain, boolean isIgnored, List<String> ignored, String[] subdirectoryNames,
+                  ObjectId[] subdirectoryIds, boolean[] subdirectoriesIgnored) {
+            this.treeId = treeId;
+            this.chain = chain;
+            this.isIgnored = isIgnored;
+            this.ignored = ignored;
+            this.subdirectoryNames = subdirectoryNames;
+            this.subdirectoryIds = subdirectoryIds;
+            this.subdirectoriesIgnored = subdirectoriesIgnored;
+        }
+    }
+}
@@ -17,7 +17,6 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.jgit.api.MergeResult;
 import org.eclipse.jgit.api.errors.*;
-import org.eclipse.jgit.lib.BranchTrackingStatus;
 import org.eclipse.jgit.lib.Repository;
 
 import java.io.IOException;
@@ -119,7 +118,7 @@ public class MergeWindowController {
      */
     private void initText() throws IOException {
         String curBranch = repoHelper.getBranchModel().getCurrentBranch().getRefName();
-        BranchTrackingStatus b = BranchTrackingStatus.of(repoHelper.getRepo(), curBranch);
+        BranchTrackingModel.TrackingStatus b = repoHelper.getBranchModel().getTrackingStatus(curBranch);
         if(b == null) {
             disable = true;
             mergeRemoteTrackingText.setText("This branch does not have an\n" +
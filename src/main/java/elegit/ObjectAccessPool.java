@@ -0,0 +1,212 @@
+package elegit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out object readers and walks for one repository and takes them back afterwards, so
+ * that the inflater, pack window and delta base caches a reader builds up are kept between
+ * operations instead of being thrown away with a new reader every time.
+ *
+ * Readers and walks aren't thread safe, so each one is leased to a single thread at a time.
+ * A lease is meant to be used in a try-with-resources block on the thread that borrowed it,
+ * and everything handed out through it must not be used once it is closed.
+ */
+public class ObjectAccessPool {
+
+    // How many idle readers are kept around for the next lease
+    private static final int MAX_IDLE = 4;
+    // How many leases a shared walk serves before it is replaced, so the objects it has
+    // parsed don't pile up forever
+    private static final int WALK_LEASE_LIMIT = 256;
+
+    private final Repository repo;
+    private final Deque<Slot> idle;
+    private boolean closed;
+
+    private final AtomicLong readersCreated = new AtomicLong();
+    private final AtomicLong readersReused = new AtomicLong();
+    private final AtomicLong walksCreated = new AtomicLong();
+    private final AtomicLong walksReused = new AtomicLong();
+
+    static final Logger logger = LogManager.getLogger();
+
+    /**
+     * @param repo the repository to read objects from
+     */
+    public ObjectAccessPool(Repository repo) {
+        this.repo = repo;
+        this.idle = new ArrayDeque<>();
+    }
+
+    /**
+     * Leases a reader, and the walks built on it, to the calling thread until the lease is closed
+     *
+     * @return the lease
+     */
+    public Lease borrow() {
+        Slot slot;
+        synchronized (this) {
+            slot = this.idle.pollFirst();
+        }
+        if (slot == null) {
+            slot = new Slot(this.repo.newObjectReader());
+            this.readersCreated.incrementAndGet();
+        } else {
+            this.readersReused.incrementAndGet();
+        }
+        return new Lease(slot);
+    }
+
+    private void giveBack(Slot slot) {
+        synchronized (this) {
+            if (!this.closed && this.idle.size() < MAX_IDLE) {
+                this.idle.addFirst(slot);
+                return;
+            }
+        }
+        slot.reader.close();
+    }
+
+    /**
+     * Closes every idle reader. Readers still out on lease are closed when they come back
+     */
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+            for (Slot slot : this.idle) {
+                slot.reader.close();
+            }
+            this.idle.clear();
+        }
+        logger.debug("Object access for " + this.repo.getDirectory() + ": " + this);
+    }
+
+    /**
+     * @return the number of readers opened so far
+     */
+    public long getReadersCreated() {
+        return this.readersCreated.get();
+    }
+
+    /**
+     * @return the number of leases that got a reader an earlier lease had already opened
+     */
+    public long getReadersReused() {
+        return this.readersReused.get();
+    }
+
+    /**
+     * @return the number of walks created so far
+     */
+    public long getWalksCreated() {
+        return this.walksCreated.get();
+    }
+
+    /**
+     * @return the number of times a walk an earlier lease had already created was handed out again
+     */
+    public long getWalksReused() {
+        return this.walksReused.get();
+    }
+
+    @Override
+    public String toString() {
+        return "readers " + getReadersCreated() + " created/" + getReadersReused() + " reused, walks "
+                + getWalksCreated() + " created/" + getWalksReused() + " reused";
+    }
+
+    /**
+     * A reader and the walk that is shared by the leases of the reader
+     */
+    private static class Slot {
+        final ObjectReader reader;
+        RevWalk walk;
+        int walkLeases;
+
+        Slot(ObjectReader reader) {
+            this.reader = reader;
+        }
+    }
+
+    /**
+     * A reader leased to one thread, along with walks over it
+     */
+    public class Lease implements AutoCloseable {
+        private Slot slot;
+        private boolean usedWalk;
+
+        private Lease(Slot slot) {
+            this.slot = slot;
+        }
+
+        /**
+         * @return the leased reader
+         */
+        public ObjectReader getReader() {
+            return this.slot.reader;
+        }
+
+        /**
+         * Gets the walk shared by every lease of this reader, for parsing single objects. It may
+         * already hold objects parsed during earlier leases, so it is no good for walks that mark
+         * starting points, sort or set flags. Never dispose of it, as that closes the reader.
+         *
+         * @return the shared walk, reset
+         */
+        public RevWalk getWalk() {
+            if (this.slot.walk == null) {
+                this.slot.walk = new RevWalk(this.slot.reader);
+                this.slot.walkLeases = 0;
+                walksCreated.incrementAndGet();
+            } else if (!this.usedWalk) {
+                walksReused.incrementAndGet();
+            }
+            if (!this.usedWalk) {
+                this.slot.walkLeases++;
+                this.usedWalk = true;
+            }
+            this.slot.walk.reset();
+            return this.slot.walk;
+        }
+
+        /**
+         * Makes a new walk over the leased reader, for walks that need a clean start. Close it
+         * rather than dispose of it, as disposing closes the reader.
+         *
+         * @return the new walk
+         */
+        public RevWalk newWalk() {
+            walksCreated.incrementAndGet();
+            return new RevWalk(this.slot.reader);
+        }
+
+        /**
+         * @return a new tree walk over the leased reader
+         */
+        public TreeWalk newTreeWalk() {
+            return new TreeWalk(this.slot.reader);
+        }
+
+        /**
+         * Gives the reader back to the pool
+         */
+        @Override
+        public void close() {
+            if (this.slot == null) return;
+            if (this.slot.walkLeases >= WALK_LEASE_LIMIT) {
+                this.slot.walk = null;
+            }
+            giveBack(this.slot);
+            this.slot = null;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package elegit;
+
+import elegit.exceptions.CancelledAuthorizationException;
+import org.eclipse.jgit.api.errors.GitAPIException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A repository in the recent repositories list. Until it is opened, only its path and what
+ * HEAD was when it was last open are kept, so listing recent repositories doesn't have to
+ * parse any of them. The full RepoHelper is built the first time it is asked for, and can
+ * be closed down to just the path again when the session needs room for other repositories.
+ */
+public class RecentRepo {
+
+    private final Path localPath;
+    private volatile String lastHead;
+    // Only ever set while holding the lock, but read without it so nobody waits on a build
+    private volatile RepoHelper repoHelper;
+    // When the RepoHelper was last asked for, to find the least recently used repositories
+    private volatile long lastUsed;
+
+    /**
+     * @param localPath the path of the repository
+     * @param lastHead the branch or commit HEAD was on when the repository was last open, or null
+     */
+    public RecentRepo(Path localPath, String lastHead) {
+        this.localPath = localPath;
+        this.lastHead = lastHead;
+        this.lastUsed = System.nanoTime();
+    }
+
+    /**
+     * @param repoHelper the already built RepoHelper of the repository
+     */
+    public RecentRepo(RepoHelper repoHelper) {
+        this(repoHelper.getLocalPath(), null);
+        this.repoHelper = repoHelper;
+    }
+
+    /**
+     * @return the path of the repository
+     */
+    public Path getLocalPath() {
+        return this.localPath;
+    }
+
+    /**
+     * @return the name to show for this repository
+     */
+    public String getDisplayName() {
+        return this.localPath.getFileName().toString();
+    }
+
+    /**
+     * @return the branch or commit HEAD was on when the repository was last open, or null if
+     * that isn't known
+     */
+    public String getLastHead() {
+        RepoHelper loaded = this.repoHelper;
+        if (loaded != null && loaded.getRepo() != null) {
+            try {
+                this.lastHead = loaded.getRepo().getBranch();
+            } catch (IOException e) {
+                // Keep the last one we knew of
+            }
+        }
+        return this.lastHead;
+    }
+
+    /**
+     * @return whether the full RepoHelper has been built yet
+     */
+    public boolean isLoaded() {
+        return this.repoHelper != null;
+    }
+
+    /**
+     * Builds the full RepoHelper of the repository if it hasn't been built yet. Callers asking
+     * while it is being built wait for that build rather than starting another one.
+     *
+     * @return the RepoHelper of the repository
+     * @throws IOException
+     * @throws GitAPIException
+     * @throws CancelledAuthorizationException
+     */
+    public synchronized RepoHelper getRepoHelper() throws IOException, GitAPIException, CancelledAuthorizationException {
+        if (this.repoHelper == null) {
+            this.repoHelper = new ExistingRepoHelper(this.localPath, new ElegitUserInfoGUI());
+        }
+        this.lastUsed = System.nanoTime();
+        return this.repoHelper;
+    }
+
+    /**
+     * Uses the given RepoHelper for this repository, unless one was already built
+     *
+     * @param repoHelper a RepoHelper of the same repository
+     * @return the RepoHelper this repository ends up with
+     */
+    synchronized RepoHelper adoptRepoHelper(RepoHelper repoHelper) {
+        if (this.repoHelper == null) {
+            this.repoHelper = repoHelper;
+        }
+        this.lastUsed = System.nanoTime();
+        return this.repoHelper;
+    }
+
+    /**
+     * Closes the repository and drops its RepoHelper, keeping only what a recent repo that
+     * was never opened has. Asking for the RepoHelper again builds a new one, mostly from the
+     * commit graph cache the old one left behind.
+     *
+     * @return true if there was a RepoHelper to drop
+     */
+    synchronized boolean evict() {
+        if (this.repoHelper == null) return false;
+        this.getLastHead();
+        this.repoHelper.closeRepo();
+        this.repoHelper = null;
+        return true;
+    }
+
+    /**
+     * @return when the RepoHelper was last asked for, comparable with System.nanoTime
+     */
+    long getLastUsed() {
+        return this.lastUsed;
+    }
+
+    /**
+     * @return roughly how many bytes of heap the RepoHelper takes up, or 0 if it isn't built
+     */
+    public long getEstimatedHeapSize() {
+        RepoHelper loaded = this.repoHelper;
+        return loaded == null ? 0 : loaded.getEstimatedHeapSize();
+    }
+
+    /**
+     * @return true if the repository is still where it was
+     */
+    public boolean exists() {
+        File directory = this.localPath.toFile();
+        return directory.exists() && directory.list((dir, name) -> name.equals(".git")).length > 0;
+    }
+
+    @Override
+    public String toString() {
+        return this.getDisplayName();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RecentRepo && this.localPath.equals(((RecentRepo) o).localPath);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.localPath.hashCode();
+    }
+}
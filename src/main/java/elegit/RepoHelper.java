@@ -13,23 +13,20 @@ import org.apache.logging.log4j.Logger;
 import org.eclipse.jgit.api.*;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.api.errors.InvalidRemoteException;
-import org.eclipse.jgit.ignore.IgnoreNode;
+import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.lib.*;
-import org.eclipse.jgit.revplot.PlotCommitList;
-import org.eclipse.jgit.revplot.PlotLane;
-import org.eclipse.jgit.revplot.PlotWalk;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevSort;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.transport.*;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.util.FS;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 
 /**
@@ -53,8 +50,18 @@ public class RepoHelper {
     private List<CommitHelper> localCommits;
     private List<CommitHelper> remoteCommits;
 
-    private Map<String, CommitHelper> commitIdMap;
-    private Map<ObjectId, String> idMap;
+    private CommitGraph commitGraph = new CommitGraph(this);
+    private final CommitSearchIndex searchIndex = new CommitSearchIndex();
+    private volatile boolean isIndexingText;
+
+    // The ref tips the commit lists were last built from, keyed by full ref name
+    private Map<String, ObjectId> localRefTips;
+    private Map<String, ObjectId> remoteRefTips;
+
+    private CommitGraphCache commitGraphCache;
+    private ObjectAccessPool objectAccess;
+    // Ignore rules and the tracked files they match, made the first time they are needed
+    private IgnoreRuleCache ignoreRules;
 
     private BranchModel branchModel;
     private TagModel tagModel;
@@ -64,6 +71,9 @@ public class RepoHelper {
     static final Logger logger = LogManager.getLogger();
     protected UsernamePasswordCredentialsProvider ownerAuth;
 
+    // A CommitHelper, its id and its entry in commitIdMap, plus its share of the commit graph's arrays
+    private static final int ESTIMATED_BYTES_PER_COMMIT = 400;
+
 
     /**
      * Creates a RepoHelper object for holding a Repository and interacting with it
@@ -224,13 +234,15 @@ public class RepoHelper {
         //this.repo = this.obtainRepository();
         this.username = null;
 
-        this.commitIdMap = new HashMap<>();
-        this.idMap = new HashMap<>();
-
         this.branchModel = new BranchModel(this);
 
-        this.localCommits = this.parseAllLocalCommits();
-        this.remoteCommits = this.parseAllRemoteCommits();
+        this.commitGraphCache = new CommitGraphCache(this.repo);
+        if (this.loadCommitsFromCache()) {
+            this.updateCommits();
+        } else {
+            this.parseAllCommits();
+            this.saveCommitGraphCache();
+        }
 
         this.tagModel = new TagModel(this);
 
@@ -243,18 +255,15 @@ public class RepoHelper {
     }
 
     /**
-     * Updates the entire model, including commits, branches and tags
-     * Note: this is expensive, but avoids possible errors that faster
-     * possible solutions have
+     * Updates the entire model, including commits, branches and tags.
+     * Commits are updated incrementally, so if no ref has moved this only
+     * costs reading the refs
      */
     public void updateModel() throws GitAPIException, IOException {
-        this.commitIdMap = new HashMap<>();
-        this.idMap = new HashMap<>();
+        // Commits first, so the new branch helpers can find their heads
+        this.updateCommits();
 
         branchModel.updateAllBranches();
-        // Reparse commits
-        this.localCommits = this.parseAllLocalCommits();
-        this.remoteCommits = this.parseAllRemoteCommits();
 
         tagModel.updateTags();
     }
@@ -444,8 +453,9 @@ public class RepoHelper {
      * @return the number of commits that local has that haven't been pushed
      */
     public int getAheadCount() throws IOException {
-        if (this.branchModel.getCurrentBranch().getStatus() != null)
-            return this.branchModel.getCurrentBranch().getStatus().getAheadCount();
+        BranchTrackingModel.TrackingStatus status = this.branchModel.getCurrentBranch().getStatus();
+        if (status != null)
+            return status.getAheadCount();
         else return -1;
     }
 
@@ -456,8 +466,9 @@ public class RepoHelper {
     public int getAheadCountAll() throws IOException {
         int aheadCount = 0;
         for (BranchHelper helper : this.branchModel.getLocalBranchesTyped()) {
-            if (helper.getStatus() != null)
-                aheadCount += helper.getStatus().getAheadCount();
+            BranchTrackingModel.TrackingStatus status = helper.getStatus();
+            if (status != null)
+                aheadCount += status.getAheadCount();
         }
         return aheadCount;
     }
@@ -467,8 +478,9 @@ public class RepoHelper {
      * @throws IOException
      */
     public int getBehindCount() throws IOException {
-        if (this.branchModel.getCurrentBranch().getStatus() != null)
-            return this.branchModel.getCurrentBranch().getStatus().getBehindCount();
+        BranchTrackingModel.TrackingStatus status = this.branchModel.getCurrentBranch().getStatus();
+        if (status != null)
+            return status.getBehindCount();
         else return -1;
     }
 
@@ -491,7 +503,7 @@ public class RepoHelper {
 
         // Update the local commits
         try {
-            this.localCommits = parseAllLocalCommits();
+            this.updateCommits();
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -505,7 +517,7 @@ public class RepoHelper {
         git.commit().setMessage(message).setAll(true).call();
         git.close();
 
-        localCommits = parseAllLocalCommits();
+        this.updateCommits();
     }
 
     /**
@@ -558,7 +570,7 @@ public class RepoHelper {
 
         push.getRepository().close();
 
-        this.remoteCommits = parseAllRemoteCommits();
+        this.updateCommits();
     }
 
     /**
@@ -614,7 +626,7 @@ public class RepoHelper {
 
         // Gets all local branches with remote branches and adds them to the push call
         for(LocalBranchHelper branch : this.branchModel.getLocalBranchesTyped()) {
-            if(BranchTrackingStatus.of(this.repo, branch.getRefName()) != null) {
+            if(branch.getStatus() != null) {
                 push.add(branch.getRefPathString());
             }else {
                 untrackedLocalBranches.add(branch);
@@ -665,7 +677,7 @@ public class RepoHelper {
 
         push.getRepository().close();
 
-        this.remoteCommits = parseAllRemoteCommits();
+        this.updateCommits();
     }
 
     /**
@@ -743,7 +755,7 @@ public class RepoHelper {
         git.close();
 
         try {
-            this.remoteCommits = parseAllRemoteCommits();
+            this.updateCommits();
         } catch (IOException e) {
             // This shouldn't occur once we have the repo up and running.
         }
@@ -787,7 +799,7 @@ public class RepoHelper {
         }
 
         try {
-            this.localCommits = parseAllLocalCommits();
+            this.updateCommits();
         } catch (IOException e) {
             // This shouldn't occur once we have the repo up and running.
         }
@@ -831,7 +843,7 @@ public class RepoHelper {
 
         // Update the local commits
         try {
-            this.localCommits = parseAllLocalCommits();
+            this.updateCommits();
         } catch (IOException e) {
             // This shouldn't occur once we have the repo up and running.
         }
@@ -855,7 +867,7 @@ public class RepoHelper {
 
         // Update the local commits
         try {
-            this.localCommits = parseAllLocalCommits();
+            this.updateCommits();
         } catch (IOException e) {
             // This shouldn't occur once we have the repo up and running.
         }
@@ -1053,6 +1065,9 @@ public class RepoHelper {
     }
 
     public void closeRepo() {
+        synchronized (this) {
+            if (this.objectAccess != null) this.objectAccess.close();
+        }
         this.repo.close();
     }
 
@@ -1063,6 +1078,16 @@ public class RepoHelper {
         return this.repo;
     }
 
+    /**
+     * @return the pool of object readers and walks over this repository
+     */
+    public synchronized ObjectAccessPool getObjectAccess() {
+        if (this.objectAccess == null) {
+            this.objectAccess = new ObjectAccessPool(this.repo);
+        }
+        return this.objectAccess;
+    }
+
     /**
      * @return the local path to the directory holding the repository
      */
@@ -1135,9 +1160,15 @@ public class RepoHelper {
      * @return the commit associated with the parameter
      */
     public CommitHelper getCommit(String idOrRefString) {
-        if (commitIdMap.containsKey(idOrRefString)) {
-            return commitIdMap.get(idOrRefString);
+        CommitHelper commitHelper = ObjectId.isId(idOrRefString) ? getCommit(ObjectId.fromString(idOrRefString)) : null;
+        if (commitHelper != null) {
+            return commitHelper;
         } else {
+            // Abbreviated ids are found without going to the repository
+            List<CommitHelper> matches = searchIndex.findByIdPrefix(idOrRefString);
+            if (matches.size() == 1) {
+                return matches.get(0);
+            }
             try {
                 return getCommit(repo.resolve(idOrRefString));
             } catch (IOException e) {
@@ -1152,12 +1183,11 @@ public class RepoHelper {
      * @param id the id of the commit to get
      * @return the commit associated with the given id, if it has been parsed
      */
-    public CommitHelper getCommit(ObjectId id) {
-        if (idMap.containsKey(id)) {
-            return getCommit(idMap.get(id));
-        } else {
+    public CommitHelper getCommit(AnyObjectId id) {
+        if (id == null) {
             return null;
         }
+        return commitGraph.get(id);
     }
 
     /**
@@ -1167,8 +1197,10 @@ public class RepoHelper {
      * @return the cell type, useful for drawing the tree
      */
     public Cell.CellType getCommitType(CommitHelper helper) {
-        if (this.localCommits.contains(helper))
-            if (this.remoteCommits.contains(helper))
+        if (helper.getGraph() != commitGraph)
+            return Cell.CellType.REMOTE;
+        if (commitGraph.isLocal(helper.getIndex()))
+            if (commitGraph.isRemote(helper.getIndex()))
                 return Cell.CellType.BOTH;
             else
                 return Cell.CellType.LOCAL;
@@ -1176,10 +1208,58 @@ public class RepoHelper {
     }
 
     /**
-     * @return a list of all commit IDs in this repository
+     * Starts a walk over every wrapped commit in this repository, newest first, that can be
+     * read a page at a time
+     *
+     * @return the new walk
+     */
+    public HistoryWalk walkHistory() {
+        return new HistoryWalk(commitGraph);
+    }
+
+    /**
+     * @return the commit graph every wrapped commit in this repository is a view onto
      */
-    public List<String> getAllCommitIDs() {
-        return new ArrayList<>(commitIdMap.keySet());
+    CommitGraph getCommitGraph() {
+        return commitGraph;
+    }
+
+    /**
+     * @return roughly how many bytes of heap the commits of this repository take up
+     */
+    public long getEstimatedHeapSize() {
+        return (long) commitGraph.size() * ESTIMATED_BYTES_PER_COMMIT;
+    }
+
+    /**
+     * Finds the commits matching what has been typed into a search so far. Each word has to
+     * match the beginning of the commit's id, or of a word in its author or message.
+     *
+     * Commits loaded from the commit graph cache can only be found by id until their text has
+     * been read, which the first search starts doing in the background
+     *
+     * @param query the words to search for
+     * @param limit the most commits to return
+     * @return the matching commits, roughly newest first
+     */
+    public List<CommitHelper> searchCommits(String query, int limit) {
+        if (searchIndex.isMissingText() && !isIndexingText) {
+            isIndexingText = true;
+            Thread th = new Thread(() -> {
+                try {
+                    searchIndex.indexMissingText(getObjectAccess());
+                } catch (IOException e) {
+                    logger.warn("Couldn't index the text of every commit");
+                    logger.debug(e.getStackTrace());
+                } finally {
+                    isIndexingText = false;
+                }
+            });
+            th.setDaemon(true);
+            th.setName("Index commit text");
+            th.start();
+        }
+        return searchIndex.search(query, limit);
     }
 
     public boolean canPush() throws IOException {
@@ -1187,226 +1267,336 @@ public class RepoHelper {
     }
 
     /**
-     * Uses JGit to find and parse all local commits between the given branches and
-     * every leaf in the repository
+     * Walks the history of every local and remote ref in a single pass, then wraps the
+     * raw commits into CommitHelpers and splits them into the local and remote commit lists.
+     * A commit is local if it is reachable from HEAD or a local branch, and remote if it is
+     * reachable from a remote branch. A commit can be both.
      *
-     * @param oldLocalBranches the previous branch heads associated with a branch name. Commits
-     *                         older than the heads of these branches will be ignored
-     * @return all local commits newer than the given branch heads
-     * @throws GitAPIException
      * @throws IOException
      */
-    public List<CommitHelper> getNewLocalCommits(Map<String, BranchHelper> oldLocalBranches) throws GitAPIException, IOException {
-        return getNewCommits(oldLocalBranches, this.branchModel.getBranchListTyped(BranchModel.BranchType.LOCAL));
+    private void parseAllCommits() throws IOException {
+        List<CommitHelper> newLocalCommits = new ArrayList<>();
+        List<CommitHelper> newRemoteCommits = new ArrayList<>();
+
+        Map<String, ObjectId> newLocalRefTips = getLocalRefTips();
+        Map<String, ObjectId> newRemoteRefTips = getRemoteRefTips();
+
+        BitSet local;
+        BitSet remote;
+        try (ObjectAccessPool.Lease lease = getObjectAccess().borrow(); RevWalk w = lease.newWalk()) {
+            RevFlag localFlag = w.newFlag("LOCAL");
+            RevFlag remoteFlag = w.newFlag("REMOTE");
+
+            List<RevCommit> rawCommits = parseAllRawCommits(w, newLocalRefTips.values(), localFlag,
+                                                            newRemoteRefTips.values(), remoteFlag);
+            wrapRawCommits(rawCommits);
+
+            // Oldest commits first, same as the order they were wrapped in
+            local = new BitSet(commitGraph.size());
+            remote = new BitSet(commitGraph.size());
+            for (int i = rawCommits.size() - 1; i >= 0; i--) {
+                RevCommit rawCommit = rawCommits.get(i);
+                CommitHelper commitHelper = getCommit(rawCommit.getId());
+                if (rawCommit.has(localFlag)) {
+                    newLocalCommits.add(commitHelper);
+                    local.set(commitHelper.getIndex());
+                }
+                if (rawCommit.has(remoteFlag)) {
+                    newRemoteCommits.add(commitHelper);
+                    remote.set(commitHelper.getIndex());
+                }
+            }
+        }
+
+        this.localCommits = newLocalCommits;
+        this.remoteCommits = newRemoteCommits;
+        commitGraph.setReachable(local, remote);
+        this.localRefTips = newLocalRefTips;
+        this.remoteRefTips = newRemoteRefTips;
     }
 
     /**
-     * Uses JGit to find and parse all remote commits between the given branches and
-     * every leaf in the repository
+     * Brings the local and remote commit lists up to date with the refs in the repository.
+     * If no ref has moved since the last update, only the refs are read. Otherwise only the
+     * commits between the new tips and the commits that are already wrapped get walked, and
+     * commits that no ref can reach anymore (e.g. after a reset or branch deletion) are pruned
      *
-     * @param oldRemoteBranches the previous branch heads associated with a branch name. Commits
-     *                          older than the heads of these branches will be ignored
-     * @return all remote commits newer than the given branch heads
-     * @throws GitAPIException
+     * @return true if any ref moved since the commits were last updated
      * @throws IOException
      */
-    public List<CommitHelper> getNewRemoteCommits(Map<String, BranchHelper> oldRemoteBranches) throws GitAPIException, IOException {
-        return getNewCommits(oldRemoteBranches, this.branchModel.getBranchListTyped(BranchModel.BranchType.REMOTE));
+    private boolean updateCommits() throws IOException {
+        Map<String, ObjectId> newLocalRefTips = getLocalRefTips();
+        Map<String, ObjectId> newRemoteRefTips = getRemoteRefTips();
+
+        if (newLocalRefTips.equals(this.localRefTips) && newRemoteRefTips.equals(this.remoteRefTips)) {
+            return false;
+        }
+
+        // Every wrapped commit is reachable from an old tip, so the old tips bound the walk
+        List<ObjectId> startPoints = new ArrayList<>();
+        Set<ObjectId> stopPoints = new HashSet<>();
+        for (ObjectId tipId : newLocalRefTips.values()) {
+            if (getCommit(tipId) == null) startPoints.add(tipId);
+        }
+        for (ObjectId tipId : newRemoteRefTips.values()) {
+            if (getCommit(tipId) == null) startPoints.add(tipId);
+        }
+        for (ObjectId tipId : this.localRefTips.values()) {
+            if (getCommit(tipId) != null) stopPoints.add(tipId);
+        }
+        for (ObjectId tipId : this.remoteRefTips.values()) {
+            if (getCommit(tipId) != null) stopPoints.add(tipId);
+        }
+
+        if (!startPoints.isEmpty()) {
+            wrapRawCommits(parseRawCommits(startPoints, new ArrayList<>(stopPoints)));
+        }
+
+        BitSet local = new BitSet(commitGraph.size());
+        BitSet remote = new BitSet(commitGraph.size());
+        this.localCommits = getCommitsReachableFrom(newLocalRefTips.values(), local);
+        this.remoteCommits = getCommitsReachableFrom(newRemoteRefTips.values(), remote);
+        commitGraph.setReachable(local, remote);
+        this.pruneUnreachableCommits();
+
+        this.localRefTips = newLocalRefTips;
+        this.remoteRefTips = newRemoteRefTips;
+        this.saveCommitGraphCache();
+        return true;
     }
 
     /**
-     * Helper method that returns commits between the given old branch heads and new branch heads
+     * Builds the commit graph from the commit graph cache, as it was when the cache was saved,
+     * without parsing any commits. Nothing is changed if there is no usable cache
      *
-     * @param oldBranches previous locations of branch heads
-     * @param newBranches current locations of branch heads
-     * @return a list of all commits found between oldBranches and newBranches
-     * @throws GitAPIException
-     * @throws IOException
+     * @return true if the cache was used
      */
-    private List<CommitHelper> getNewCommits(Map<String, BranchHelper> oldBranches, List<? extends BranchHelper> newBranches) throws GitAPIException, IOException {
-        List<ObjectId> startPoints = new ArrayList<>();
-        List<ObjectId> stopPoints = new ArrayList<>();
-
-        for (BranchHelper newBranch : newBranches) {
-            if (oldBranches.containsKey(newBranch.getRefName())) {
-                ObjectId newBranchHeadID = newBranch.getHeadId();
-                ObjectId oldBranchHeadID = oldBranches.get(newBranch.getRefName()).getHeadId();
-                if (!newBranchHeadID.equals(oldBranchHeadID)) {
-                    startPoints.add(newBranchHeadID);
-                }
-                stopPoints.add(oldBranchHeadID);
-            } else {
-                startPoints.add(newBranch.getHeadId());
-            }
+    private boolean loadCommitsFromCache() {
+        CommitGraphCache.Contents cached = this.commitGraphCache.load();
+        if (cached == null) {
+            return false;
         }
-        PlotCommitList<PlotLane> newCommits = this.parseRawCommits(startPoints, stopPoints);
-        return wrapRawCommits(newCommits);
-    }
 
+        List<CommitHelper> newLocalCommits = new ArrayList<>();
+        List<CommitHelper> newRemoteCommits = new ArrayList<>();
+        // The cache is in the same parents first order as the graph, so the indices carry over
+        for (int i = 0; i < cached.ids.size(); i++) {
+            CommitHelper commitHelper = commitGraph.add(cached.ids.get(i), cached.times[i], cached.parents[i]);
+            searchIndex.add(commitHelper, null);
+
+            if (cached.local.get(i)) newLocalCommits.add(commitHelper);
+            if (cached.remote.get(i)) newRemoteCommits.add(commitHelper);
+        }
+
+        this.localCommits = newLocalCommits;
+        this.remoteCommits = newRemoteCommits;
+        commitGraph.setReachable(cached.local, cached.remote);
+        this.localRefTips = cached.localRefTips;
+        this.remoteRefTips = cached.remoteRefTips;
+        return true;
+    }
 
     /**
-     * Constructs a list of all local commits found by parsing the repository for raw RevCommit objects,
-     * then wrapping them into a CommitHelper with the appropriate parents and children
-     *
-     * @return a list of CommitHelpers for all local commits
-     * @throws IOException
+     * Saves the current commit graph to the commit graph cache. The cache is only there
+     * to speed up opening the repository, so failing to save it is not an error
      */
-    private List<CommitHelper> parseAllLocalCommits() throws IOException, GitAPIException {
-        PlotCommitList<PlotLane> commitList = this.parseAllRawLocalCommits();
-        return wrapRawCommits(commitList);
+    private void saveCommitGraphCache() {
+        try {
+            this.commitGraphCache.save(this.localCommits, this.remoteCommits, this.localRefTips, this.remoteRefTips);
+        } catch (IOException e) {
+            logger.warn("Couldn't save the commit graph cache");
+            logger.debug(e.getStackTrace());
+        }
     }
 
     /**
-     * Constructs a list of all remote commits found by parsing the repository for raw RevCommit objects,
-     * then wrapping them into a CommitHelper with the appropriate parents and children
+     * Finds all wrapped commits reachable from the given tips by following parent links, without
+     * parsing anything from the repository
      *
-     * @return a list of CommitHelpers for all remote commits
-     * @throws IOException
+     * @param tipIds the ids to start from
+     * @param seen an empty bitset, which gets the indices of the reachable commits set
+     * @return the reachable commits, with every commit's parents before it
+     */
+    private List<CommitHelper> getCommitsReachableFrom(Collection<ObjectId> tipIds, BitSet seen) {
+        List<CommitHelper> reachable = new ArrayList<>();
+        int[] path = new int[commitGraph.size()];
+        int pathLength = 0;
+
+        for (ObjectId tipId : tipIds) {
+            CommitHelper tip = getCommit(tipId);
+            if (tip == null || seen.get(tip.getIndex())) continue;
+            seen.set(tip.getIndex());
+            path[pathLength++] = tip.getIndex();
+
+            // Depth first, adding each commit once all of its parents have been added
+            while (pathLength > 0) {
+                int cur = path[pathLength - 1];
+                int unseenParent = -1;
+                for (int n = 0; n < commitGraph.getParentCount(cur); n++) {
+                    int parent = commitGraph.getParent(cur, n);
+                    if (!seen.get(parent)) {
+                        unseenParent = parent;
+                        break;
+                    }
+                }
+                if (unseenParent >= 0) {
+                    seen.set(unseenParent);
+                    path[pathLength++] = unseenParent;
+                } else {
+                    reachable.add(commitGraph.get(cur));
+                    pathLength--;
+                }
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * Drops every wrapped commit that is in neither the local nor the remote commits from
+     * the commit graph
      */
-    private List<CommitHelper> parseAllRemoteCommits() throws IOException, GitAPIException {
-        PlotCommitList<PlotLane> commitList = this.parseAllRawRemoteCommits();
-        return wrapRawCommits(commitList);
+    private void pruneUnreachableCommits() {
+        BitSet reachable = commitGraph.getLocal();
+        reachable.or(commitGraph.getRemote());
+
+        searchIndex.removed(commitGraph.retain(reachable));
     }
 
     /**
      * Given a list of raw JGit commit objects, constructs CommitHelper objects to wrap them and gives
-     * them the appropriate parents and children. Updates the commit id and id maps appropriately.
+     * them the appropriate parents and children. Adds new ones to the commit graph.
      *
-     * @param commitList the raw commits to wrap
-     * @return a list of CommitHelpers for the given commits
+     * The list must be in topological order (children before parents), as the walks in this class
+     * produce it. Going through it backwards then wraps every parent before any of its children, so
+     * each commit is linked in the same pass it is wrapped in and the whole list takes linear time.
+     * Commits that were already wrapped are reused. Parents that are neither in the list nor already
+     * wrapped (e.g. past the boundary of a shallow clone) are left out.
+     *
+     * @param commitList the raw commits to wrap, children before parents
+     * @return a list of CommitHelpers for the given commits, parents before children
      * @throws IOException
      */
-    private List<CommitHelper> wrapRawCommits(PlotCommitList<PlotLane> commitList) throws IOException {
-        List<CommitHelper> commitHelperList = new ArrayList<>();
-        List<ObjectId> wrappedIDs = new ArrayList<>();
-        List<CommitHelper> commitsWithMissingParents = new ArrayList<>();
+    List<CommitHelper> wrapRawCommits(List<RevCommit> commitList) throws IOException {
+        List<CommitHelper> commitHelperList = new ArrayList<>(commitList.size());
         for (int i = commitList.size() - 1; i >= 0; i--) {
             RevCommit curCommit = commitList.get(i);
-            ObjectId curCommitID = curCommit.getId();
-
-            if (wrappedIDs.contains(curCommitID)) {
-                continue;
-            }
-
-            CommitHelper curCommitHelper = new CommitHelper(curCommit);
-            String curCommitHelperID = curCommitHelper.getId();
-
-            if (!commitIdMap.containsKey(curCommitHelperID)) {
-                commitIdMap.put(curCommitHelper.getId(), curCommitHelper);
-                idMap.put(curCommitID, curCommitHelper.getId());
-            } else {
-                curCommitHelper = commitIdMap.get(curCommitHelperID);
-            }
-            wrappedIDs.add(curCommitID);
 
-            RevCommit[] parents = curCommit.getParents();
-            for (RevCommit p : parents) {
-                CommitHelper parentCommitHelper = getCommit(p.getId());
-                if (parentCommitHelper == null) {
-                    commitsWithMissingParents.add(curCommitHelper);
-                } else {
-                    curCommitHelper.addParent(parentCommitHelper);
+            CommitHelper curCommitHelper = commitGraph.get(curCommit);
+            if (curCommitHelper == null) {
+                int[] parentIndices = new int[curCommit.getParentCount()];
+                int parentCount = 0;
+                for (RevCommit p : curCommit.getParents()) {
+                    CommitHelper parentCommitHelper = commitGraph.get(p);
+                    if (parentCommitHelper != null && !contains(parentIndices, parentCount, parentCommitHelper.getIndex())) {
+                        parentIndices[parentCount++] = parentCommitHelper.getIndex();
+                    }
                 }
+
+                curCommitHelper = commitGraph.add(curCommit, curCommit.getAuthorIdent().getWhen().getTime(),
+                                                  Arrays.copyOf(parentIndices, parentCount));
+                searchIndex.add(curCommitHelper, curCommit);
             }
 
             commitHelperList.add(curCommitHelper);
         }
-        while (!commitsWithMissingParents.isEmpty()) {
-            CommitHelper curCommitHelper = commitsWithMissingParents.remove(0);
-            RevCommit[] parents = curCommitHelper.commit.getParents();
-            for (RevCommit p : parents) {
-                CommitHelper parentCommitHelper = getCommit(p.getId());
-                if (parentCommitHelper == null) {
-                    commitsWithMissingParents.add(curCommitHelper);
-                } else if (!curCommitHelper.getParents().contains(parentCommitHelper)) {
-                    curCommitHelper.addParent(parentCommitHelper);
-                }
-            }
-        }
         return commitHelperList;
     }
 
     /**
-     * Utilizes JGit to walk through the repo and create raw commit objects - more
-     * specifically, JGit objects of (super)type RevCommit. This is an expensive
-     * operation and should only be called when necessary
-     *
-     * @return a list of raw local commits
-     * @throws IOException
+     * @return whether value is among the first length entries of values
      */
-    private PlotCommitList<PlotLane> parseAllRawLocalCommits() throws IOException, GitAPIException {
-        ObjectId headId = repo.resolve("HEAD");
-        if (headId == null) return new PlotCommitList<>();
-        List<ObjectId> examinedCommitIDs = new ArrayList<>();
-        PlotCommitList<PlotLane> rawLocalCommits = parseRawCommits(headId, examinedCommitIDs);
-        examinedCommitIDs.add(headId);
-
-        List<LocalBranchHelper> branches = this.branchModel.getLocalBranchesTyped();
-        for (BranchHelper branch : branches) {
-            ObjectId branchId = branch.getHeadId();
-            PlotCommitList<PlotLane> toAdd = parseRawCommits(branchId, examinedCommitIDs);
-            if (toAdd.size() > 0) {
-                rawLocalCommits.addAll(toAdd);
-                examinedCommitIDs.add(toAdd.get(0).getId());
-            }
+    private static boolean contains(int[] values, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] == value) return true;
         }
-        return rawLocalCommits;
+        return false;
     }
 
     /**
      * Utilizes JGit to walk through the repo and create raw commit objects - more
-     * specifically, JGit objects of (super)type RevCommit. This is an expensive
-     * operation and should only be called when necessary
+     * specifically, JGit objects of (super)type RevCommit. Every ref tip is marked as a
+     * start of the same walk, so each commit is parsed exactly once no matter how many
+     * branches contain it. This is an expensive operation and should only be called when necessary
      *
-     * @return a list of raw remote commits
+     * Commits come out in topological order (children before parents), which lets the local
+     * and remote flags be pushed down from each commit to its parents as the walk goes.
+     *
+     * @param w the walk to use; the returned commits belong to it
+     * @param localTipIds the ids HEAD and the local branches point to
+     * @param localFlag the flag to give commits reachable from HEAD or a local branch
+     * @param remoteTipIds the ids the remote branches point to
+     * @param remoteFlag the flag to give commits reachable from a remote branch
+     * @return a list of all raw commits in the repository, children before parents
      * @throws IOException
      */
-    private PlotCommitList<PlotLane> parseAllRawRemoteCommits() throws IOException, GitAPIException {
-        List<ObjectId> examinedCommitIDs = new ArrayList<>();
-        PlotCommitList<PlotLane> rawRemoteCommits = new PlotCommitList<>();
+    private List<RevCommit> parseAllRawCommits(RevWalk w, Collection<ObjectId> localTipIds, RevFlag localFlag,
+                                               Collection<ObjectId> remoteTipIds, RevFlag remoteFlag) throws IOException {
+        w.sort(RevSort.TOPO, true);
+        w.sort(RevSort.COMMIT_TIME_DESC, true);
+
+        markRefTips(w, localTipIds, localFlag);
+        markRefTips(w, remoteTipIds, remoteFlag);
 
-        for (BranchHelper branch : this.branchModel.getRemoteBranchesTyped()) {
-            ObjectId branchId = branch.getHeadId();
-            PlotCommitList<PlotLane> toAdd = parseRawCommits(branchId, examinedCommitIDs);
-            if (toAdd.size() > 0) {
-                rawRemoteCommits.addAll(toAdd);
-                examinedCommitIDs.add(toAdd.get(0).getId());
+        List<RevCommit> rawCommits = new ArrayList<>();
+        for (RevCommit c : w) {
+            for (RevCommit p : c.getParents()) {
+                if (c.has(localFlag)) p.add(localFlag);
+                if (c.has(remoteFlag)) p.add(remoteFlag);
             }
+            rawCommits.add(c);
         }
-        return rawRemoteCommits;
+        return rawCommits;
     }
 
     /**
-     * Utilizes JGit to walk through the repo and create raw commit objects - more
-     * specifically, JGit objects of (super)type RevCommit. This is an expensive
-     * operation and should only be called when necessary
+     * Flags the commits at the given ref tips and marks them as starting points of the walk
      *
-     * @param startPoints the starting ids to parse from
-     * @param stopPoints  the ids at which parsing should stop
-     * @return a list of raw commits starting from each id in startPoints, excluding those beyond each id in stopPoints
+     * @param w the walk to mark the starting points in
+     * @param tipIds the ids the refs point to
+     * @param flag the flag to give each tip commit
      * @throws IOException
      */
-    private PlotCommitList<PlotLane> parseRawCommits(List<ObjectId> startPoints, List<ObjectId> stopPoints) throws IOException {
-        PlotCommitList<PlotLane> plotCommitList = new PlotCommitList<>();
-
-        PlotWalk w = new PlotWalk(repo);
-        for (ObjectId stopId : stopPoints) {
-            w.markUninteresting(w.parseCommit(stopId));
+    private void markRefTips(RevWalk w, Collection<ObjectId> tipIds, RevFlag flag) throws IOException {
+        for (ObjectId tipId : tipIds) {
+            RevCommit tip = w.parseCommit(tipId);
+            tip.add(flag);
+            w.markStart(tip);
         }
+    }
 
-        for (ObjectId startId : startPoints) {
-            w.markStart(w.parseCommit(startId));
+    /**
+     * @return the ids that HEAD and each local branch point to, keyed by full ref name
+     * @throws IOException
+     */
+    private Map<String, ObjectId> getLocalRefTips() throws IOException {
+        Map<String, ObjectId> tips = getRefTips(Constants.R_HEADS);
+        ObjectId headId = repo.resolve(Constants.HEAD);
+        if (headId != null) tips.put(Constants.HEAD, headId);
+        return tips;
+    }
 
-            PlotCommitList<PlotLane> temp = new PlotCommitList<>();
-            temp.source(w);
-            temp.fillTo(Integer.MAX_VALUE);
+    /**
+     * @return the ids that each remote branch points to, keyed by full ref name
+     * @throws IOException
+     */
+    private Map<String, ObjectId> getRemoteRefTips() throws IOException {
+        return getRefTips(Constants.R_REMOTES);
+    }
 
-            plotCommitList.addAll(temp);
+    /**
+     * Reads every ref under the given prefix straight from the ref database, without
+     * parsing any commits
+     *
+     * @param prefix the prefix of the refs to read, e.g. 'refs/heads/'
+     * @return the ids the refs point to, keyed by full ref name
+     * @throws IOException
+     */
+    private Map<String, ObjectId> getRefTips(String prefix) throws IOException {
+        Map<String, ObjectId> tips = new HashMap<>();
+        for (Ref ref : repo.getRefDatabase().getRefs(prefix).values()) {
+            if (ref.getObjectId() != null) tips.put(ref.getName(), ref.getObjectId());
         }
-
-        w.dispose();
-
-        return plotCommitList;
+        return tips;
     }
 
     /**
@@ -1414,111 +1604,87 @@ public class RepoHelper {
      * specifically, JGit objects of (super)type RevCommit. This is an expensive
      * operation and should only be called when necessary
      *
-     * @param startingID the starting point to parse from
-     * @param stopPoints the ids at which parsing should stop
-     * @return a list of raw commits starting from the given id
+     * @param startPoints the starting ids to parse from
+     * @param stopPoints  the ids at which parsing should stop
+     * @return a list of raw commits starting from each id in startPoints, excluding those beyond each id in stopPoints
      * @throws IOException
      */
-    private PlotCommitList<PlotLane> parseRawCommits(ObjectId startingID, List<ObjectId> stopPoints) throws IOException {
-        List<ObjectId> asList = new ArrayList<>(1);
-        asList.add(startingID);
-        return parseRawCommits(asList, stopPoints);
+    private List<RevCommit> parseRawCommits(List<ObjectId> startPoints, List<ObjectId> stopPoints) throws IOException {
+        List<RevCommit> rawCommits = new ArrayList<>();
+
+        try (ObjectAccessPool.Lease lease = getObjectAccess().borrow(); RevWalk w = lease.newWalk()) {
+            w.sort(RevSort.TOPO, true);
+            w.sort(RevSort.COMMIT_TIME_DESC, true);
+            for (ObjectId stopId : stopPoints) {
+                try {
+                    w.markUninteresting(w.parseCommit(stopId));
+                } catch (MissingObjectException e) {
+                    // The stop points only bound the walk, so one that was garbage collected can be skipped
+                }
+            }
+            for (ObjectId startId : startPoints) {
+                w.markStart(w.parseCommit(startId));
+            }
+
+            for (RevCommit c : w) {
+                rawCommits.add(c);
+            }
+        }
+
+        return rawCommits;
     }
 
     /**
      * Utilizes JGit to parse a commit with the given ID and returns it in
-     * raw format
+     * raw format. The commit is parsed with a walk of its own rather than the
+     * lease's shared one, as it is used long after the lease is given back
      *
      * @param id the ID of the commit
      * @return the raw commit corresponding to the given ID
      * @throws IOException
      */
     public RevCommit parseRawCommit(ObjectId id) throws IOException {
-        RevWalk w = new RevWalk(repo);
-        w.dispose();
-        return w.parseCommit(id);
+        try (ObjectAccessPool.Lease lease = getObjectAccess().borrow(); RevWalk w = lease.newWalk()) {
+            return w.parseCommit(id);
+        }
     }
 
     /**
-     * Parses all relevant git ignore files for ignore patterns, and then checks all
-     * tracked files and directories for whether they match an ignore pattern.
+     * Checks all tracked files and directories for whether they match an ignore pattern of the
+     * .gitignore files in their directories and above, info/exclude, or the global excludes file.
+     * The rules and results of each directory are kept, so checking again only reads the ignore
+     * files that changed and matches the directories they apply to.
      *
      * @return the set of paths (relative to the repo) of all tracked files that match an ignore pattern
      * @throws IOException
      */
     public Collection<String> getTrackedIgnoredFiles() throws IOException {
-        // Build the ignore pattern matcher
-        IgnoreNode ignoreNode = new IgnoreNode();
-        for (Path path : getGitIgnorePaths()) {
-            ignoreNode.parse(new BufferedInputStream(Files.newInputStream(path)));
+        try (ObjectAccessPool.Lease lease = getObjectAccess().borrow(); TreeWalk treeWalk = lease.newTreeWalk()) {
+            RevCommit head = lease.getWalk().parseCommit(this.repo.resolve(Constants.HEAD));
+            File infoExclude = this.repo.getFS().resolve(this.repo.getDirectory(), Constants.INFO_EXCLUDE);
+            return getIgnoreRules().getTrackedIgnoredFiles(treeWalk, head.getTree(), getGlobalGitIgnorePath(),
+                                                           infoExclude.toPath());
         }
-
-        // Set up the walks
-        RevWalk walk = new RevWalk(this.repo);
-        RevCommit head = walk.parseCommit(this.repo.resolve(Constants.HEAD));
-
-        TreeWalk treeWalk = new TreeWalk(this.repo);
-        treeWalk.addTree(head.getTree());
-        treeWalk.setRecursive(false);
-
-        // Keep track of whether the ancestors are being ignored
-        Stack<Boolean> isParentAtDepthIgnored = new Stack<>();
-        // Set the top level 'parent' to be false
-        isParentAtDepthIgnored.push(false);
-
-        Collection<String> trackedIgnoredFiles = new HashSet<>();
-
-        // Loop through all tracked files (depth first)
-        while (treeWalk.next()) {
-            String pathString = treeWalk.getPathString();
-            // Make sure the stack matches the appropriate depth of this file/directory
-            while (treeWalk.getDepth() + 1 < isParentAtDepthIgnored.size()) {
-                isParentAtDepthIgnored.pop();
-            }
-            boolean isParentIgnored = isParentAtDepthIgnored.peek();
-            IgnoreNode.MatchResult result;
-
-            // The current item is a directory
-            if (treeWalk.isSubtree()) {
-                result = ignoreNode.isIgnored(pathString, true);
-
-                // TODO: Does not support a result of 'CHECK_PARENT_NEGATE_FIRST_MATCH' (mainly because I don't know what that means)
-                // Update the stack with the information from this item
-                if (result == IgnoreNode.MatchResult.IGNORED) isParentAtDepthIgnored.push(true);
-                else if (result == IgnoreNode.MatchResult.NOT_IGNORED) isParentAtDepthIgnored.push(false);
-                else isParentAtDepthIgnored.push(isParentAtDepthIgnored.peek());
-
-                treeWalk.enterSubtree();
-            } else {
-                result = ignoreNode.isIgnored(pathString, false);
-            }
-            boolean isIgnored = (result == IgnoreNode.MatchResult.IGNORED) || (isParentIgnored && result == IgnoreNode.MatchResult.CHECK_PARENT);
-            if (isIgnored) trackedIgnoredFiles.add(pathString);
-        }
-        return trackedIgnoredFiles;
     }
 
     /**
-     * Finds and returns a list of all files from which ignore patterns are pulled for this repository.
-     * This includes the global ignore file (if it exists), the info/exclude file, and any .gitignore
-     * files in the repositories file structure
+     * Makes the given ignore file be read again the next time ignored files are looked for,
+     * e.g. right after it has been saved
      *
-     * @return a list of paths to files that define ignore rules for this repository
+     * @param ignoreFile the ignore file that changed
      */
-    public List<Path> getGitIgnorePaths() throws IOException {
-        List<Path> gitIgnorePaths = new LinkedList<>();
-
-        Path globalIgnore = getGlobalGitIgnorePath();
-        if (globalIgnore != null) gitIgnorePaths.add(globalIgnore);
-
-        Path infoExclude = getInfoExcludePath();
-        if (infoExclude != null) gitIgnorePaths.add(infoExclude);
-
-        GitIgnoreFinder finder = new GitIgnoreFinder();
-        Files.walkFileTree(this.localPath, finder);
-        gitIgnorePaths.addAll(finder.getMatchedPaths());
+    public void invalidateIgnoreRules(Path ignoreFile) {
+        getIgnoreRules().invalidate(ignoreFile);
+    }
 
-        return gitIgnorePaths;
+    /**
+     * @return the cache of the ignore rules and the tracked files they match in this repository
+     */
+    synchronized IgnoreRuleCache getIgnoreRules() {
+        if (this.ignoreRules == null) {
+            this.ignoreRules = new IgnoreRuleCache(this.localPath);
+        }
+        return this.ignoreRules;
     }
 
     /**
@@ -1637,40 +1803,6 @@ public class RepoHelper {
         return this.ownerAuth;
     }
 
-    /**
-     * A FileVisitor that keeps a list of all '.gitignore' files it finds
-     */
-    private class GitIgnoreFinder extends SimpleFileVisitor<Path> {
-        private final PathMatcher matcher;
-        private List<Path> matchedPaths;
-
-        GitIgnoreFinder() {
-            matcher = FileSystems.getDefault().getPathMatcher("glob:" + Constants.DOT_GIT_IGNORE);
-            matchedPaths = new LinkedList<>();
-        }
-
-        @Override
-        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-            Path name = file.getFileName();
-
-            if (name != null && matcher.matches(name)) {
-                matchedPaths.add(file);
-            }
-
-            return FileVisitResult.CONTINUE;
-        }
-
-        @Override
-        public FileVisitResult visitFileFailed(Path file, IOException e) {
-            e.printStackTrace();
-            return FileVisitResult.CONTINUE;
-        }
-
-        public Collection<Path> getMatchedPaths() {
-            return matchedPaths;
-        }
-    }
-
     /**
      * Determine whether this repo is compatible with HTTP or SSH authentication.
      * Those are the only two that this will particularly return, because these are the only
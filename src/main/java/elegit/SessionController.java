@@ -3,6 +3,7 @@ package elegit;
 import de.jensd.fx.glyphs.GlyphsDude;
 import de.jensd.fx.glyphs.fontawesome.FontAwesomeIcon;
 import elegit.exceptions.*;
+import elegit.treefx.TreeGraph;
 import elegit.treefx.TreeLayout;
 import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
@@ -44,6 +45,8 @@ import org.eclipse.jgit.api.ResetCommand;
 import org.eclipse.jgit.api.errors.*;
 import org.eclipse.jgit.dircache.InvalidPathException;
 import org.eclipse.jgit.errors.NoMergeBaseException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.transport.PushResult;
 import org.eclipse.jgit.transport.RemoteRefUpdate;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
@@ -68,7 +71,7 @@ import java.util.prefs.Preferences;
  */
 public class SessionController {
 
-    public ComboBox<RepoHelper> repoDropdownSelector;
+    public ComboBox<RecentRepo> repoDropdownSelector;
 
     public Button loadNewRepoButton;
     public Button removeRecentReposButton;
@@ -110,6 +113,11 @@ public class SessionController {
 
     public TextArea commitInfoMessageText;
     public TextField tagNameField;
+    public TextField commitSearchField;
+
+    // The most commits a search highlights in the tree
+    private static final int MAX_SEARCH_RESULTS = 1000;
+    private List<CommitHelper> commitSearchResults = new ArrayList<>();
 
     public HBox currentLocalBranchHbox;
     public HBox currentRemoteTrackingBranchHbox;
@@ -203,8 +211,9 @@ public class SessionController {
         this.setButtonsDisabled(true);
         this.initWorkingTreePanelTab();
         // SLOW
-        this.theModel.loadRecentRepoHelpersFromStoredPathStrings();
+        this.theModel.loadRecentReposFromStoredPathStrings();
         this.theModel.loadMostRecentRepoHelper();
+        this.theModel.prewarmPreviousRepo();
 
         // SLOW
         this.initPanelViews();
@@ -416,6 +425,7 @@ public class SessionController {
         repoDropdownSelector.setMaxWidth(REPO_DROPDOWN_MAX_WIDTH);
         tagNameField.setMinSize(Control.USE_PREF_SIZE, Control.USE_PREF_SIZE);
         commitInfoMessageText.setMinSize(Control.USE_PREF_SIZE, Control.USE_PREF_SIZE);
+        commitSearchField.setMinSize(Control.USE_PREF_SIZE, Control.USE_PREF_SIZE);
     }
 
     /**
@@ -459,6 +469,11 @@ public class SessionController {
         tagNameField.setOnKeyTyped(event -> {
             if (event.getCharacter().equals("\r")) handleTagButton();
         });
+
+        commitSearchField.textProperty().addListener((observable, oldValue, newValue) -> handleCommitSearch(newValue));
+        commitSearchField.setOnAction(event -> {
+            if (!commitSearchResults.isEmpty()) CommitTreeController.focusCommitInGraph(commitSearchResults.get(0));
+        });
     }
 
     /**
@@ -650,7 +665,7 @@ public class SessionController {
      * interact with.
      */
     private void updateUIEnabledStatus() {
-        if (this.theModel.getCurrentRepoHelper() == null && this.theModel.getAllRepoHelpers().size() >= 0) {
+        if (this.theModel.getCurrentRepoHelper() == null && this.theModel.getRecentRepos().size() >= 0) {
             // (There's no repo for buttons to interact with, but there are repos in the menu bar)
             setButtonsDisabled(true);
         } else {
@@ -696,6 +711,26 @@ public class SessionController {
         }
     }
 
+    public void handleCommitDrawCanvas() {
+        TreeGraph.drawOnCanvas = true;
+        try {
+            commitTreeModel.updateView();
+        } catch (Exception e) {
+            e.printStackTrace();
+            this.showGenericErrorNotification();
+        }
+    }
+
+    public void handleCommitDrawNodes() {
+        TreeGraph.drawOnCanvas = false;
+        try {
+            commitTreeModel.updateView();
+        } catch (Exception e) {
+            e.printStackTrace();
+            this.showGenericErrorNotification();
+        }
+    }
+
     /**
      * Opens an editor for the .gitignore
      */
@@ -807,7 +842,7 @@ public class SessionController {
         Platform.runLater(() -> {
             synchronized (this) {
                 isRecentRepoEventListenerBlocked = true;
-                RepoHelper currentRepo = this.theModel.getCurrentRepoHelper();
+                RecentRepo currentRepo = this.theModel.getCurrentRecentRepo();
                 this.repoDropdownSelector.setValue(currentRepo);
                 isRecentRepoEventListenerBlocked = false;
             }
@@ -822,8 +857,8 @@ public class SessionController {
         Platform.runLater(() -> {
             synchronized (this) {
                 isRecentRepoEventListenerBlocked = true;
-                List<RepoHelper> repoHelpers = this.theModel.getAllRepoHelpers();
-                this.repoDropdownSelector.setItems(FXCollections.observableArrayList(repoHelpers));
+                List<RecentRepo> recentRepos = this.theModel.getRecentRepos();
+                this.repoDropdownSelector.setItems(FXCollections.observableArrayList(recentRepos));
                 isRecentRepoEventListenerBlocked = false;
             }
         });
@@ -831,10 +866,10 @@ public class SessionController {
 
     /**
      * Loads the given repository and updates the UI accordingly.
-     * @param repoHelper the repository to open
+     * @param recentRepo the repository to open
      */
-    private synchronized void handleRecentRepoMenuItem(RepoHelper repoHelper){
-        if(isRecentRepoEventListenerBlocked || repoHelper == null) return;
+    private synchronized void handleRecentRepoMenuItem(RecentRepo recentRepo){
+        if(isRecentRepoEventListenerBlocked || recentRepo == null) return;
 
         this.notificationPaneController.clearAllNotifications();
         logger.info("Switching repos");
@@ -845,7 +880,7 @@ public class SessionController {
             @Override
             protected Void call() throws Exception{
                 try {
-                    theModel.openRepoFromHelper(repoHelper);
+                    theModel.openRecentRepo(recentRepo);
 
                     Platform.runLater(() -> {
                         initPanelViews();
@@ -882,9 +917,9 @@ public class SessionController {
      * and loads it using the handleRecentRepoMenuItem(...) method.
      */
     public void loadSelectedRepo() {
-        if (theModel.getAllRepoHelpers().size() == 0) return;
-        RepoHelper selectedRepoHelper = this.repoDropdownSelector.getValue();
-        this.handleRecentRepoMenuItem(selectedRepoHelper);
+        if (theModel.getRecentRepos().size() == 0) return;
+        RecentRepo selectedRepo = this.repoDropdownSelector.getValue();
+        this.handleRecentRepoMenuItem(selectedRepo);
     }
 
     /**
@@ -2119,13 +2154,25 @@ public class SessionController {
         clipboard.setContent(content);
     }
 
+    /**
+     * Highlights the commits matching what has been typed into the search field so far
+     * @param query the contents of the search field
+     */
+    private void handleCommitSearch(String query) {
+        RepoHelper repoHelper = this.theModel.getCurrentRepoHelper();
+        if (repoHelper == null) return;
+        commitSearchResults = repoHelper.searchCommits(query, MAX_SEARCH_RESULTS);
+        CommitTreeController.highlightSearchResults(commitSearchResults);
+    }
+
     /**
      * Jumps to the selected commit in the tree display
      */
     public void handleGoToCommitButton(){
         logger.info("Go to commit button clicked");
-        String id = commitInfoNameText;
-        CommitTreeController.focusCommitInGraph(id);
+        if (ObjectId.isId(commitInfoNameText)) {
+            CommitTreeController.focusCommitInGraph(ObjectId.fromString(commitInfoNameText));
+        }
     }
 
     public void handleMergeFromFetchButton(){
@@ -2323,8 +2370,8 @@ public class SessionController {
         logger.info("Remove repos button clicked");
 
         // creates a CheckListView with all the repos in it
-        List<RepoHelper> repoHelpers = this.theModel.getAllRepoHelpers();
-        CheckListView<RepoHelper> repoCheckListView = new CheckListView<>(FXCollections.observableArrayList(repoHelpers));
+        List<RecentRepo> recentRepos = this.theModel.getRecentRepos();
+        CheckListView<RecentRepo> repoCheckListView = new CheckListView<>(FXCollections.observableArrayList(recentRepos));
 
         // creates a popover with the list and a button used to remove repo shortcuts
         Button removeSelectedButton = new Button("Remove repository shortcuts from Elegit");
@@ -2344,14 +2391,14 @@ public class SessionController {
      * removes selected repo shortcuts
      * @param checkedItems list of selected repos
      */
-    private void handleRemoveReposButton(List<RepoHelper> checkedItems) {
+    private void handleRemoveReposButton(List<RecentRepo> checkedItems) {
         logger.info("Removed repos");
-        this.theModel.removeRepoHelpers(checkedItems);
+        this.theModel.removeRecentRepos(checkedItems);
 
         // If there are repos that aren't the current one, and the current repo is being removed, load a different repo
-        if (!this.theModel.getAllRepoHelpers().isEmpty() && !this.theModel.getAllRepoHelpers().contains(theModel.getCurrentRepoHelper())) {
-            int newIndex = this.theModel.getAllRepoHelpers().size()-1;
-            RepoHelper newCurrentRepo = this.theModel.getAllRepoHelpers()
+        if (!this.theModel.getRecentRepos().isEmpty() && !this.theModel.getRecentRepos().contains(theModel.getCurrentRecentRepo())) {
+            int newIndex = this.theModel.getRecentRepos().size()-1;
+            RecentRepo newCurrentRepo = this.theModel.getRecentRepos()
                     .get(newIndex);
 
             handleRecentRepoMenuItem(newCurrentRepo);
@@ -2360,7 +2407,7 @@ public class SessionController {
             this.refreshRecentReposInDropdown();
 
             // If there are no repos, reset everything
-        } else if (this.theModel.getAllRepoHelpers().isEmpty()){
+        } else if (this.theModel.getRecentRepos().isEmpty()){
             TreeLayout.stopMovingCells();
             theModel.resetSessionModel();
             workingTreePanelView.resetFileStructurePanelView();
@@ -2430,7 +2477,7 @@ public class SessionController {
      * Displays information about the commit with the given id
      * @param id the selected commit
      */
-    void selectCommit(String id){
+    void selectCommit(AnyObjectId id){
         Platform.runLater(() -> {
             CommitHelper commit = this.theModel.getCurrentRepoHelper().getCommit(id);
 
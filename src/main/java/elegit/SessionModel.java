@@ -34,13 +34,27 @@ public class SessionModel {
 
     // Keys for preferences recall
     private static final String RECENT_REPOS_LIST_KEY = "RECENT_REPOS_LIST";
+    private static final String RECENT_REPO_HEADS_KEY = "RECENT_REPO_HEADS";
     private static final String LAST_OPENED_REPO_PATH_KEY = "LAST_OPENED_REPO_PATH";
+    private static final String PREVIOUSLY_OPENED_REPO_PATH_KEY = "PREVIOUSLY_OPENED_REPO_PATH";
     private static final String LAST_UUID_KEY="LAST_UUID";
 
+    // How many repositories to keep fully loaded, and roughly how much heap they may take
+    // up, before the least recently used ones are closed down to their recent repos entry
+    private static final int DEFAULT_MAX_LOADED_REPOS = 3;
+    private static final long DEFAULT_MAX_LOADED_BYTES = 256L * 1024 * 1024;
+
+    private RecentRepo currentRecentRepo;
     private RepoHelper currentRepoHelper;
     public ObjectProperty<RepoHelper> currentRepoHelperProperty;
 
-    List<RepoHelper> allRepoHelpers;
+    // The recent repos, and the ones whose RepoHelper is being handed out to be opened, which
+    // mustn't be evicted before they are current. Both are only touched while holding this
+    // model's lock, as repos are evicted from background threads too
+    List<RecentRepo> recentRepos;
+    private final Set<RecentRepo> openingRepos = new HashSet<>();
+    private int maxLoadedRepos = DEFAULT_MAX_LOADED_REPOS;
+    private long maxLoadedBytes = DEFAULT_MAX_LOADED_BYTES;
     private static SessionModel sessionModel;
 
     Preferences preferences;
@@ -61,7 +75,7 @@ public class SessionModel {
      * Private constructor for the SessionModel singleton
      */
     private SessionModel() {
-        this.allRepoHelpers = new ArrayList<>();
+        this.recentRepos = new ArrayList<>();
         this.preferences = Preferences.userNodeForPackage(this.getClass());
         currentRepoHelperProperty = new SimpleObjectProperty<>(currentRepoHelper);
     }
@@ -80,9 +94,9 @@ public class SessionModel {
             if (lastOpenedRepoPathString != null) {
                 Path path = Paths.get(lastOpenedRepoPathString);
                 try {
-                    ExistingRepoHelper existingRepoHelper =
-                            new ExistingRepoHelper(path, new ElegitUserInfoGUI());
-                    this.openRepoFromHelper(existingRepoHelper);
+                    RecentRepo recentRepo = this.findRecentRepo(path);
+                    if (recentRepo == null) recentRepo = new RecentRepo(path, null);
+                    this.openRecentRepo(recentRepo);
                     return;
                 } catch (IllegalArgumentException e) {
                     logger.warn("Recent repo not found in directory it used to be in");
@@ -96,13 +110,23 @@ public class SessionModel {
                 // Should never be used, as no authorization is needed for loading local files.
                 }
             }
-            if (this.allRepoHelpers!=null && this.allRepoHelpers.size()>0) {
-                RepoHelper helper = this.allRepoHelpers.get(0);
+            RecentRepo firstRecentRepo;
+            synchronized (this) {
+                firstRecentRepo = this.recentRepos.isEmpty() ? null : this.recentRepos.get(0);
+            }
+            if (firstRecentRepo != null) {
+                RecentRepo recentRepo = firstRecentRepo;
                 try {
-                    this.openRepoFromHelper(helper);
-                } catch (MissingRepoException e) {
+                    this.openRecentRepo(recentRepo);
+                } catch (MissingRepoException | IllegalArgumentException e) {
                     logger.error("Missing repo exception");
                     e.printStackTrace();
+                } catch (GitAPIException e) {
+                    logger.error("Git error loading recent repo");
+                    logger.debug(e.getStackTrace());
+                    e.printStackTrace();
+                } catch (CancelledAuthorizationException e) {
+                    // Should never be used, as no authorization is needed for loading local files.
                 }
             }
         }catch(IOException | BackingStoreException | ClassNotFoundException e){
@@ -114,27 +138,24 @@ public class SessionModel {
 
     /**
      * Loads all recently loaded repositories (stored with the Java Preferences API)
-     * into the recent repos menubar.
+     * into the recent repos menubar. None of them are opened or parsed until they are
+     * selected, see openRecentRepo
      */
-    public void loadRecentRepoHelpersFromStoredPathStrings() {
+    public void loadRecentReposFromStoredPathStrings() {
         try{
             ArrayList<String> storedRepoPathStrings = (ArrayList<String>) PrefObj.getObject(this.preferences, RECENT_REPOS_LIST_KEY);
+            Map<String, String> storedRepoHeads = this.loadStoredRepoHeads();
             if (storedRepoPathStrings != null) {
                 for (String pathString : storedRepoPathStrings) {
-                    Path path = Paths.get(pathString);
-                    try {
-                        ExistingRepoHelper existingRepoHelper = new ExistingRepoHelper(path, new ElegitUserInfoGUI());
-                        this.allRepoHelpers.add(existingRepoHelper);
-                    } catch (IllegalArgumentException e) {
+                    RecentRepo recentRepo = new RecentRepo(Paths.get(pathString), storedRepoHeads.get(pathString));
+                    if (recentRepo.exists()) {
+                        synchronized (this) {
+                            this.recentRepos.add(recentRepo);
+                        }
+                    } else {
                         logger.warn("Repository has been moved, we move along");
                         // This happens when this repository has been moved.
                         // We'll just move along.
-                    } catch(GitAPIException e){
-                        logger.error("Git error loading recent repo helpers");
-                        logger.debug(e.getStackTrace());
-                        e.printStackTrace();
-                    } catch (CancelledAuthorizationException e) {
-                        // This shouldn't happen loading local files.
                     }
                 }
             }
@@ -145,19 +166,144 @@ public class SessionModel {
         }
     }
 
+    /**
+     * Reads where the HEAD of each recent repo was from the preferences. Anything stored
+     * in some other shape, e.g. by an older version, is skipped
+     *
+     * @return the HEAD of each recent repo, by path
+     */
+    private Map<String, String> loadStoredRepoHeads() throws IOException, BackingStoreException, ClassNotFoundException {
+        Map<String, String> repoHeads = new HashMap<>();
+        Object storedRepoHeads = PrefObj.getObject(this.preferences, RECENT_REPO_HEADS_KEY);
+        if (storedRepoHeads instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) storedRepoHeads).entrySet()) {
+                if (entry.getKey() instanceof String && entry.getValue() instanceof String) {
+                    repoHeads.put((String) entry.getKey(), (String) entry.getValue());
+                }
+            }
+        }
+        return repoHeads;
+    }
+
     /**
      * Opens the given repository
      *
      * @param repoHelper the repository to open
      */
-    private void openRepo(RepoHelper repoHelper) throws BackingStoreException, IOException, ClassNotFoundException {
-        if(!this.allRepoHelpers.contains(repoHelper)) {
-            this.allRepoHelpers.add(repoHelper);
+    private synchronized void openRepo(RecentRepo recentRepo, RepoHelper repoHelper) throws BackingStoreException, IOException, ClassNotFoundException {
+        if(!this.recentRepos.contains(recentRepo)) {
+            this.recentRepos.add(recentRepo);
         }
+        // A current repo that was removed from the list wouldn't be evicted otherwise
+        if (this.currentRecentRepo != null && !this.currentRecentRepo.equals(recentRepo)
+                && !this.recentRepos.contains(this.currentRecentRepo)) {
+            this.currentRecentRepo.evict();
+        }
+        this.currentRecentRepo = recentRepo;
         this.currentRepoHelper = repoHelper;
         currentRepoHelperProperty.set(this.currentRepoHelper);
         this.saveListOfRepoPathStrings();
         this.saveMostRecentRepoPathString();
+        this.evictLeastRecentlyUsedRepos();
+    }
+
+    /**
+     * Sets how many repositories are kept fully loaded at once, and roughly how much heap
+     * they may take up between them. The current repository is always kept loaded
+     *
+     * @param maxLoadedRepos the most repositories to keep loaded
+     * @param maxLoadedBytes the most bytes of heap the loaded repositories should take up
+     */
+    public void setLoadedRepoBudget(int maxLoadedRepos, long maxLoadedBytes) {
+        this.maxLoadedRepos = maxLoadedRepos;
+        this.maxLoadedBytes = maxLoadedBytes;
+        this.evictLeastRecentlyUsedRepos();
+    }
+
+    /**
+     * Closes the least recently used repositories other than the current one, and any that
+     * are being opened, until the loaded ones fit the budget. They stay in the recent repos list and are loaded
+     * again, mostly from their commit graph cache, when they are opened
+     */
+    synchronized void evictLeastRecentlyUsedRepos() {
+        List<RecentRepo> loaded = new ArrayList<>();
+        int loadedCount = 0;
+        long loadedBytes = 0;
+        for (RecentRepo recentRepo : new ArrayList<>(this.recentRepos)) {
+            if (!recentRepo.isLoaded()) continue;
+            loadedCount++;
+            loadedBytes += recentRepo.getEstimatedHeapSize();
+            if (!recentRepo.equals(this.currentRecentRepo) && !this.openingRepos.contains(recentRepo)) loaded.add(recentRepo);
+        }
+        loaded.sort(Comparator.comparingLong(RecentRepo::getLastUsed));
+
+        for (RecentRepo recentRepo : loaded) {
+            if (loadedCount <= this.maxLoadedRepos && loadedBytes <= this.maxLoadedBytes) break;
+            long bytes = recentRepo.getEstimatedHeapSize();
+            if (recentRepo.evict()) {
+                logger.info("Closed least recently used repo " + recentRepo);
+                loadedCount--;
+                loadedBytes -= bytes;
+            }
+        }
+    }
+
+    /**
+     * Opens a repository from the recent repos list, building its RepoHelper first if
+     * it hasn't been opened yet
+     *
+     * @param recentRepo the repository to open
+     */
+    public void openRecentRepo(RecentRepo recentRepo) throws BackingStoreException, IOException, ClassNotFoundException,
+            MissingRepoException, GitAPIException, CancelledAuthorizationException {
+        synchronized (this) {
+            if (!recentRepo.exists()) {
+                this.recentRepos.remove(recentRepo);
+                throw new MissingRepoException();
+            }
+            RecentRepo matchedRecentRepo = this.findRecentRepo(recentRepo.getLocalPath());
+            if (matchedRecentRepo != null) recentRepo = matchedRecentRepo;
+            // Building the helper can take a while, so rather than hold the lock until the repo
+            // is current, keep it from being evicted in the meantime
+            this.openingRepos.add(recentRepo);
+        }
+        try {
+            this.openRepo(recentRepo, recentRepo.getRepoHelper());
+        } finally {
+            synchronized (this) {
+                this.openingRepos.remove(recentRepo);
+            }
+        }
+    }
+
+    /**
+     * Builds the RepoHelper of the repository that was open before the current one in the
+     * background, so switching back to it doesn't have to wait for it to be parsed
+     */
+    public void prewarmPreviousRepo() {
+        try {
+            String pathString = (String) PrefObj.getObject(this.preferences, PREVIOUSLY_OPENED_REPO_PATH_KEY);
+            if (pathString == null) return;
+            RecentRepo recentRepo = this.findRecentRepo(Paths.get(pathString));
+            if (recentRepo == null || recentRepo.isLoaded() || recentRepo.equals(this.currentRecentRepo)) return;
+
+            Thread th = new Thread(() -> {
+                try {
+                    if (recentRepo.exists()) recentRepo.getRepoHelper();
+                    this.evictLeastRecentlyUsedRepos();
+                } catch (Exception e) {
+                    // It will be built again, and any error shown, when it is opened
+                    logger.warn("Couldn't prewarm recent repo " + recentRepo);
+                    logger.debug(e.getStackTrace());
+                }
+            });
+            th.setDaemon(true);
+            th.setName("Prewarm previous repository");
+            th.start();
+        } catch (IOException | BackingStoreException | ClassNotFoundException e) {
+            logger.warn("Couldn't read the previously opened repo");
+            logger.debug(e.getStackTrace());
+        }
     }
 
     /**
@@ -167,36 +313,33 @@ public class SessionModel {
      *
      * @param repoHelperToLoad the RepoHelper to be loaded.
      */
-    public void openRepoFromHelper(RepoHelper repoHelperToLoad) throws BackingStoreException, IOException, ClassNotFoundException, MissingRepoException {
-        RepoHelper matchedRepoHelper = this.matchRepoWithAlreadyLoadedRepo(repoHelperToLoad);
-        if (matchedRepoHelper == null) {
+    public synchronized void openRepoFromHelper(RepoHelper repoHelperToLoad) throws BackingStoreException, IOException, ClassNotFoundException, MissingRepoException {
+        RecentRepo matchedRecentRepo = this.findRecentRepo(repoHelperToLoad.getLocalPath());
+        if (matchedRecentRepo == null) {
             // So, this repo isn't loaded into the model yet
-            this.allRepoHelpers.add(repoHelperToLoad);
-            this.openRepo(repoHelperToLoad);
+            this.openRepo(new RecentRepo(repoHelperToLoad), repoHelperToLoad);
         } else {
-            // So, this repo is already loaded into the model
-            if(matchedRepoHelper.exists()){
-                this.openRepo(matchedRepoHelper);
+            // So, this repo is already in the model, though maybe not built yet
+            if(matchedRecentRepo.exists()){
+                this.openRepo(matchedRecentRepo, matchedRecentRepo.adoptRepoHelper(repoHelperToLoad));
             }else{
-                this.allRepoHelpers.remove(matchedRepoHelper);
+                this.recentRepos.remove(matchedRecentRepo);
                 throw new MissingRepoException();
             }
         }
     }
 
     /**
-     * Checks if a repoHelper is already loaded in the model by comparing repository directories.
+     * Checks if a repository is already in the model by comparing repository directories.
      *
-     * @param repoHelperCandidate the repoHelper being checked
-     * @return the repo helper that points to the same repository as the candidate
-     *          (by directory), or null if there is no such RepoHelper already in the model.
-     */
-    private RepoHelper matchRepoWithAlreadyLoadedRepo(RepoHelper repoHelperCandidate) {
-        if(repoHelperCandidate != null) {
-            for (RepoHelper repoHelper : this.allRepoHelpers) {
-                if (repoHelper.getLocalPath().equals(repoHelperCandidate.getLocalPath())) {
-                    return repoHelper;
-                }
+     * @param localPath the directory of the repository being checked
+     * @return the recent repo with the same directory, or null if there is no such
+     *          repository in the model.
+     */
+    private synchronized RecentRepo findRecentRepo(Path localPath) {
+        for (RecentRepo recentRepo : this.recentRepos) {
+            if (recentRepo.getLocalPath().equals(localPath)) {
+                return recentRepo;
             }
         }
         return null;
@@ -209,6 +352,13 @@ public class SessionModel {
         return currentRepoHelper;
     }
 
+    /**
+     * @return the entry of the current repository in the recent repos list
+     */
+    public RecentRepo getCurrentRecentRepo() {
+        return currentRecentRepo;
+    }
+
     /**
      * @return the current JGit repository associated with the current RepoHelper
      */
@@ -219,16 +369,16 @@ public class SessionModel {
     /**
      * Gets a list of all repositories held in this session. Repositories
      * that no longer exist are removed (and not returned)
-     * @return a list of all existing repositories held in the session
+     * @return a copy of the list of all existing repositories held in the session
      */
-    public List<RepoHelper> getAllRepoHelpers() {
-        List<RepoHelper> tempList = new ArrayList<>(allRepoHelpers);
-        for(RepoHelper r : tempList){
+    public synchronized List<RecentRepo> getRecentRepos() {
+        List<RecentRepo> tempList = new ArrayList<>(recentRepos);
+        for(RecentRepo r : tempList){
             if(!r.exists()){
-                allRepoHelpers.remove(r);
+                recentRepos.remove(r);
             }
         }
-        return allRepoHelpers;
+        return new ArrayList<>(recentRepos);
     }
 
     /**
@@ -541,8 +691,8 @@ public class SessionModel {
     }
 
     /**
-     * Saves the model's list of RepoHelpers using the Preferences API (and the PrefObj wrapper
-     *  from IBM).
+     * Saves the model's list of recent repos using the Preferences API (and the PrefObj wrapper
+     *  from IBM), along with where each one's HEAD was.
      *
      * We store these as a list of file strings instead of Paths
      *  because Paths aren't serializable.
@@ -551,15 +701,18 @@ public class SessionModel {
      * @throws IOException
      * @throws ClassNotFoundException
      */
-    private void saveListOfRepoPathStrings() throws BackingStoreException, IOException, ClassNotFoundException {
+    private synchronized void saveListOfRepoPathStrings() throws BackingStoreException, IOException, ClassNotFoundException {
         ArrayList<String> repoPathStrings = new ArrayList<>();
-        for (RepoHelper repoHelper : this.allRepoHelpers) {
-            Path path = repoHelper.getLocalPath();
-            repoPathStrings.add(path.toString());
+        HashMap<String, String> repoHeads = new HashMap<>();
+        for (RecentRepo recentRepo : this.recentRepos) {
+            String pathString = recentRepo.getLocalPath().toString();
+            repoPathStrings.add(pathString);
+            if (recentRepo.getLastHead() != null) repoHeads.put(pathString, recentRepo.getLastHead());
         }
 
         // Store the list object using IBM's PrefObj helper class:
         PrefObj.putObject(this.preferences, RECENT_REPOS_LIST_KEY, repoPathStrings);
+        PrefObj.putObject(this.preferences, RECENT_REPO_HEADS_KEY, repoHeads);
     }
 
     /**
@@ -573,6 +726,10 @@ public class SessionModel {
     private void saveMostRecentRepoPathString() throws BackingStoreException, IOException, ClassNotFoundException {
         String pathString = this.currentRepoHelper.getLocalPath().toString();
 
+        String lastPathString = (String) PrefObj.getObject(this.preferences, LAST_OPENED_REPO_PATH_KEY);
+        if (lastPathString != null && !lastPathString.equals(pathString)) {
+            PrefObj.putObject(this.preferences, PREVIOUSLY_OPENED_REPO_PATH_KEY, lastPathString);
+        }
         PrefObj.putObject(this.preferences, LAST_OPENED_REPO_PATH_KEY, pathString);
     }
 
@@ -586,7 +743,9 @@ public class SessionModel {
      */
     public void clearStoredPreferences() throws BackingStoreException, IOException, ClassNotFoundException {
         PrefObj.putObject(this.preferences, RECENT_REPOS_LIST_KEY, null);
+        PrefObj.putObject(this.preferences, RECENT_REPO_HEADS_KEY, null);
         PrefObj.putObject(this.preferences, LAST_OPENED_REPO_PATH_KEY, null);
+        PrefObj.putObject(this.preferences, PREVIOUSLY_OPENED_REPO_PATH_KEY, null);
         PrefObj.putObject(this.preferences, LAST_UUID_KEY, null);
     }
 
@@ -639,9 +798,10 @@ public class SessionModel {
         return prefKey;
     }
 
-    public void removeRepoHelpers(List<RepoHelper> checkedItems) {
-        for (RepoHelper item : checkedItems) {
-            this.allRepoHelpers.remove(item);
+    public synchronized void removeRecentRepos(List<RecentRepo> checkedItems) {
+        for (RecentRepo item : checkedItems) {
+            this.recentRepos.remove(item);
+            if (!item.equals(this.currentRecentRepo)) item.evict();
         }
     }
 
@@ -106,8 +106,8 @@ public class TagHelper extends RefHelper{
         this.commit = c;
     }
 
-    String getCommitId() {
-        return this.commit.getObjectId().getName();
+    ObjectId getCommitId() {
+        return this.commit.getObjectId();
     }
 
     public boolean isAnnotated() { return this.isAnnotated; }
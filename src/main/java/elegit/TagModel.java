@@ -15,8 +15,8 @@ import org.apache.logging.log4j.Logger;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.api.errors.InvalidTagNameException;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectLoader;
-import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.revwalk.RevTag;
 
@@ -61,14 +61,15 @@ public class TagModel {
         for (String s : tagMap.keySet()) {
             if (oldTagNames.contains(s)) {
                 //Check if the tag is annotated or not, find the commit name accordingly
-                String commitName;
+                ObjectId commitId;
                 if (tagMap.get(s).getPeeledObjectId() != null)
-                    commitName = tagMap.get(s).getPeeledObjectId().getName();
-                else commitName = tagMap.get(s).getObjectId().getName();
+                    commitId = tagMap.get(s).getPeeledObjectId();
+                else commitId = tagMap.get(s).getObjectId();
                 // Re add the tag if it isn't there
 
-                if (!this.repoHelper.getCommit(commitName).hasTag(s)) {
-                    this.repoHelper.getCommit(commitName).addTag(this.tagIdMap.get(s));
+                CommitHelper commit = this.repoHelper.getCommit(commitId);
+                if (!commit.hasTag(s)) {
+                    commit.addTag(this.tagIdMap.get(s));
                 }
 
                 oldTagNames.remove(s);
@@ -155,10 +156,11 @@ public class TagModel {
         }
         // Otherwise, the tag has a message and all the stuff a commit has
         else {
-            ObjectReader objectReader = repoHelper.getRepo().newObjectReader();
-            ObjectLoader objectLoader = objectReader.open(r.getObjectId());
-            RevTag tag = RevTag.parse(objectLoader.getBytes());
-            objectReader.close();
+            RevTag tag;
+            try (ObjectAccessPool.Lease lease = repoHelper.getObjectAccess().borrow()) {
+                ObjectLoader objectLoader = lease.getReader().open(r.getObjectId());
+                tag = RevTag.parse(objectLoader.getBytes());
+            }
             t = new TagHelper(tag, c);
             c.addTag(t);
         }
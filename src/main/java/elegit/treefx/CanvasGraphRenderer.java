@@ -0,0 +1,438 @@
+package elegit.treefx;
+
+import elegit.CommitTreeController;
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.transform.Scale;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Draws the cells and edges of a tree graph on canvas tiles rather than as a node each. Only the
+ * tiles over the rows in view exist, taken from a small pool, and each is drawn straight from the
+ * rows and columns of the last layout, so there are no bindings to keep up to date. Hovers, clicks
+ * and context menus find their cell the same way, from the row under the mouse.
+ *
+ * The tiles go in the cell layer like the nodes they replace, so they are drawn in the same,
+ * upside down, coordinates. Everything here runs on the FX thread.
+ */
+class CanvasGraphRenderer {
+
+    // How many rows each tile covers
+    static final int TILE_ROWS = 16;
+    // The widest a tile gets, to stay within the texture size of most graphics cards
+    private static final double MAX_TILE_WIDTH = 4096;
+
+    private static final Color EDGE_COLOR = Color.BLACK;
+    private static final Color CELL_BACKGROUND_COLOR = Color.web("#F4F4F4");
+    private static final double[] EDGE_DASHES = {3, 5};
+
+    private final GraphViewport viewport;
+    private final CommitTreeScrollPane scrollPane;
+    private final Pane cellLayer;
+
+    // The tiles that are shown by their index, counting up from the oldest row, and the ones
+    // that are free to be used again
+    private final Map<Integer, Canvas> tiles;
+    private final Deque<Canvas> pool;
+
+    // Redraws the tiles when cells change how they look, e.g. when they are highlighted
+    private final AnimationTimer repainter;
+    private int drawnVersion;
+
+    private final Map<CellState, Color> stateColors;
+    // The points of the edge being drawn, kept so drawing an edge doesn't allocate
+    private final double[] xs = new double[5], ys = new double[5];
+    private final double[] arrowXs = new double[3], arrowYs = new double[3];
+
+    // How big the cell layer is drawn and whether only an overview is drawn, which the tiles
+    // that are shown were drawn for
+    private double zoom = 1;
+    private boolean isOverview;
+    private int rowsPerTile = TILE_ROWS;
+    private Scale scale = new Scale(1, 1, 0, 0);
+
+    // The cell under the mouse and the tile it is drawn on
+    private Cell hovered;
+    private Canvas hoveredTile;
+
+    /**
+     * @param viewport the viewport that knows the rows in view and the layout they're in
+     * @param scrollPane the scroll pane the cell layer is shown in
+     * @param cellLayer the layer to put the tiles in
+     */
+    CanvasGraphRenderer(GraphViewport viewport, CommitTreeScrollPane scrollPane, Pane cellLayer) {
+        this.viewport = viewport;
+        this.scrollPane = scrollPane;
+        this.cellLayer = cellLayer;
+        this.tiles = new HashMap<>();
+        this.pool = new ArrayDeque<>();
+
+        this.stateColors = new EnumMap<>(CellState.class);
+        for (CellState state : CellState.values()) {
+            this.stateColors.put(state, Color.web(state.getBackgroundColor()));
+        }
+
+        this.repainter = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                if (Cell.appearanceVersion != drawnVersion) drawAll();
+            }
+        };
+        this.repainter.start();
+    }
+
+    /**
+     * Shows the tiles over the given rows and puts the others back in the pool
+     *
+     * @param low the lowest row in view, or -1 if there are none
+     * @param high the highest row in view, or -1 if there are none
+     * @param redraw whether to draw tiles that were already shown again, e.g. after a layout
+     * @param zoom how big the cell layer is drawn
+     * @param isOverview whether to only draw an overview of the graph
+     */
+    void show(int low, int high, boolean redraw, double zoom, boolean isOverview) {
+        // Tiles cover more rows when zoomed out so there aren't too many of them, and only have
+        // as many pixels as they take up on screen, so a new zoom starts them over
+        int rowsPerTile = TILE_ROWS * (int) Math.max(1, Math.round(1 / zoom));
+        if (zoom != this.zoom || isOverview != this.isOverview) {
+            releaseAll();
+            this.zoom = zoom;
+            this.isOverview = isOverview;
+            this.rowsPerTile = rowsPerTile;
+            this.scale = new Scale(1 / zoom, 1 / zoom, 0, 0);
+        }
+
+        int firstTile = low < 0 ? 0 : low / this.rowsPerTile;
+        int lastTile = low < 0 ? -1 : high / this.rowsPerTile;
+
+        for (Iterator<Map.Entry<Integer, Canvas>> it = this.tiles.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Integer, Canvas> entry = it.next();
+            if (entry.getKey() < firstTile || entry.getKey() > lastTile) {
+                release(entry.getValue());
+                it.remove();
+            }
+        }
+
+        double width = Math.min(MAX_TILE_WIDTH, Math.ceil(((this.viewport.getMaxColumn() + 1) * TreeLayout.H_SPACING
+                + TreeLayout.H_PAD + Cell.BOX_SIZE) * zoom));
+        for (int index = firstTile; index <= lastTile; index++) {
+            Canvas tile = this.tiles.get(index);
+            boolean isNew = tile == null;
+            if (isNew) {
+                tile = this.pool.isEmpty() ? newTile() : this.pool.pop();
+                tile.setLayoutY(index * this.rowsPerTile * TreeLayout.V_SPACING);
+                tile.setHeight(Math.ceil(this.rowsPerTile * TreeLayout.V_SPACING * zoom));
+                tile.getTransforms().setAll(this.scale);
+                // Behind the labels
+                this.cellLayer.getChildren().add(0, tile);
+                this.tiles.put(index, tile);
+            }
+            if (isNew || redraw || tile.getWidth() != width) {
+                tile.setWidth(width);
+                draw(index, tile);
+            }
+        }
+    }
+
+    /**
+     * Takes every tile out of the cell layer and stops redrawing them
+     */
+    void dispose() {
+        this.repainter.stop();
+        releaseAll();
+        this.pool.clear();
+    }
+
+    private void releaseAll() {
+        for (Canvas tile : this.tiles.values()) {
+            release(tile);
+        }
+        this.tiles.clear();
+    }
+
+    /**
+     * @return a tile that passes the mouse on to the cells drawn on it
+     */
+    private Canvas newTile() {
+        Canvas tile = new Canvas();
+        tile.setOnMouseClicked(event -> {
+            if (this.isOverview) {
+                // Zoom all the way back in on the commits that were clicked
+                int row = getRowAt(tile, event.getY());
+                this.scrollPane.zoomProperty().set(1);
+                CommitTreeScrollPane.scrollTo(Math.max(0, Math.min(this.viewport.getNumRows() - 1, row)));
+                event.consume();
+                return;
+            }
+            Cell c = getCellAt(tile, event.getX(), event.getY());
+            // Clicks anywhere else go through to the scroll pane, which clears the selection
+            if (c != null) c.handleMouseClicked(event, tile);
+        });
+        // There are no tooltips in the overview
+        tile.setOnMouseMoved(event -> setHovered(this.isOverview ? null : getCellAt(tile, event.getX(), event.getY()), tile));
+        tile.setOnMouseExited(event -> setHovered(null, null));
+        return tile;
+    }
+
+    private void release(Canvas tile) {
+        if (tile == this.hoveredTile) setHovered(null, null);
+        this.cellLayer.getChildren().remove(tile);
+        this.pool.push(tile);
+    }
+
+    /**
+     * Tells the controller when the mouse moves on to or off of a cell, and shows the
+     * cell's tooltip while it is over it
+     */
+    private void setHovered(Cell c, Canvas tile) {
+        if (c == this.hovered) return;
+        if (this.hovered != null) {
+            Tooltip.uninstall(this.hoveredTile, this.hovered.getTooltip());
+            CommitTreeController.handleMouseover(this.hovered, false);
+        }
+        this.hovered = c;
+        this.hoveredTile = tile;
+        if (c != null) {
+            Tooltip.install(tile, c.getTooltip());
+            CommitTreeController.handleMouseover(c, true);
+        }
+    }
+
+    /**
+     * @param tile the tile the mouse is on
+     * @param x the x coordinate of the mouse on the tile
+     * @param y the y coordinate of the mouse on the tile
+     * @return the cell drawn under the mouse, or null if there isn't one
+     */
+    private Cell getCellAt(Canvas tile, double x, double y) {
+        double layerX = tile.getLayoutX() + x / this.zoom;
+        double layerY = tile.getLayoutY() + y / this.zoom;
+        int row = getRowAt(tile, y);
+        if (row < 0 || row >= this.viewport.getNumRows()) return null;
+
+        double cellX = getX(row);
+        double cellY = getY(row);
+        if (layerX < cellX || layerX > cellX + Cell.BOX_SIZE || layerY > cellY + Cell.BOX_SIZE) return null;
+        return this.viewport.getCell(row);
+    }
+
+    /**
+     * @param tile the tile the mouse is on
+     * @param y the y coordinate of the mouse on the tile
+     * @return the row at the height of the mouse, which might not be one of the layout's
+     */
+    private int getRowAt(Canvas tile, double y) {
+        double layerY = tile.getLayoutY() + y / this.zoom;
+        return (int) Math.floor((layerY - TreeLayout.V_PAD - Cell.BOX_SHIFT) / TreeLayout.V_SPACING);
+    }
+
+    private void drawAll() {
+        for (Map.Entry<Integer, Canvas> entry : this.tiles.entrySet()) {
+            draw(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Draws the cells and edges that cross the given tile
+     *
+     * @param index the index of the tile
+     * @param tile the tile to draw on
+     */
+    private void draw(int index, Canvas tile) {
+        this.drawnVersion = Cell.appearanceVersion;
+
+        GraphicsContext gc = tile.getGraphicsContext2D();
+        gc.clearRect(0, 0, tile.getWidth(), tile.getHeight());
+        int numRows = this.viewport.getNumRows();
+        if (numRows == 0) return;
+
+        // Cells and edges stick out of their rows a little, so take in a row on either side
+        int low = Math.max(0, index * this.rowsPerTile - 1);
+        int high = Math.min(numRows - 1, (index + 1) * this.rowsPerTile);
+        if (low > high) return;
+
+        gc.save();
+        gc.scale(this.zoom, this.zoom);
+        gc.translate(0, -tile.getLayoutY());
+        if (this.isOverview) {
+            drawOverview(gc, low, high);
+            gc.restore();
+            return;
+        }
+        gc.setStroke(EDGE_COLOR);
+        gc.setLineWidth(1);
+        for (Edge e : this.viewport.getEdges(low, high)) {
+            if (e.isVisible()) drawEdge(gc, e);
+        }
+        for (int row = low; row <= high; row++) {
+            Cell c = this.viewport.getCell(row);
+            if (c != null) drawCell(gc, c, row);
+        }
+        gc.restore();
+    }
+
+    /**
+     * Draws the given rows as an overview: each run of commits in the same column is a single
+     * line, edges have no arrows, and only the cells that are highlighted or selected are drawn
+     * on their own. Lines stay a few pixels wide however far the view is zoomed out
+     */
+    private void drawOverview(GraphicsContext gc, int low, int high) {
+        gc.setLineDashes(null);
+        gc.setStroke(EDGE_COLOR);
+        gc.setLineWidth(1 / this.zoom);
+        for (Edge e : this.viewport.getEdges(low, high)) {
+            if (!e.isVisible()) continue;
+            int sourceRow = this.viewport.getRow(e.getSource());
+            int targetRow = this.viewport.getRow(e.getTarget());
+            int sourceColumn = this.viewport.getColumn(sourceRow);
+            int targetColumn = this.viewport.getColumn(targetRow);
+            // The runs cover the edges between neighbors in a column
+            if (targetRow == sourceRow + 1 && targetColumn == sourceColumn) continue;
+            int n = Edge.route(sourceRow, sourceColumn, targetRow, targetColumn, xs, ys);
+            gc.strokePolyline(xs, ys, n);
+        }
+
+        gc.setStroke(this.stateColors.get(CellState.STANDARD));
+        gc.setLineWidth(Math.min(TreeLayout.H_SPACING * 0.8, Math.max(Cell.BOX_SIZE / 2., 3 / this.zoom)));
+        int runStart = low;
+        for (int row = low + 1; row <= high + 1; row++) {
+            if (row > high || this.viewport.getColumn(row) != this.viewport.getColumn(runStart)) {
+                double x = getX(runStart) + Cell.BOX_SIZE / 2.;
+                gc.strokeLine(x, getY(runStart), x, getY(row - 1) + Cell.BOX_SIZE);
+                runStart = row;
+            }
+        }
+
+        double size = Math.max(Cell.BOX_SIZE, 6 / this.zoom);
+        for (int row = low; row <= high; row++) {
+            Cell c = this.viewport.getCell(row);
+            if (c != null && c.getCellState() != CellState.STANDARD) {
+                gc.setFill(this.stateColors.get(c.getCellState()));
+                gc.fillRect(getX(row) + (Cell.BOX_SIZE - size) / 2, getY(row) + (Cell.BOX_SIZE - size) / 2, size, size);
+            }
+        }
+    }
+
+    /**
+     * Draws an edge along the same points its path goes through, with the arrow at the parent
+     */
+    private void drawEdge(GraphicsContext gc, Edge e) {
+        int sourceRow = this.viewport.getRow(e.getSource());
+        int targetRow = this.viewport.getRow(e.getTarget());
+        int n = Edge.route(sourceRow, this.viewport.getColumn(sourceRow), targetRow, this.viewport.getColumn(targetRow),
+                           xs, ys);
+
+        gc.setLineDashes(e.isDashed() ? EDGE_DASHES : null);
+        gc.strokePolyline(xs, ys, n);
+
+        Edge.arrow(xs, ys, n, arrowXs, arrowYs);
+        gc.setLineDashes(null);
+        gc.strokePolyline(arrowXs, arrowYs, 3);
+    }
+
+    /**
+     * Draws a cell with the same shape and colors as its node
+     */
+    private void drawCell(GraphicsContext gc, Cell c, int row) {
+        double x = getX(row);
+        double y = getY(row);
+        Color color = this.stateColors.get(c.getCellState());
+        CellShape shape = c.getCellShape();
+
+        switch (c.getCellType()) {
+            case LOCAL:
+                gc.setFill(color);
+                traceShape(gc, shape, x, y, 0);
+                gc.fill();
+                break;
+            case REMOTE:
+                gc.setFill(CELL_BACKGROUND_COLOR);
+                gc.setStroke(color);
+                gc.setLineWidth(2);
+                traceShape(gc, shape, x, y, 1);
+                gc.fill();
+                gc.stroke();
+                break;
+            case BOTH:
+            default:
+                // A ring with the shape filled in inside it
+                gc.setStroke(color);
+                gc.setLineWidth(2);
+                traceShape(gc, shape, x, y, 1);
+                gc.stroke();
+                gc.setFill(color);
+                traceShape(gc, shape, x, y, Cell.BOX_INSIDE + Cell.BOX_INSET + 1);
+                gc.fill();
+                break;
+        }
+        gc.setStroke(EDGE_COLOR);
+        gc.setLineWidth(1);
+    }
+
+    /**
+     * Starts a path around the given shape in a cell's box
+     *
+     * @param inset how far inside the box to put the outline
+     */
+    private static void traceShape(GraphicsContext gc, CellShape shape, double x, double y, double inset) {
+        double size = Cell.BOX_SIZE;
+        double left = x + inset, right = x + size - inset, top = y + inset, bottom = y + size - inset;
+        double middleX = x + size / 2., middleY = y + size / 2.;
+
+        gc.beginPath();
+        switch (shape) {
+            case CIRCLE:
+                gc.arc(middleX, middleY, size / 2. - inset, size / 2. - inset, 0, 360);
+                break;
+            case TRIANGLE_UP:
+                gc.moveTo(left, bottom);
+                gc.lineTo(right, bottom);
+                gc.lineTo(middleX, top);
+                break;
+            case TRIANGLE_DOWN:
+                gc.moveTo(left, top);
+                gc.lineTo(right, top);
+                gc.lineTo(middleX, bottom);
+                break;
+            case TRIANGLE_RIGHT:
+                gc.moveTo(left, top);
+                gc.lineTo(right, middleY);
+                gc.lineTo(left, bottom);
+                break;
+            case TRIANGLE_LEFT:
+                gc.moveTo(left, middleY);
+                gc.lineTo(right, top);
+                gc.lineTo(right, bottom);
+                break;
+            case SQUARE:
+            default:
+                gc.rect(left, top, right - left, bottom - top);
+                break;
+        }
+        gc.closePath();
+    }
+
+    /**
+     * @return the x coordinate in the cell layer of the cell in the given row
+     */
+    private double getX(int row) {
+        return this.viewport.getColumn(row) * TreeLayout.H_SPACING + TreeLayout.H_PAD;
+    }
+
+    /**
+     * @return the y coordinate in the cell layer of the cell in the given row
+     */
+    private double getY(int row) {
+        return row * TreeLayout.V_SPACING + TreeLayout.V_PAD + Cell.BOX_SHIFT;
+    }
+}
@@ -9,17 +9,19 @@ import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.scene.Node;
-import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Tooltip;
 import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Shape;
 import javafx.util.Duration;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * A class that represents a node in a TreeGraph
@@ -35,7 +37,7 @@ public class Cell extends Pane{
     public static final int BOX_SIZE = 20;
 
     //The height of the shift for the cells;
-    private static final int BOX_SHIFT = 20;
+    static final int BOX_SHIFT = 20;
 
     // The inset for the background;
     static final int BOX_INSET = 1;
@@ -47,20 +49,28 @@ public class Cell extends Pane{
     private static final int MAX_NUM_CELLS_TO_ANIMATE = 5;
     private static int numCellsBeingAnimated = 0;
 
+    // Goes up whenever the state, shape or type of any cell changes, so a renderer that draws
+    // cells itself can tell when to draw them again
+    static volatile int appearanceVersion = 0;
+
     // The displayed view
     Node view;
     private CellShape shape;
     private CellType type;
-    // The tooltip shown on hover
-    private Tooltip tooltip;
+    private CellState state = CellState.STANDARD;
+    // Supplies the tooltip's text when it is shown
+    private Supplier<String> displayLabel;
+
+    // The one tooltip for every cell, made the first time a cell is hovered, and the cell
+    // it was last handed out for
+    private static Tooltip tooltip;
+    private static Cell tooltipCell;
 
     // The unique ID of this cell
-    private final String cellId;
+    private final ObjectId cellId;
     // The assigned time of this commit
     private final long time;
 
-    private ContextMenu contextMenu;
-
     private CellLabelContainer refLabel;
 
     private boolean animate;
@@ -78,12 +88,17 @@ public class Cell extends Pane{
 
     // The row and column location of this cell
     IntegerProperty columnLocationProperty, rowLocationProperty;
+    // The row and column this cell was last moved to, which lag behind the location
+    // properties until the layout that set them has been applied
+    volatile int placedColumn = -1, placedRow = -1;
+    // Whether this cell is being animated to where it was placed
+    private boolean isMoving;
 
     // Whether this cell has been moved to its appropriate location
     private BooleanProperty hasUpdatedPosition;
 
-    public Cell(String s) {
-        this.cellId = s;
+    public Cell(AnyObjectId id) {
+        this.cellId = id.copy();
         this.time = 0;
     }
 
@@ -93,8 +108,9 @@ public class Cell extends Pane{
      * @param parents the parent(s) of this cell
      * @param type the type of cell to add
      */
-    public Cell(String cellId, long time, List<Cell> parents, CellType type){
-        this.cellId = cellId;
+    public Cell(AnyObjectId cellId, long time, List<Cell> parents, CellType type){
+        // A plain copy, so the cell doesn't hold on to whatever the id came from
+        this.cellId = cellId.copy();
         this.time = time;
         this.parents = new ParentCell(this, parents);
         this.refLabel = new CellLabelContainer();
@@ -113,30 +129,36 @@ public class Cell extends Pane{
         rowLocationProperty.addListener((observable, oldValue, newValue) ->
                 hasUpdatedPosition.set(oldValue.intValue()==newValue.intValue() || (newValue.intValue()>-1)&&oldValue.intValue()>-1));
 
-        tooltip = new Tooltip(cellId);
-        tooltip.setWrapText(true);
-        tooltip.setMaxWidth(300);
-        Tooltip.install(this, tooltip);
-
-        this.setOnMouseClicked(event -> {
-            if(event.getButton() == MouseButton.PRIMARY){
-                if (event.isShiftDown())
-                    CommitTreeController.handleMouseClickedShift(this);
-                else
-                    CommitTreeController.handleMouseClicked(this.cellId);
-            }else if(event.getButton() == MouseButton.SECONDARY){
-                if(contextMenu != null){
-                    contextMenu.show(this, event.getScreenX(), event.getScreenY());
-                }
-            }
-            event.consume();
+        this.setOnMouseClicked(event -> handleMouseClicked(event, this));
+        this.setOnMouseEntered(event -> {
+            Tooltip.install(this, getTooltip());
+            CommitTreeController.handleMouseover(this, true);
+        });
+        this.setOnMouseExited(event -> {
+            Tooltip.uninstall(this, tooltip);
+            CommitTreeController.handleMouseover(this, false);
         });
-        this.setOnMouseEntered(event -> CommitTreeController.handleMouseover(this, true));
-        this.setOnMouseExited(event -> CommitTreeController.handleMouseover(this, false));
 
         this.view=getBaseView();
     }
 
+    /**
+     * Selects this cell or shows its context menu for a click on it, wherever it is drawn
+     * @param event the click
+     * @param anchor the node that was clicked, to show the context menu from
+     */
+    void handleMouseClicked(MouseEvent event, Node anchor){
+        if(event.getButton() == MouseButton.PRIMARY){
+            if (event.isShiftDown())
+                CommitTreeController.handleMouseClickedShift(this);
+            else
+                CommitTreeController.handleMouseClicked(this.cellId);
+        }else if(event.getButton() == MouseButton.SECONDARY){
+            CommitTreeController.handleContextMenu(this, anchor, event.getScreenX(), event.getScreenY());
+        }
+        event.consume();
+    }
+
     /**
      * Moves this cell to the given x and y coordinates
      * @param x the x coordinate to move to
@@ -145,14 +167,17 @@ public class Cell extends Pane{
      * @param emphasize whether to have the Highlighter class emphasize this cell while it moves
      */
     void moveTo(double x, double y, boolean animate, boolean emphasize){
-        if(animate && numCellsBeingAnimated < MAX_NUM_CELLS_TO_ANIMATE){
+        // Cells out of view aren't in the scene, and there's nothing to see them move
+        Pane layer = (Pane) this.getParent();
+        if(animate && layer != null && numCellsBeingAnimated < MAX_NUM_CELLS_TO_ANIMATE){
             numCellsBeingAnimated++;
+            this.isMoving = true;
 
             Shape placeHolder = (Shape) getBaseView();
             placeHolder.setTranslateX(x+TreeLayout.H_PAD);
             placeHolder.setTranslateY(y+BOX_SHIFT);
             placeHolder.setOpacity(0.0);
-            ((Pane)(this.getParent())).getChildren().add(placeHolder);
+            layer.getChildren().add(placeHolder);
 
             TranslateTransition t = new TranslateTransition(Duration.millis(3000), this);
             t.setToX(x);
@@ -160,7 +185,11 @@ public class Cell extends Pane{
             t.setCycleCount(1);
             t.setOnFinished(event -> {
                 numCellsBeingAnimated--;
-                ((Pane)(this.getParent())).getChildren().remove(placeHolder);
+                layer.getChildren().remove(placeHolder);
+                this.isMoving = false;
+                for (Edge e : edges) {
+                    e.reroute();
+                }
             });
             t.play();
 
@@ -217,14 +246,16 @@ public class Cell extends Pane{
         if(this.shape == newShape) return;
         setView(newShape.getType(this.type));
         this.shape = newShape;
+        appearanceVersion++;
     }
 
     /**
-     * Sets the tooltip to display the given text
-     * @param label the text to display
+     * Sets the tooltip to display the given text. The text is worked out
+     * whenever the tooltip is about to be shown
+     * @param label supplies the text to display
      */
-    private void setDisplayLabel(String label){
-        tooltip.setText(label);
+    private void setDisplayLabel(Supplier<String> label){
+        this.displayLabel = label;
     }
 
     private void setRefLabel(List<RefHelper> refs){
@@ -235,7 +266,7 @@ public class Cell extends Pane{
         this.refLabel.setCurrentLabels(refs);
     }
 
-    void setLabels(String displayLabel, List<RefHelper> refLabels){
+    void setLabels(Supplier<String> displayLabel, List<RefHelper> refLabels){
         setDisplayLabel(displayLabel);
         setRefLabel(refLabels);
     }
@@ -244,10 +275,6 @@ public class Cell extends Pane{
         setCurrentRefLabels(refLabels);
     }
 
-    void setLabelMenus(Map<RefHelper, ContextMenu> menuMap) {
-        this.refLabel.setLabelMenus(menuMap);
-    }
-
     void setRemoteLabels(List<String> branchLabels) {
         this.refLabel.setRemoteLabels(branchLabels);
     }
@@ -256,10 +283,6 @@ public class Cell extends Pane{
 
     void setUseParentAsSource(boolean useParentAsSource) {this.useParentAsSource = useParentAsSource;}
 
-    void setContextMenu(ContextMenu contextMenu){
-        this.contextMenu = contextMenu;
-    }
-
     /**
      * Adds a child to this cell
      * @param cell the new child
@@ -268,6 +291,15 @@ public class Cell extends Pane{
         children.add(cell);
     }
 
+    /**
+     * Adds a parent to this cell, for when the parent is added to the tree after this cell
+     * @param cell the new parent
+     */
+    void addCellParent(Cell cell) {
+        parents.toList().add(cell);
+        cell.addCellChild(this);
+    }
+
     /**
      * @return the list of the children of this cell
      */
@@ -300,34 +332,13 @@ public class Cell extends Pane{
         children.remove(cell);
     }
 
-    /**
-     * Checks to see if the given cell has this cell as an ancestor,
-     * up to the given number of generations.
-     *
-     * Entering zero or a negative number will search all descendants
-     *
-     * @param cell the commit to check
-     * @param depth how many generations down to check
-     * @return true if cell is a descendant of this cell, otherwise false
-     */
-    private boolean isChild(Cell cell, int depth){
-        depth--;
-        if(children.contains(cell)) return true;
-        else if(depth != 0){
-            for(Cell child : children){
-                if(child.isChild(cell, depth)){
-                    return true;
-                }
-            }
-        }
-        return false;
-    }
-
     /**
      * Sets the state of this cell and adjusts the style accordingly
      * @param state the new state of the cell
      */
     void setCellState(CellState state){
+        this.state = state;
+        appearanceVersion++;
         Platform.runLater(() -> setFillType((Shape) view, state));
     }
 
@@ -337,20 +348,56 @@ public class Cell extends Pane{
      */
     void setCellType(CellType type) {
         this.type = type;
-        Platform.runLater(() -> setFillType((Shape) view, CellState.STANDARD));
-        for (Edge e : edges) {
-            e.resetDashed();
-        }
+        this.state = CellState.STANDARD;
+        appearanceVersion++;
+        Platform.runLater(() -> {
+            setFillType((Shape) view, CellState.STANDARD);
+            for (Edge e : edges) {
+                e.resetDashed();
+            }
+        });
     }
 
     CellType getCellType() {
         return this.type;
     }
 
+    CellShape getCellShape() {
+        return this.shape;
+    }
+
+    CellState getCellState() {
+        return this.state;
+    }
+
+    /**
+     * @return whether this cell has been placed in a row and column, and isn't still
+     * being animated there. Only meaningful on the FX thread
+     */
+    boolean isPlaced() {
+        return this.placedRow >= 0 && !this.isMoving;
+    }
+
+    /**
+     * @return the tooltip shared by all cells, set to show this cell's text until it is
+     * handed out for another cell
+     */
+    Tooltip getTooltip() {
+        if(tooltip == null){
+            tooltip = new Tooltip();
+            tooltip.setWrapText(true);
+            tooltip.setMaxWidth(300);
+            tooltip.setOnShowing(event -> tooltip.setText(tooltipCell.displayLabel != null ?
+                    tooltipCell.displayLabel.get() : tooltipCell.cellId.getName()));
+        }
+        tooltipCell = this;
+        return tooltip;
+    }
+
     /**
      * @return the unique ID of this cell
      */
-    public String getCellId() {
+    public ObjectId getCellId() {
         return cellId;
     }
 
@@ -365,7 +412,7 @@ public class Cell extends Pane{
 
     @Override
     public String toString(){
-        return cellId;
+        return cellId.getName();
     }
 
 
@@ -2,15 +2,14 @@ package elegit.treefx;
 
 import de.jensd.fx.glyphs.GlyphsDude;
 import de.jensd.fx.glyphs.fontawesome.FontAwesomeIcon;
+import elegit.CommitTreeController;
 import elegit.CommitTreeModel;
 import elegit.RefHelper;
 import javafx.geometry.Insets;
-import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Label;
 import javafx.scene.control.Tooltip;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import javafx.scene.input.MouseButton;
 import javafx.scene.layout.HBox;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Text;
@@ -25,7 +24,6 @@ public class CellLabel extends HBox {
     Text pointer;
     ImageView image;
     Label label;
-    ContextMenu contextMenu;
     public static final int MAX_CHAR_PER_LABEL=25;
 
     CellLabel(RefHelper refHelper, boolean isCurrent) {
@@ -57,6 +55,13 @@ public class CellLabel extends HBox {
         this.getStyleClass().clear();
         this.getStyleClass().add("cell-label-box");
         this.setId(isCurrent ? "current" : isTag ? "tag" : "regular");
+
+        // The menu for the ref is only made when a label is clicked, and shared by all of them
+        this.setPickOnBounds(true);
+        this.setOnMouseClicked(event -> {
+            CommitTreeController.handleRefLabelClicked(this.refHelper, this, event.getScreenX(), event.getScreenY());
+            event.consume();
+        });
     }
 
     /**
@@ -93,27 +98,6 @@ public class CellLabel extends HBox {
         return image;
     }
 
-    /**
-     * Sets the context menu and clicking
-     * @param menu the menu for this label
-     */
-    public void setContextMenu(ContextMenu menu) {
-        this.contextMenu = menu;
-        this.setPickOnBounds(true);
-
-        this.setOnMouseClicked(event -> {
-            contextMenu.show(this, event.getScreenX(), event.getScreenY());
-            if(event.getButton() == MouseButton.PRIMARY){
-                // TODO: do something here?
-            }else if(event.getButton() == MouseButton.SECONDARY){
-                if(contextMenu != null){
-                    contextMenu.show(this, event.getScreenX(), event.getScreenY());
-                }
-            }
-            event.consume();
-        });
-    }
-
     /**
      * Sets the cell label to be a remote branch type
      * @param isRemote whether or not the ref label is remote
@@ -7,7 +7,6 @@ import elegit.TagHelper;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.scene.Node;
-import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Label;
 import javafx.scene.control.Tooltip;
 import javafx.scene.layout.GridPane;
@@ -16,7 +15,6 @@ import javafx.scene.transform.Rotate;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 import static elegit.treefx.Cell.BOX_SIZE;
 
@@ -29,11 +27,18 @@ public class CellLabelContainer extends GridPane {
     HBox basicLabels;
     List<HBox> extendedLabels;
 
+    // Where the container was last translated to, so it can follow its own height
+    private double x = Double.NaN, y;
+
     /**
-     * Default constructor. Doesn't do anything, but it's nice to have
-     * for blank cell creation.
+     * Default constructor. Keeps the labels lined up with their cell when they change
+     * height, as cells that stay put aren't moved again by a layout.
      */
-    public CellLabelContainer() { }
+    public CellLabelContainer() {
+        heightProperty().addListener((observable, oldValue, newValue) -> {
+            if (!Double.isNaN(this.x)) translate(this.x, this.y);
+        });
+    }
 
     /**
      * Translates the container to a given location
@@ -41,6 +46,8 @@ public class CellLabelContainer extends GridPane {
      * @param y the y coordinate of the new location
      */
     public void translate(double x, double y) {
+        this.x = x;
+        this.y = y;
         setTranslateX(x+BOX_SIZE+10);
         setTranslateY(y+BOX_SIZE-5-(this.getHeight()-25));
     }
@@ -157,24 +164,6 @@ public class CellLabelContainer extends GridPane {
         });
     }
 
-    /**
-     * Helper method to set the context menus on the ref labels
-     * @param menuMap a map between ref helpers and context menus
-     */
-    void setLabelMenus(Map<RefHelper, ContextMenu> menuMap) {
-        Platform.runLater(() -> {
-            for (Node m : getChildren()) {
-                if (m instanceof HBox) {
-                    for (Node n : ((HBox) m).getChildren()) {
-                        if (n instanceof CellLabel && menuMap.keySet().contains(((CellLabel) n).getRefHelper())) {
-                            ((CellLabel) n).setContextMenu(menuMap.get(((CellLabel) n).getRefHelper()));
-                        }
-                    }
-                }
-            }
-        });
-    }
-
     /**
      * Helper method to set the remote branch cell icons
      * @param labels the labels to set as remote
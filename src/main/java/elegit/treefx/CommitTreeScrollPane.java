@@ -6,12 +6,20 @@ import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.scene.Node;
 import javafx.scene.control.ScrollPane;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.input.ZoomEvent;
 
 /**
  * The commit tree scroll pane
  */
 public class CommitTreeScrollPane extends ScrollPane{
     private final static double DEFAULT_SCROLL_POS = 1.0;
+    // How far towards the oldest commits the view has to be scrolled to ask for more of them
+    private final static double LOAD_OLDER_SCROLL_POS = 0.9;
+    // How far the view can be zoomed out, as a fraction of the full size
+    public final static double MIN_ZOOM = 0.02;
+    // How much each notch of the mouse wheel zooms in or out by
+    private final static double ZOOM_STEP = 1.25;
 
     // A property used to update the number of items in the scroll pane
     public final IntegerProperty NumItemsProperty = new SimpleIntegerProperty(1);
@@ -21,6 +29,12 @@ public class CommitTreeScrollPane extends ScrollPane{
 
     private static final DoubleProperty vPos = new SimpleDoubleProperty(-1.0);
 
+    // Called when the view is scrolled close to the oldest commits in it
+    private Runnable onScrolledToOldest;
+
+    // How big the commits are drawn, from MIN_ZOOM up to 1 for full size
+    private final DoubleProperty zoom = new SimpleDoubleProperty(1.0);
+
     public CommitTreeScrollPane(Node node) {
         super(node);
 
@@ -35,6 +49,66 @@ public class CommitTreeScrollPane extends ScrollPane{
         });
 
         NumItemsProperty.addListener((observable, oldValue, newValue) -> numItems = newValue.intValue());
+
+        // The oldest commits are at the bottom
+        this.vvalueProperty().addListener((observable, oldValue, newValue) -> {
+            if (onScrolledToOldest != null && newValue.doubleValue() > oldValue.doubleValue()
+                    && newValue.doubleValue() >= LOAD_OLDER_SCROLL_POS) {
+                onScrolledToOldest.run();
+            }
+        });
+
+        // Zoom with the mouse wheel while holding the shortcut key, or by pinching
+        this.addEventFilter(ScrollEvent.SCROLL, event -> {
+            if (event.isShortcutDown() && event.getDeltaY() != 0) {
+                zoom(event.getDeltaY() > 0 ? ZOOM_STEP : 1 / ZOOM_STEP, event.getY() - snappedTopInset());
+                event.consume();
+            }
+        });
+        this.addEventFilter(ZoomEvent.ZOOM, event -> {
+            zoom(event.getZoomFactor(), event.getY() - snappedTopInset());
+            event.consume();
+        });
+    }
+
+    /**
+     * @return the property for how big the commits are drawn, from MIN_ZOOM up to 1
+     */
+    public DoubleProperty zoomProperty() {
+        return this.zoom;
+    }
+
+    public double getZoom() {
+        return this.zoom.get();
+    }
+
+    /**
+     * Zooms in or out, keeping what is at the given height in the view where it is
+     * @param factor how much to multiply the zoom by
+     * @param viewportY the height in the view to zoom around
+     */
+    public void zoom(double factor, double viewportY) {
+        double oldZoom = getZoom();
+        double newZoom = Math.max(MIN_ZOOM, Math.min(1, oldZoom * factor));
+        if (newZoom == oldZoom) return;
+
+        double viewportHeight = getViewportBounds().getHeight();
+        double contentHeight = getContent().getLayoutBounds().getHeight();
+        double top = getVvalue() * Math.max(0, contentHeight - viewportHeight);
+        double anchor = contentHeight > 0 ? (top + viewportY) / contentHeight : 0;
+
+        this.zoom.set(newZoom);
+
+        double newContentHeight = contentHeight * newZoom / oldZoom;
+        double scrollable = newContentHeight - viewportHeight;
+        setVvalue(scrollable > 0 ? Math.max(0, Math.min(1, (anchor * newContentHeight - viewportY) / scrollable)) : 0);
+    }
+
+    /**
+     * @param handler what to do when the view is scrolled close to the oldest commits in it
+     */
+    public void setOnScrolledToOldest(Runnable handler) {
+        this.onScrolledToOldest = handler;
     }
 
     /**
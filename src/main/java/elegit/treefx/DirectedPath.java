@@ -1,10 +1,5 @@
 package elegit.treefx;
 
-import javafx.beans.binding.DoubleBinding;
-import javafx.beans.property.DoubleProperty;
-import javafx.beans.property.IntegerProperty;
-import javafx.beans.property.SimpleDoubleProperty;
-import javafx.beans.property.SimpleIntegerProperty;
 import javafx.collections.ObservableList;
 import javafx.scene.Group;
 import javafx.scene.shape.LineTo;
@@ -13,43 +8,32 @@ import javafx.scene.shape.Path;
 import javafx.scene.shape.PathElement;
 
 /**
- * Represents a line with an arrow at the end. The arrow is constructed using a three-point Path
- * object that has its vertices bound to the end of the line.
+ * Represents a line with an arrow at the end. Nothing is bound; the points are set whenever
+ * the line moves, so one path can be used for different edges in turn.
  */
 public class DirectedPath extends Group{
 
     // The length of the arrow
-    public static final IntegerProperty ARROW_LENGTH = new SimpleIntegerProperty(Cell.BOX_SIZE / 3);
+    public static final double ARROW_LENGTH = Cell.BOX_SIZE / 3.;
 
     Path arrow;
     Path path;
 
+    // The points of the arrow, kept so moving the line doesn't allocate
+    private final double[] arrowXs = new double[3], arrowYs = new double[3];
+
     /**
-     * Constructs and binds the appropriate properties for the line and
-     * the arrow
+     * Constructs an empty line and arrow
      */
-    public DirectedPath(DoubleBinding startX, DoubleBinding startY,
-                        DoubleBinding endX,DoubleBinding endY){
-
+    public DirectedPath(){
         this.path = new Path();
-
-        MoveTo start = new MoveTo();
-        start.xProperty().bind(startX);
-        start.yProperty().bind(startY);
-
-        LineTo end = new LineTo();
-        end.xProperty().bind(endX);
-        end.yProperty().bind(endY);
-
-        path.getElements().add(start);
-        path.getElements().add(end);
-
-        this.arrow = getArrow();
+        this.arrow = new Path(new MoveTo(), new LineTo(), new LineTo());
 
         this.getChildren().add(path);
         this.getChildren().add(arrow);
 
         this.path.getStyleClass().setAll("edge");
+        this.arrow.getStyleClass().setAll("edge");
     }
 
     /**
@@ -64,152 +48,33 @@ public class DirectedPath extends Group{
     }
 
     /**
-     * Adds a point to the line at the given index, and updates the path and arrow
-     * appropriately
-     * @param newX the x of the new point
-     * @param newY the y of the new point
-     * @param index the index to add the point in
-     */
-    public void addPoint(DoubleBinding newX, DoubleBinding newY, int index){
-        this.getChildren().remove(path);
-        this.getChildren().remove(arrow);
-
-        LineTo newLine = new LineTo();
-        newLine.xProperty().bind(newX);
-        newLine.yProperty().bind(newY);
-
-        path.getElements().add(index, newLine);
-        this.arrow = getArrow();
-
-        this.getChildren().add(path);
-        this.getChildren().add(arrow);
-    }
-
-    /**
-     * Adds a point to the line at the index just before the endpoint
-     * @param newX the x of the new point
-     * @param newY the y of the new point
-     */
-    public void addPoint(DoubleBinding newX, DoubleBinding newY){
-        this.addPoint(newX, newY, path.getElements().size() - 1);
-    }
-
-    /**
-     * Removes the point at the given index from the line
-     * @param index the index of the point to remove
-     */
-    public void removePoint(int index){
-        this.getChildren().remove(path);
-        this.getChildren().remove(arrow);
-
-        path.getElements().remove(index);
-
-        this.getChildren().add(path);
-        this.getChildren().add(arrow);
-    }
-
-    /**
-     * http://www.dbp-consulting.com/tutorials/canvas/CanvasArrow.html
-     * Position of the endpoints of the arrow on either side are given respectively by
-     * x = tipX+Math.cos((3*pi/4)+atan2(slope))*arrow_length
-     * y = tipY+Math.sin((3*pi/4)+atan2(slope))*arrow_length
-     * and
-     * x = tipX+Math.cos((5*pi/4)+atan2(slope))*arrow_length
-     * y = tipY+Math.sin((5*pi/4)+atan2(slope))*arrow_length
-     *
-     * @return the path that will draw an arrow at the end of the line
-     */
-    private Path getArrow(){
-        ObservableList<PathElement> list =  this.path.getElements();
-        DoubleBinding tipX = ((LineTo) list.get(list.size()-1)).xProperty().add(0);
-        DoubleBinding tipY = ((LineTo) list.get(list.size()-1)).yProperty().add(0);
-
-        DoubleBinding buttX;
-        DoubleBinding buttY;
-        if(list.size()>2){
-            buttX = ((LineTo) list.get(list.size()-2)).xProperty().add(0);
-            buttY = ((LineTo) list.get(list.size()-2)).yProperty().add(0);
-        }else{
-            buttX = ((MoveTo) list.get(list.size()-2)).xProperty().add(0);
-            buttY = ((MoveTo) list.get(list.size()-2)).yProperty().add(0);
-        }
-
-        DoubleProperty rise = new SimpleDoubleProperty();
-        DoubleProperty run = new SimpleDoubleProperty();
-        rise.bind(tipY.subtract(buttY));
-        run.bind(tipX.subtract(buttX));
-
-        MoveTo left = new MoveTo();
-        left.xProperty().bind(tipX.add(new CosBinding(new ArcTanBinding(rise, run).add(Math.PI + Math.PI / 4)).multiply(ARROW_LENGTH)));
-        left.yProperty().bind(tipY.add(new SinBinding(new ArcTanBinding(rise, run).add(Math.PI + Math.PI / 4)).multiply(ARROW_LENGTH)));
-
-        LineTo tip = new LineTo();
-        tip.xProperty().bind(tipX);
-        tip.yProperty().bind(tipY);
-
-        LineTo right = new LineTo();
-        right.xProperty().bind(tipX.add(new CosBinding(new ArcTanBinding(rise, run).add(Math.PI - Math.PI / 4)).multiply(ARROW_LENGTH)));
-        right.yProperty().bind(tipY.add(new SinBinding(new ArcTanBinding(rise, run).add(Math.PI - Math.PI / 4)).multiply(ARROW_LENGTH)));
-
-        Path temp = new Path();
-        temp.getElements().add(left);
-        temp.getElements().add(tip);
-        temp.getElements().add(right);
-
-        temp.getStyleClass().setAll("edge");
-        return temp;
-    }
-
-    /**
-     * Helper class that provides a binding to the ArcTan of two values
-     */
-    private class ArcTanBinding extends DoubleBinding{
-        private final DoubleProperty x, y;
-
-        public ArcTanBinding(DoubleProperty x, DoubleProperty y){
-            this.x = x;
-            this.y = y;
-            super.bind(this.x);
-            super.bind(this.y);
-        }
-
-        @Override
-        protected double computeValue(){
-            return Math.atan2(this.x.get(), this.y.get());
-        }
-    }
-
-    /**
-     * Helper class that provides a binding to the Sin of a value
+     * Moves the line to go through the given points, with the arrow at the last one
+     * @param xs the x coordinates of the points
+     * @param ys the y coordinates of the points
+     * @param n the number of points, at least 2
      */
-    private class SinBinding extends DoubleBinding{
-        private final DoubleBinding theta;
-
-        public SinBinding(DoubleBinding theta){
-            this.theta = theta;
-            super.bind(this.theta);
+    public void setPoints(double[] xs, double[] ys, int n){
+        ObservableList<PathElement> elements = this.path.getElements();
+        if(elements.size() != n){
+            PathElement[] newElements = new PathElement[n];
+            newElements[0] = new MoveTo();
+            for(int i = 1; i < n; i++) newElements[i] = new LineTo();
+            elements.setAll(newElements);
         }
-
-        @Override
-        protected double computeValue(){
-            return Math.sin(this.theta.get());
-        }
-    }
-
-    /**
-     * Helper class that provides a binding to the Cos of a value
-     */
-    private class CosBinding extends DoubleBinding{
-        private final DoubleBinding theta;
-
-        public CosBinding(DoubleBinding theta){
-            this.theta = theta;
-            super.bind(this.theta);
+        ((MoveTo) elements.get(0)).setX(xs[0]);
+        ((MoveTo) elements.get(0)).setY(ys[0]);
+        for(int i = 1; i < n; i++){
+            ((LineTo) elements.get(i)).setX(xs[i]);
+            ((LineTo) elements.get(i)).setY(ys[i]);
         }
 
-        @Override
-        protected double computeValue(){
-            return Math.cos(this.theta.get());
+        Edge.arrow(xs, ys, n, arrowXs, arrowYs);
+        ObservableList<PathElement> arrowElements = this.arrow.getElements();
+        ((MoveTo) arrowElements.get(0)).setX(arrowXs[0]);
+        ((MoveTo) arrowElements.get(0)).setY(arrowYs[0]);
+        for(int i = 1; i < 3; i++){
+            ((LineTo) arrowElements.get(i)).setX(arrowXs[i]);
+            ((LineTo) arrowElements.get(i)).setY(arrowYs[i]);
         }
     }
 }
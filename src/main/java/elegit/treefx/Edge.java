@@ -1,142 +1,160 @@
 package elegit.treefx;
 
-import javafx.beans.binding.DoubleBinding;
-import javafx.beans.binding.When;
 import javafx.beans.property.BooleanProperty;
-import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.SimpleBooleanProperty;
-import javafx.beans.property.SimpleDoubleProperty;
-import javafx.scene.Group;
 
 /**
- * Connects two cells in the TreeGraph using a DirectedPath
+ * Connects two cells in the TreeGraph. An edge is just the pair of cells it joins; the
+ * DirectedPath that draws it is only made while the edge is in view, and its points are worked
+ * out from the rows and columns its cells were moved to rather than bound to the cells. The
+ * path is routed again whenever either cell is moved, and hidden while either one is on its way
  */
-public class Edge extends Group {
+public class Edge {
 
     // Determines whether all edges are set to be visible or not
     public static BooleanProperty allVisible = new SimpleBooleanProperty(true);
 
-    // Whether or not this edge is visible
-    private BooleanProperty visible;
-
     // The endpoints of this edge
-    private Cell source;
-    private Cell target;
+    private final Cell source;
+    private final Cell target;
 
-    // The path that will be drawn to represent this edge
-    private DirectedPath path;
+    // Whether this edge is visible even when all edges aren't
+    private boolean highlighted;
 
-    // Whether extra points between the start and endpoints have been added
-    private boolean addedMidPoints;
+    // The path drawing this edge, if it is in view
+    private DirectedPath view;
 
-    // The y value to draw the mid points at
-    private DoubleProperty midLineX;
+    // The points of the edge being routed, kept so routing an edge doesn't allocate. Only
+    // used on the FX thread
+    private static final double[] xs = new double[5], ys = new double[5];
 
     /**
-     * Constructs a directed line between the source and target cells and binds
-     * properties to handle relocation smoothly
+     * Constructs an edge between the source and target cells. Doesn't add it to the cells' edges
      * @param source the source (parent) cell
      * @param target the target (child) cell
      */
-    public Edge(Cell source, Cell target) {
-
+    Edge(Cell source, Cell target) {
         this.source = source;
         this.target = target;
-        this.addedMidPoints = false;
-        midLineX = new SimpleDoubleProperty(0);
-
-        DoubleBinding endX = source.translateXProperty().add(source.widthProperty().divide(2.0));
-        DoubleBinding endY = source.translateYProperty().add(source.heightProperty());
-
-        DoubleBinding startX = target.translateXProperty().add(target.widthProperty().divide(2.0));
-        DoubleBinding startY = target.translateYProperty().add(0);
-
-        path = new DirectedPath(startX, startY, endX, endY);
-        checkAndAddMidPoints(startY, endY);
-        path.addPoint(endX, endY.add(TreeLayout.V_SPACING / 4.));
-
-        source.translateXProperty().addListener((observable, oldValue, newValue) -> {
-            checkAndAddMidPoints(startY, endY);
-        });
-
-        target.translateYProperty().addListener((observable, oldValue, newValue) -> {
-            checkAndAddMidPoints(startY, endY);
-        });
-
-        source.translateXProperty().addListener((observable, oldValue, newValue) -> {
-            checkAndAddMidPoints(startY, endY);
-        });
-        target.translateYProperty().addListener((observable, oldValue, newValue) -> {
-            checkAndAddMidPoints(startY, endY);
-        });
-
-        // Change the X of the midpoints depending on whether the target is above, below, or at the same
-        // level as the source
-        midLineX.bind(new When(target.rowLocationProperty.subtract(source.rowLocationProperty).lessThan(0))
-                .then(new When(target.columnLocationProperty.subtract(source.columnLocationProperty).greaterThan(0))
-                        .then(endX.add(TreeLayout.H_SPACING / 2.))
-                        .otherwise(new When(target.columnLocationProperty.subtract(source.columnLocationProperty).lessThan(0))
-                                .then(startX.add(TreeLayout.H_SPACING / 2.))
-                                .otherwise(startX)))
-                .otherwise(new When(target.columnLocationProperty.subtract(source.columnLocationProperty).greaterThan(0))
-                        .then(endX.add(TreeLayout.H_SPACING / 2.))
-                        .otherwise(new When(target.columnLocationProperty.subtract(source.columnLocationProperty).lessThan(0))
-                                .then(startX.add(TreeLayout.H_SPACING / 2.))
-                                .otherwise(startX))));
-
-        if(source.getCellType() != Cell.CellType.BOTH || target.getCellType() != Cell.CellType.BOTH){
-            path.setDashed(true);
-        }
-        getChildren().add(path);
+        this.highlighted = false;
+    }
 
-        visible = new SimpleBooleanProperty(false);
-        visibleProperty().bind(source.visibleProperty().and(target.visibleProperty())
-                .and(allVisible.or(visible)));
+    /**
+     * Works out the points the line of an edge goes through, from the top of the child cell to
+     * the bottom of the parent. An edge between cells that aren't in neighboring rows goes round
+     * the cells in between, beside the column of whichever cell is further right
+     * @param sourceRow the row of the source (parent) cell
+     * @param sourceColumn the column of the source (parent) cell
+     * @param targetRow the row of the target (child) cell
+     * @param targetColumn the column of the target (child) cell
+     * @param xs where to put the x coordinates of the points, with room for at least 5
+     * @param ys where to put the y coordinates of the points, with room for at least 5
+     * @return the number of points
+     */
+    static int route(int sourceRow, int sourceColumn, int targetRow, int targetColumn, double[] xs, double[] ys) {
+        double startX = targetColumn * TreeLayout.H_SPACING + TreeLayout.H_PAD + Cell.BOX_SIZE / 2.;
+        double startY = targetRow * TreeLayout.V_SPACING + TreeLayout.V_PAD + Cell.BOX_SHIFT;
+        double endX = sourceColumn * TreeLayout.H_SPACING + TreeLayout.H_PAD + Cell.BOX_SIZE / 2.;
+        double endY = sourceRow * TreeLayout.V_SPACING + TreeLayout.V_PAD + Cell.BOX_SHIFT + Cell.BOX_SIZE;
+
+        int n = 0;
+        xs[n] = startX;
+        ys[n++] = startY;
+        if (targetRow - sourceRow > 1 || targetRow - sourceRow < 0) {
+            double midX = targetColumn > sourceColumn ? endX + TreeLayout.H_SPACING / 2.
+                    : targetColumn < sourceColumn ? startX + TreeLayout.H_SPACING / 2. : startX;
+            xs[n] = midX;
+            ys[n++] = startY - TreeLayout.V_SPACING / 3.;
+            xs[n] = midX;
+            ys[n++] = endY + TreeLayout.V_SPACING / 2.;
+        }
+        xs[n] = endX;
+        ys[n++] = endY + TreeLayout.V_SPACING / 4.;
+        xs[n] = endX;
+        ys[n++] = endY;
+        return n;
+    }
 
-        source.edges.add(this);
-        target.edges.add(this);
+    /**
+     * Works out the points of the arrow at the end of a line
+     * http://www.dbp-consulting.com/tutorials/canvas/CanvasArrow.html
+     * @param xs the x coordinates of the points of the line
+     * @param ys the y coordinates of the points of the line
+     * @param n the number of points in the line
+     * @param arrowXs where to put the x coordinates of the arrow's three points
+     * @param arrowYs where to put the y coordinates of the arrow's three points
+     */
+    static void arrow(double[] xs, double[] ys, int n, double[] arrowXs, double[] arrowYs) {
+        double tipX = xs[n - 1], tipY = ys[n - 1];
+        double angle = Math.atan2(tipY - ys[n - 2], tipX - xs[n - 2]);
+        double length = DirectedPath.ARROW_LENGTH;
+
+        arrowXs[0] = tipX + Math.cos(angle + Math.PI + Math.PI / 4) * length;
+        arrowYs[0] = tipY + Math.sin(angle + Math.PI + Math.PI / 4) * length;
+        arrowXs[1] = tipX;
+        arrowYs[1] = tipY;
+        arrowXs[2] = tipX + Math.cos(angle + Math.PI - Math.PI / 4) * length;
+        arrowYs[2] = tipY + Math.sin(angle + Math.PI - Math.PI / 4) * length;
+    }
 
+    /**
+     * @param enable whether to set this edge as visible or not
+     */
+    public void setHighlighted(boolean enable){
+        this.highlighted = enable;
+        if (this.view != null) this.view.setVisible(isVisible() && isPlaced());
     }
 
     /**
-     * Checks the start and endpoints to see if any midpoints are necessary for drawing the line
-     * between them correctly. If the endpoints are more than 1 column apart and, the midpoints
-     * are added at the calculated x value
-     * @param startY the starting y coordinate of this edge
-     * @param endY the ending y coordinate of this edge
+     * Puts the path drawing this edge, if there is one, on the points between where its cells
+     * were moved to. Must be called on the FX thread
      */
-    private void checkAndAddMidPoints(DoubleBinding startY, DoubleBinding endY){
-        if(target.rowLocationProperty.get() - source.rowLocationProperty.get() > 1
-                || target.rowLocationProperty.get() - source.rowLocationProperty.get() < 0){
-            if(!addedMidPoints){
-                path.addPoint(midLineX.add(0), startY.subtract(TreeLayout.V_SPACING/3.), 1);
-                path.addPoint(midLineX.add(0), endY.add(TreeLayout.V_SPACING/2.), 2);
-                this.addedMidPoints = true;
-            }
-        }else{
-            if(addedMidPoints){
-                path.removePoint(2);
-                path.removePoint(1);
-                this.addedMidPoints = false;
-            }
+    void reroute() {
+        if (this.view == null) return;
+        if (isPlaced()) {
+            int n = route(this.source.placedRow, this.source.placedColumn, this.target.placedRow,
+                          this.target.placedColumn, xs, ys);
+            this.view.setPoints(xs, ys, n);
         }
+        this.view.setDashed(isDashed());
+        this.view.setVisible(isVisible() && isPlaced());
     }
 
     /**
-     * @param enable whether to set this edge as visible or not
+     * @return whether both cells have been moved to where they go and aren't still moving there
      */
-    public void setHighlighted(boolean enable){
-        this.visible.set(enable);
+    private boolean isPlaced() {
+        return this.source.isPlaced() && this.target.isPlaced();
+    }
+
+    /**
+     * @return whether this edge should be drawn
+     */
+    boolean isVisible() {
+        return allVisible.get() || this.highlighted;
     }
 
+    /**
+     * @return whether this edge should be drawn dashed, as one of its cells isn't both local and remote
+     */
+    boolean isDashed() {
+        return source.getCellType() != Cell.CellType.BOTH || target.getCellType() != Cell.CellType.BOTH;
+    }
+
+    /**
+     * @param view the path drawing this edge, or null if it isn't drawn anymore
+     */
+    void setView(DirectedPath view) {
+        this.view = view;
+    }
+
+    DirectedPath getView() { return this.view; }
+
     public Cell getSource() { return this.source; }
     public Cell getTarget() { return this.target; }
 
     public void resetDashed() {
-        if(source.getCellType() != Cell.CellType.BOTH || target.getCellType() != Cell.CellType.BOTH)
-            path.setDashed(true);
-        else
-            path.setDashed(false);
+        if (this.view != null) this.view.setDashed(isDashed());
     }
 
 }
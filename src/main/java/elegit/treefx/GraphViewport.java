@@ -0,0 +1,320 @@
+package elegit.treefx;
+
+import javafx.scene.Node;
+import javafx.scene.layout.Pane;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps only the cells, labels and edges near the visible rows of a tree graph in its cell layer,
+ * so a long history doesn't put a node per commit in the scene. The model still holds the whole
+ * graph; nodes are attached when their rows scroll into view, plus a margin, and detached once
+ * they scroll out of it again. The cell layer is sized for every row, so the scroll bars still
+ * cover the whole graph.
+ *
+ * When TreeGraph.drawOnCanvas is set, the cells and edges in view are drawn on canvas tiles by
+ * a CanvasGraphRenderer instead, and only the ref labels are attached as nodes. When the view is
+ * zoomed out past OVERVIEW_ZOOM, the canvas draws an overview of the graph whichever renderer is
+ * chosen, and there are no labels at all.
+ *
+ * Everything here runs on the FX thread.
+ */
+class GraphViewport {
+
+    // How many rows past the visible ones to keep attached on either side
+    static int MARGIN_ROWS = 20;
+    // How far the view has to be zoomed out to only show an overview of the graph
+    static double OVERVIEW_ZOOM = 0.5;
+
+    private final CommitTreeScrollPane scrollPane;
+    private final Pane cellLayer;
+
+    // The cells of the last layout by row, from the oldest one up, and the column of each row
+    private Cell[] cellsByRow;
+    private int[] columns;
+    private int maxColumn;
+    private Map<Cell, Integer> rowOfCell;
+    // The edges that span more rows than the margin, so an end of them may not be near the view
+    private List<Edge> longEdges;
+    // Cells and edges removed from the model since the last layout, which mustn't be attached again
+    private Set<Cell> removedCells;
+    private Set<Edge> removedEdges;
+
+    // The nodes in the cell layer that this viewport put there
+    private Set<Node> attached;
+    // The edges that have a path drawing them, and the paths that are free to draw others
+    private Set<Edge> shownEdges;
+    private Deque<DirectedPath> edgeViewPool;
+    // The rows whose nodes are attached, or -1 if none are
+    private int lowRow, highRow;
+
+    // Draws the cells and edges when they are drawn on a canvas, or null when they're nodes
+    private CanvasGraphRenderer canvasRenderer;
+
+    /**
+     * @param scrollPane the scroll pane the cell layer is shown in
+     * @param cellLayer the layer to put the nodes in
+     */
+    GraphViewport(CommitTreeScrollPane scrollPane, Pane cellLayer) {
+        this.scrollPane = scrollPane;
+        this.cellLayer = cellLayer;
+        this.cellsByRow = new Cell[0];
+        this.columns = new int[0];
+        this.rowOfCell = Collections.emptyMap();
+        this.longEdges = Collections.emptyList();
+        this.removedCells = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.removedEdges = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.attached = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.shownEdges = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.edgeViewPool = new ArrayDeque<>();
+        this.lowRow = this.highRow = -1;
+
+        scrollPane.vvalueProperty().addListener((observable, oldValue, newValue) -> refresh(false));
+        scrollPane.viewportBoundsProperty().addListener((observable, oldValue, newValue) -> refresh(false));
+        scrollPane.zoomProperty().addListener((observable, oldValue, newValue) -> refresh(true));
+        cellLayer.heightProperty().addListener((observable, oldValue, newValue) -> refresh(false));
+    }
+
+    /**
+     * Takes on the rows of a new layout, and sizes the cell layer to fit all of them
+     *
+     * @param cellsByRow the cells by row, from the oldest one up
+     * @param columns the column of the cell in each row
+     * @param rowShift how many rows the cells that were already laid out moved up by, e.g.
+     *                 because older commits were added below them
+     */
+    void setRows(Cell[] cellsByRow, int[] columns, int rowShift) {
+        this.cellsByRow = cellsByRow;
+        this.columns = columns;
+        this.maxColumn = 0;
+        for (int column : columns) {
+            this.maxColumn = Math.max(this.maxColumn, column);
+        }
+        this.rowOfCell = new IdentityHashMap<>(cellsByRow.length);
+        for (int row = 0; row < cellsByRow.length; row++) {
+            this.rowOfCell.put(cellsByRow[row], row);
+        }
+        this.removedCells.clear();
+        this.removedEdges.clear();
+
+        Set<Edge> longEdges = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Cell c : cellsByRow) {
+            for (Edge e : c.edges) {
+                Integer sourceRow = this.rowOfCell.get(e.getSource());
+                Integer targetRow = this.rowOfCell.get(e.getTarget());
+                if (sourceRow != null && targetRow != null && Math.abs(targetRow - sourceRow) > MARGIN_ROWS) {
+                    longEdges.add(e);
+                }
+            }
+        }
+        this.longEdges = new ArrayList<>(longEdges);
+
+        // The cell layer is upside down, so rows added below the shifted ones make it taller at the
+        // bottom of the view. Keep the top of the view the same distance from the top of the layer,
+        // so the commits in view stay put
+        double zoom = this.scrollPane.getZoom();
+        double viewportHeight = this.scrollPane.getViewportBounds().getHeight();
+        double oldHeight = this.cellLayer.getLayoutBounds().getHeight();
+        double top = this.scrollPane.getVvalue() * Math.max(0, oldHeight * zoom - viewportHeight);
+
+        this.cellLayer.setMinHeight(cellsByRow.length == 0 ? 0
+                : (cellsByRow.length - 1) * TreeLayout.V_SPACING + 2 * (TreeLayout.V_PAD + Cell.BOX_SIZE) + Cell.BOX_SIZE);
+        if (rowShift != 0) {
+            double newRange = (oldHeight + rowShift * TreeLayout.V_SPACING) * zoom - viewportHeight;
+            if (newRange > 0) this.scrollPane.setVvalue(Math.min(1, top / newRange));
+        }
+        refresh(true);
+    }
+
+    /**
+     * Detaches the given cells and edges for good, as they were removed from the model
+     *
+     * @param cells the cells to detach
+     * @param edges the edges to detach
+     */
+    void remove(Collection<Cell> cells, Collection<Edge> edges) {
+        this.removedCells.addAll(cells);
+        this.removedEdges.addAll(edges);
+        refresh(true);
+    }
+
+    /**
+     * Attaches the nodes of the rows in view and detaches the others
+     *
+     * @param force whether to go through the rows even if the same ones are in view as last
+     *              time, e.g. because the edges between them changed
+     */
+    void refresh(boolean force) {
+        int numRows = this.cellsByRow.length;
+        double viewportHeight = this.scrollPane.getViewportBounds().getHeight();
+        double zoom = this.scrollPane.getZoom();
+        boolean isOverview = zoom < OVERVIEW_ZOOM;
+        int low = -1, high = -1;
+        if (numRows > 0 && viewportHeight > 0) {
+            // The cell layer is upside down, so the top of the view is the high end of the layer.
+            // The layer is scaled by the zoom, so the view covers more of it when zoomed out
+            double layerHeight = this.cellLayer.getLayoutBounds().getHeight();
+            double top = this.scrollPane.getVvalue() * Math.max(0, layerHeight * zoom - viewportHeight) / zoom;
+            double viewHigh = layerHeight - top;
+            double viewLow = viewHigh - viewportHeight / zoom;
+
+            low = Math.max(0, (int) Math.floor((viewLow - TreeLayout.V_PAD - 2 * Cell.BOX_SIZE) / TreeLayout.V_SPACING) - MARGIN_ROWS);
+            high = Math.min(numRows - 1, (int) Math.ceil((viewHigh - TreeLayout.V_PAD) / TreeLayout.V_SPACING) + MARGIN_ROWS);
+            if (low > high) low = high = -1;
+        }
+        // Switch renderers if that has been asked for since the last time
+        boolean switched = (TreeGraph.drawOnCanvas || isOverview) != (this.canvasRenderer != null);
+        if (switched) {
+            if (this.canvasRenderer != null) {
+                this.canvasRenderer.dispose();
+                this.canvasRenderer = null;
+            } else {
+                this.canvasRenderer = new CanvasGraphRenderer(this, this.scrollPane, this.cellLayer);
+            }
+        }
+        if (!force && !switched && low == this.lowRow && high == this.highRow) return;
+        this.lowRow = low;
+        this.highRow = high;
+
+        Set<Node> wanted = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Node> cells = new ArrayList<>();
+        List<Node> edges = new ArrayList<>();
+        List<Node> labels = new ArrayList<>();
+        if (low >= 0) {
+            for (int row = low; row <= high; row++) {
+                Cell c = this.cellsByRow[row];
+                if (this.removedCells.contains(c)) continue;
+                if (this.canvasRenderer == null && wanted.add(c)) cells.add(c);
+                if (!isOverview && wanted.add(c.getLabel())) labels.add(c.getLabel());
+            }
+        }
+
+        // Only the edges in view get a path, which is given back once they go out of view
+        List<Edge> edgesInView = low >= 0 && this.canvasRenderer == null ? getEdges(low, high) : Collections.emptyList();
+        Set<Edge> edgesInViewSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        edgesInViewSet.addAll(edgesInView);
+        for (Iterator<Edge> it = this.shownEdges.iterator(); it.hasNext(); ) {
+            Edge e = it.next();
+            if (!edgesInViewSet.contains(e)) {
+                this.edgeViewPool.push(e.getView());
+                e.setView(null);
+                it.remove();
+            }
+        }
+        for (Edge e : edgesInView) {
+            DirectedPath view = e.getView();
+            boolean isNew = view == null;
+            if (isNew) {
+                view = this.edgeViewPool.isEmpty() ? new DirectedPath() : this.edgeViewPool.pop();
+                e.setView(view);
+                this.shownEdges.add(e);
+            }
+            if (isNew || force) e.reroute();
+            wanted.add(view);
+            edges.add(view);
+        }
+
+        Set<Node> toRemove = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Node n : this.attached) {
+            if (!wanted.contains(n)) toRemove.add(n);
+        }
+        if (!toRemove.isEmpty()) {
+            this.cellLayer.getChildren().removeAll(toRemove);
+            this.attached.removeAll(toRemove);
+        }
+
+        // Cells, then edges, then labels, so the labels are drawn on top
+        List<Node> toAdd = new ArrayList<>();
+        for (List<Node> nodes : Arrays.asList(cells, edges, labels)) {
+            for (Node n : nodes) {
+                if (this.attached.add(n)) toAdd.add(n);
+            }
+        }
+        this.cellLayer.getChildren().addAll(toAdd);
+
+        if (this.canvasRenderer != null) {
+            this.canvasRenderer.show(low, high, force || switched, zoom, isOverview);
+        }
+    }
+
+    /**
+     * @param low the lowest row to get the edges of
+     * @param high the highest row to get the edges of
+     * @return the edges that are laid out and cross any of the given rows, each once
+     */
+    List<Edge> getEdges(int low, int high) {
+        Set<Edge> found = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Edge> edges = new ArrayList<>();
+        // An edge in view that isn't long has an end within the margin of the rows
+        for (int row = Math.max(0, low - MARGIN_ROWS); row <= Math.min(this.cellsByRow.length - 1, high + MARGIN_ROWS); row++) {
+            for (Edge e : this.cellsByRow[row].edges) {
+                if (isInView(e, low, high) && found.add(e)) edges.add(e);
+            }
+        }
+        for (Edge e : this.longEdges) {
+            if (isInView(e, low, high) && found.add(e)) edges.add(e);
+        }
+        return edges;
+    }
+
+    /**
+     * @return the number of rows in the last layout
+     */
+    int getNumRows() {
+        return this.cellsByRow.length;
+    }
+
+    /**
+     * @param row a row of the last layout
+     * @return the cell in the given row, or null if it has been removed since
+     */
+    Cell getCell(int row) {
+        Cell c = this.cellsByRow[row];
+        return this.removedCells.contains(c) ? null : c;
+    }
+
+    /**
+     * @param row a row of the last layout
+     * @return the column of the cell in the given row
+     */
+    int getColumn(int row) {
+        return this.columns[row];
+    }
+
+    /**
+     * @return the rightmost column of the last layout
+     */
+    int getMaxColumn() {
+        return this.maxColumn;
+    }
+
+    /**
+     * @param c a cell
+     * @return the row of the given cell in the last layout, or -1 if it isn't in it
+     */
+    int getRow(Cell c) {
+        Integer row = this.rowOfCell.get(c);
+        return row == null ? -1 : row;
+    }
+
+    /**
+     * @return whether the given edge has both its ends laid out and crosses the given rows
+     */
+    private boolean isInView(Edge e, int low, int high) {
+        if (this.removedEdges.contains(e) || this.removedCells.contains(e.getSource()) || this.removedCells.contains(e.getTarget())) return false;
+        Integer sourceRow = this.rowOfCell.get(e.getSource());
+        Integer targetRow = this.rowOfCell.get(e.getTarget());
+        return sourceRow != null && targetRow != null
+                && Math.min(sourceRow, targetRow) <= high && Math.max(sourceRow, targetRow) >= low;
+    }
+}
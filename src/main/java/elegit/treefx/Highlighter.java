@@ -4,11 +4,16 @@ import javafx.animation.ScaleTransition;
 import javafx.application.Platform;
 import javafx.scene.shape.Shape;
 import javafx.util.Duration;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This class provides static methods for highlighting and animating cells in a tree graph
@@ -16,73 +21,52 @@ import java.util.Map;
 public class Highlighter{
 
     // Cells that are currently blocked from being highlighted
-    private static final List<String> blockedCellIDs = new ArrayList<>();
+    private static final Set<ObjectId> blockedCellIDs = new HashSet<>();
     // A map from each known cell to its state
     private static final Map<Cell, CellState> cellStates = new HashMap<>();
+    // Cells matching the current commit search, shown highlighted when nothing else is
+    private static final Set<Cell> searchResultCells = new HashSet<>();
 
     /**
      * Highlights the cell corresponding to the given id in the given model, as well as
-     * its relatives (depending on parameters), with either the standard color or the
-     * constants SELECT_COLOR and first HIGHLIGHT_COLOR, respectively
+     * the given relatives of it, with either the standard color or the constants
+     * SELECT_COLOR and first HIGHLIGHT_COLOR, respectively. Relatives that don't have
+     * a cell in the model are skipped
      * @param cellID the selected cell to highlight
      * @param model the model wherein the cell is found
      * @param enable whether to highlight the cell or return it to standard
-     * @param ancestors whether to highlight the cell's parents
-     * @param descendants whether to highlight the cell's children
-     * @param allGenerations whether to highlight further generations than just parents/children (i.e. grandparents, grandchildren etc)
+     * @param relativeIDs the ids of the cell's relatives to highlight along with it
      */
-    public static void highlightSelectedCell(String cellID, TreeGraphModel model, boolean enable, boolean ancestors, boolean descendants, boolean allGenerations){
+    public static void highlightSelectedCell(AnyObjectId cellID, TreeGraphModel model, boolean enable, Collection<? extends AnyObjectId> relativeIDs){
         Cell cell = model.cellMap.get(cellID);
         if(cell == null) return;
-        if(enable){
-            highlightCell(cell, CellState.SELECTED, true);
-            if(ancestors){
-                highlightCellParents(cell, CellState.HIGHLIGHTED1, allGenerations, new ArrayList<>());
-            }
-            if(descendants){
-                highlightCellChildren(cell, CellState.HIGHLIGHTED1, allGenerations, new ArrayList<>());
-            }
-        }else{
-            highlightCell(cell, CellState.STANDARD, true);
-            if(ancestors){
 
-                highlightCellParents(cell, CellState.STANDARD, allGenerations, new ArrayList<>());
-            }
-            if(descendants){
-                highlightCellChildren(cell, CellState.STANDARD, allGenerations, new ArrayList<>());
+        highlightCell(cell, enable ? CellState.SELECTED : CellState.STANDARD, true);
+        for(AnyObjectId relativeID : relativeIDs){
+            Cell relative = model.cellMap.get(relativeID);
+            if(relative != null){
+                highlightCell(relative, enable ? CellState.HIGHLIGHTED1 : CellState.STANDARD, true);
             }
         }
     }
 
     /**
-     * Recursively highlights all of cell's parents. Note that the initial cell itself is not highlighted
-     * @param cell the cell whose parents should be highlighted
-     * @param state the new state for the cell's parents
-     * @param recurse whether to recurse or not
-     * @param visited a list of all visited cells so far
+     * Highlights the given cells as the results of a commit search, in place of the results
+     * of the previous search. Cells that are selected or highlighted otherwise keep that
+     * state, and go back to showing as search results afterwards
+     * @param cells the cells matching the search
      */
-    private static void highlightCellParents(Cell cell, CellState state, boolean recurse, List<Cell> visited){
-        for(Cell parent : cell.getCellParents()){
-            if(visited.contains(parent)) continue;
-            visited.add(parent);
-            highlightCell(parent, state, true);
-            if(recurse) highlightCellParents(parent, state, true, visited);
+    public static void highlightSearchResults(Collection<Cell> cells){
+        List<Cell> oldResults = new ArrayList<>(searchResultCells);
+        searchResultCells.clear();
+        for(Cell cell : oldResults){
+            highlightCell(cell, CellState.STANDARD, false);
         }
-    }
-
-    /**
-     * Recursively highlights all of cell's children. Note that the initial cell itself is not highlighted
-     * @param cell the cell whose children should be highlighted
-     * @param state the new state for the cell's children
-     * @param recurse whether to recurse or not
-     * @param visited a list of all visited cells so far
-     */
-    private static void highlightCellChildren(Cell cell, CellState state, boolean recurse, List<Cell> visited){
-        for(Cell child : cell.getCellChildren()){
-            if(visited.contains(child)) continue;
-            visited.add(child);
-            highlightCell(child, state, true);
-            if(recurse) highlightCellChildren(child, state, true, visited);
+        for(Cell cell : cells){
+            searchResultCells.add(cell);
+            if(!cellStates.containsKey(cell)){
+                highlightCell(cell, CellState.HIGHLIGHTED2, false);
+            }
         }
     }
 
@@ -95,7 +79,7 @@ public class Highlighter{
      * @param model the model wherein these cells are found
      * @param enable whether to flag these edges as visible or not
      */
-    public static void updateCellEdges(String cellID, String selectedCellID, TreeGraphModel model, boolean enable){
+    public static void updateCellEdges(AnyObjectId cellID, AnyObjectId selectedCellID, TreeGraphModel model, boolean enable){
         Cell cell = model.cellMap.get(cellID);
         if(cell == null) return;
         Cell selectedCell = model.cellMap.get(selectedCellID);
@@ -121,7 +105,7 @@ public class Highlighter{
      * @param model the model wherein these cells are found
      * @param enable whether to highlight this cell or return it to the standard color
      */
-    public static void highlightCell(String cellID, String selectedCellID, TreeGraphModel model, boolean enable){
+    public static void highlightCell(AnyObjectId cellID, AnyObjectId selectedCellID, TreeGraphModel model, boolean enable){
         Cell cell = model.cellMap.get(cellID);
         if(cell == null) return;
 
@@ -174,6 +158,10 @@ public class Highlighter{
                 cell.setCellState(cellStates.get(cell));
                 return;
             }
+            if(searchResultCells.contains(cell)){
+                cell.setCellState(CellState.HIGHLIGHTED2);
+                return;
+            }
         }
         cell.setCellState(state);
     }
@@ -184,7 +172,7 @@ public class Highlighter{
      */
     public static void resetAll(){
         for(Cell cell : cellStates.keySet()){
-            cell.setCellState(CellState.STANDARD);
+            cell.setCellState(searchResultCells.contains(cell) ? CellState.HIGHLIGHTED2 : CellState.STANDARD);
         }
         cellStates.clear();
     }
@@ -207,9 +195,7 @@ public class Highlighter{
      * @param c the cell to emphasize
      */
     public static void emphasizeCell(Cell c){
-        if(!blockedCellIDs.contains(c.getCellId())){
-            blockedCellIDs.add(c.getCellId());
-        }
+        blockedCellIDs.add(c.getCellId());
 
         Platform.runLater(() -> {
             CommitTreeScrollPane.scrollTo(c.rowLocationProperty.doubleValue());
@@ -2,12 +2,12 @@ package elegit.treefx;
 
 import javafx.application.Platform;
 import javafx.geometry.Insets;
-import javafx.scene.Node;
+import javafx.scene.Group;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.layout.Pane;
 import javafx.scene.transform.Rotate;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -18,6 +18,10 @@ import java.util.List;
  */
 public class TreeGraph{
 
+    // Whether to draw cells and edges on a canvas rather than as a node each, which keeps
+    // very large graphs responsive. Graphs switch over the next time they are refreshed
+    public static boolean drawOnCanvas = false;
+
     // The scroll pane that holds all drawn elements
     private CommitTreeScrollPane scrollPane;
 
@@ -27,8 +31,9 @@ public class TreeGraph{
     // The layer within which the cells will be added
     private Pane cellLayer;
 
-    private volatile List<Node> queuedToAdd;
-    private volatile List<Node> queuedToRemove;
+    // Keeps the cells near the visible rows in the cell layer
+    private GraphViewport viewport;
+
 
     /**
      * Constructs a new graph using the given model
@@ -43,15 +48,17 @@ public class TreeGraph{
         cellLayer.setPadding(new Insets(0,0,Cell.BOX_SIZE+TreeLayout.V_PAD,0));
         cellLayer.boundsInLocalProperty().addListener((observable, oldValue, newValue) -> cellLayer.setMinWidth(newValue.getMaxX()));
 
-        scrollPane = new CommitTreeScrollPane(cellLayer);
+        // Zooming scales the layer, and the group around it gives the scroll pane the scaled size
+        scrollPane = new CommitTreeScrollPane(new Group(cellLayer));
+        cellLayer.scaleXProperty().bind(scrollPane.zoomProperty());
+        cellLayer.scaleYProperty().bind(scrollPane.zoomProperty());
 
         scrollPane.setHbarPolicy(ScrollPane.ScrollBarPolicy.AS_NEEDED);
         scrollPane.setVbarPolicy(ScrollPane.ScrollBarPolicy.AS_NEEDED);
 
         scrollPane.NumItemsProperty.bind(m.numCellsProperty);
 
-        queuedToAdd = new LinkedList<>();
-        queuedToRemove = new LinkedList<>();
+        viewport = new GraphViewport(scrollPane, cellLayer);
     }
 
     /**
@@ -64,40 +71,35 @@ public class TreeGraph{
     /**
      * Must be called after modifying the underlying model to add and
      * remove the appropriate cells and edges and keep the view up to
-     * date
+     * date. Added cells are shown once a layout has placed them, and
+     * only while they are near the visible rows
      */
     public synchronized void update() {
-        queuedToRemove.addAll(treeGraphModel.getRemovedCells());
-        queuedToRemove.addAll(treeGraphModel.getRemovedEdges());
-
-        queuedToAdd.addAll(treeGraphModel.getAddedCells());
-        queuedToAdd.addAll(treeGraphModel.getAddedEdges());
+        List<Cell> removedCells = new ArrayList<>(treeGraphModel.getRemovedCells());
+        List<Edge> removedEdges = new ArrayList<>(treeGraphModel.getRemovedEdges());
 
         // merge added & removed cells with all cells
         treeGraphModel.merge();
 
-        Platform.runLater(() -> {
-            // add components to treeGraph pane
-            LinkedList<Node> moreToAdd = new LinkedList<>();
-            LinkedList<Node> moreToRemove = new LinkedList<>();
-            for (Node n: queuedToAdd) {
-                if (n instanceof Cell)
-                    moreToAdd.add(((Cell)n).getLabel());
-            }
-            cellLayer.getChildren().addAll(queuedToAdd);
-            cellLayer.getChildren().addAll(moreToAdd);
-
-            // remove components from treeGraph pane
-            for (Node n:queuedToRemove) {
-                if (n instanceof Cell)
-                    moreToRemove.add(((Cell)n).getLabel());
-            }
-            cellLayer.getChildren().removeAll(moreToRemove);
-            cellLayer.getChildren().removeAll(queuedToRemove);
-
-            queuedToAdd = new LinkedList<>();
-            queuedToRemove = new LinkedList<>();
-        });
+        // Also picks up edges that were added between cells already in view
+        Platform.runLater(() -> viewport.remove(removedCells, removedEdges));
+    }
+
+    /**
+     * Shows the rows of a new layout. Must be called on the FX thread
+     * @param cellsByRow the cells by row, from the oldest one up
+     * @param columns the column of the cell in each row
+     * @param rowShift how many rows the cells that were already laid out moved up by
+     */
+    void setRows(Cell[] cellsByRow, int[] columns, int rowShift) {
+        viewport.setRows(cellsByRow, columns, rowShift);
+    }
+
+    /**
+     * @param handler what to do when the graph is scrolled close to its oldest commits
+     */
+    public void setOnScrolledToOldest(Runnable handler) {
+        this.scrollPane.setOnScrolledToOldest(handler);
     }
 
     Pane getCellLayerPane() {
@@ -3,12 +3,16 @@ package elegit.treefx;
 import elegit.RefHelper;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
-import javafx.scene.control.ContextMenu;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
 
 /**
  * Thanks to RolandC for providing the base graph code structure:
@@ -27,8 +31,9 @@ public class TreeGraphModel{
     List<Edge> addedEdges;
     List<Edge> removedEdges;
 
-    // Map of each cell's id to the cell itself
-    public Map<String,Cell> cellMap;
+    // Map of each cell's id to the cell itself. Any AnyObjectId, e.g. a CommitHelper, can be
+    // used to look a cell up, so finding the cell of a commit doesn't need a new key
+    public Map<ObjectId,Cell> cellMap;
 
     // Updated every time merge is called to hold the number of cells present
     IntegerProperty numCellsProperty;
@@ -69,7 +74,7 @@ public class TreeGraphModel{
     /**
      * @return a list of all ids in this graph
      */
-    public List<String> getCellIDs(){
+    public List<ObjectId> getCellIDs(){
         return new ArrayList<>(cellMap.keySet());
     }
 
@@ -77,7 +82,7 @@ public class TreeGraphModel{
      * @param id the id to check
      * @return whether this graph contains the given id or not
      */
-    public boolean containsID(String id){
+    public boolean containsID(AnyObjectId id){
         return cellMap.containsKey(id);
     }
 
@@ -105,7 +110,7 @@ public class TreeGraphModel{
      * @return the edges removed since the last update
      */
     public List<Edge> getRemovedEdges() {
-        List<String> removedMap = new ArrayList<>();
+        Set<ObjectId> removedMap = new HashSet<>();
         for (Cell c : removedCells)
             removedMap.add(c.getCellId());
         List<Edge> oldRemoved = new ArrayList<>();
@@ -132,17 +137,16 @@ public class TreeGraphModel{
      * parents are the cells with the given IDs.
      * @param newId the id of the new cell
      * @param time the time of the new cell
-     * @param displayLabel the displayLabel of the new cell
-     * @param contextMenu the context contextMenu that will appear when right clicking on a cell
+     * @param displayLabel supplies the displayLabel of the new cell when it is first shown
      * @param parentIds the IDs of the parents of the new cell, if any
      * @param type the type of the cell, local, remote, or both
      */
-    public void addCell(String newId, long time, String displayLabel,
-                        List<RefHelper> refs, ContextMenu contextMenu,
-                        List<String> parentIds, Cell.CellType type){
+    public void addCell(AnyObjectId newId, long time, Supplier<String> displayLabel,
+                        List<RefHelper> refs,
+                        List<? extends AnyObjectId> parentIds, Cell.CellType type){
         // Create a list of parents
         List<Cell> parents = new ArrayList<>();
-        for (String parentId : parentIds) {
+        for (AnyObjectId parentId : parentIds) {
             parents.add(cellMap.get(parentId));
         }
 
@@ -160,15 +164,27 @@ public class TreeGraphModel{
                 break;
         }
         setCellLabels(cell, displayLabel, refs);
-        cell.setContextMenu(contextMenu);
         addCell(cell);
 
         // Note: a merge can be the result of any number of commits if it
         // is an octopus merge, so we add edges to all of them
-        for (String parentId : parentIds)
+        for (AnyObjectId parentId : parentIds)
             this.addEdge(parentId, newId);
     }
 
+    /**
+     * Makes one cell a parent of another and adds the edge between them. Used when the
+     * parent is added to the tree after its child, e.g. when older commits are loaded
+     * @param childId the id of the child cell
+     * @param parentId the id of the new parent cell
+     */
+    public void addCellParent(AnyObjectId childId, AnyObjectId parentId) {
+        Cell child = cellMap.get(childId);
+        Cell parent = cellMap.get(parentId);
+        child.addCellParent(parent);
+        addEdge(parent, child);
+    }
+
     /**
      * Adds a cell to both the addedCells list and the cell map, and removes
      * any cell with a conflicting ID
@@ -194,7 +210,7 @@ public class TreeGraphModel{
      * @param sourceId the parent cell
      * @param targetId the child cell
      */
-    public void addEdge(String sourceId, String targetId) {
+    public void addEdge(AnyObjectId sourceId, AnyObjectId targetId) {
         Cell sourceCell = cellMap.get(sourceId);
         Cell targetCell = cellMap.get(targetId);
 
@@ -207,6 +223,10 @@ public class TreeGraphModel{
      * @param target
      */
     public void addEdge(Cell source, Cell target) {
+        // Two cells are joined by one edge at most, which each of them holds once
+        for (Edge e : target.edges) {
+            if (e.getSource() == source) return;
+        }
         Edge edge = new Edge(source, target);
         source.edges.add(edge);
         target.edges.add(edge);
@@ -220,7 +240,7 @@ public class TreeGraphModel{
      *
      * @param id the cell id to remove
      */
-    public void removeCell(String id) {
+    public void removeCell(AnyObjectId id) {
         Cell cell = cellMap.get(id);
         if(cell != null && cellMap.containsKey(cell.getCellId())){
             Cell oldCell = cellMap.remove(cell.getCellId());
@@ -251,38 +271,42 @@ public class TreeGraphModel{
     /**
      * Sets the label for the cell with the given ID to be the given string
      * @param cellId the id of the cell to label
-     * @param label the new label
+     * @param label supplies the new label when it is next shown
      * @param refs the branch names to include on the label
      */
-    public void setCellLabels(String cellId, String label, List<RefHelper> refs){
-        setCellLabels(cellMap.get(cellId), label, refs);
+    public void setCellLabels(AnyObjectId cellId, Supplier<String> label, List<RefHelper> refs){
+        Cell cell = cellMap.get(cellId);
+        if (cell == null)
+            return;
+        setCellLabels(cell, label, refs);
     }
 
     /**
      * Sets the labels for a given cell
      * @param cell the cell to set labels for
-     * @param label the labels to put on the cell
+     * @param label supplies the label to put on the cell
      * @param refs the list of refs to add
      */
-    private void setCellLabels(Cell cell, String label, List<RefHelper> refs){
+    private void setCellLabels(Cell cell, Supplier<String> label, List<RefHelper> refs){
         cell.setLabels(label, refs);
         if(refs.size() > 0) cellsWithNonDefaultShapesOrLabels.add(cell);
     }
 
-    public void setCurrentCellLabels(String cellId, List<String> refs) {
-        setCurrentCellLabels(cellMap.get(cellId), refs);
+    public void setCurrentCellLabels(AnyObjectId cellId, List<String> refs) {
+        Cell cell = cellMap.get(cellId);
+        if (cell == null)
+            return;
+        setCurrentCellLabels(cell, refs);
     }
 
     public void setCurrentCellLabels(Cell cell, List<String> refs) {
         cell.setCurrentLabels(refs);
     }
 
-    public void setLabelMenus(String cellId, Map<RefHelper, ContextMenu> menuMap) {
-        cellMap.get(cellId).setLabelMenus(menuMap);
-    }
-
-    public void setRemoteBranchCells(String cellId, List<String> remoteBranches) {
-        cellMap.get(cellId).setRemoteLabels(remoteBranches);
+    public void setRemoteBranchCells(AnyObjectId cellId, List<String> remoteBranches) {
+        Cell cell = cellMap.get(cellId);
+        if (cell != null)
+            cell.setRemoteLabels(remoteBranches);
     }
 
     /**
@@ -292,8 +316,10 @@ public class TreeGraphModel{
      * @param cellId the id of the cell to label
      * @param shape the new shape
      */
-    public void setCellShape(String cellId, CellShape shape){
+    public void setCellShape(AnyObjectId cellId, CellShape shape){
         Cell cell = cellMap.get(cellId);
+        if (cell == null)
+            return;
         cell.setShape(shape);
         cellsWithNonDefaultShapesOrLabels.add(cell);
     }
@@ -305,7 +331,7 @@ public class TreeGraphModel{
      * @param cellId the id of the cell to type
      * @param type the new type
      */
-    public void setCellType(String cellId, Cell.CellType type) {
+    public void setCellType(AnyObjectId cellId, Cell.CellType type) {
         Cell cell = cellMap.get(cellId);
         if (cell == null)
             return;
@@ -318,11 +344,11 @@ public class TreeGraphModel{
      * Changes every cell back to the default shape
      * @return a list of CellIDs corresponding to the cells that were changed
      */
-    public List<String> resetCellShapes(){
-        List<String> resetIDs = new ArrayList<>();
+    public List<ObjectId> resetCellShapes(){
+        List<ObjectId> resetIDs = new ArrayList<>();
         for(Cell cell : cellsWithNonDefaultShapesOrLabels){
             cell.setShape(Cell.DEFAULT_SHAPE);
-            String id = cell.getCellId();
+            ObjectId id = cell.getCellId();
             if(!resetIDs.contains(id) && allCells.contains(cell)) resetIDs.add(id);
         }
         cellsWithNonDefaultShapesOrLabels = new ArrayList<>();
@@ -336,7 +362,7 @@ public class TreeGraphModel{
      * @param neighborID the id of the second cell
      * @return true if direct neighbors, else false
      */
-    public boolean isNeighbor(String cellID, String neighborID){
+    public boolean isNeighbor(AnyObjectId cellID, AnyObjectId neighborID){
         List<Cell> relatives = getRelatives(cellID);
         for(Cell c : relatives){
             if(c.getCellId().equals(neighborID)){
@@ -351,7 +377,7 @@ public class TreeGraphModel{
      * @param cellID the ID of the cell
      * @return all direct neighbors of the cell
      */
-    public List<Cell> getRelatives(String cellID){
+    public List<Cell> getRelatives(AnyObjectId cellID){
         Cell cell = cellMap.get(cellID);
         if(cell == null) return new ArrayList<>();
         List<Cell> relatives = cell.getCellParents();
@@ -364,16 +390,16 @@ public class TreeGraphModel{
      * completely updated
      */
     public void merge() {
-        // cells
+        // cells, removed through a set so a small update doesn't scan the others once per removal
         allCells.addAll(addedCells);
-        allCells.removeAll(removedCells);
+        allCells.removeAll(new HashSet<>(removedCells));
 
         addedCells.clear();
         removedCells.clear();
 
         // edges
         allEdges.addAll(addedEdges);
-        allEdges.removeAll(removedEdges);
+        allEdges.removeAll(new HashSet<>(removedEdges));
 
         addedEdges.clear();
         removedEdges.clear();
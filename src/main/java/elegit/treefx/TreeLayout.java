@@ -1,11 +1,10 @@
 package elegit.treefx;
 
 import elegit.Main;
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
-import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.SimpleDoubleProperty;
-import javafx.beans.property.SimpleIntegerProperty;
-import javafx.concurrent.Service;
 import javafx.concurrent.Task;
 import javafx.geometry.Pos;
 import javafx.scene.control.ProgressBar;
@@ -31,59 +30,83 @@ public class TreeLayout{
     public static boolean commitSortTopological = true;
 
 
+    // How long the cells of a layout may be moved for in each frame, in nanoseconds
+    public static long frameBudgetNanos = 4_000_000;
+
+
     /**
-     * Mover service to go through moving the cells. Services are scheduled really well, so we
-     * like using them for big repetitive things like this.
+     * Applies a computed layout to the scene from an AnimationTimer, as many cells each frame
+     * as fit in the frame budget, so neither a runnable per cell piles up on the FX thread nor
+     * does a big layout hold it for longer than a frame at a time. The cells' location
+     * properties are only set here, so the edges bound to them only update on the FX thread
      */
-    public static class MoveCellService extends Service {
-        private int currentCell, max;
-        private List<Cell> allCellsSortedByTime;
-        private IntegerProperty percent;
-
-        public MoveCellService (List<Cell> allCellsSortedByTime) {
-            this.allCellsSortedByTime = allCellsSortedByTime;
-            this.max = allCellsSortedByTime.size()-1;
-            this.percent = new SimpleIntegerProperty(0);
-            this.currentCell = 0;
+    private static class CellMover extends AnimationTimer {
+        // The mover that is running, if any. Only touched on the FX thread
+        private static CellMover current;
+
+        private final Cell[] cells;
+        private final int[] columns, rows;
+        private final boolean animate;
+        private final Runnable onFinished;
+        private final DoubleProperty progress;
+        private int next;
+        private boolean finished;
+
+        /**
+         * @param cells the cells to move, in the order to move them in
+         * @param columns the column to move each cell to
+         * @param rows the row to move each cell to
+         * @param animate whether cells that move should be animated
+         * @param onFinished what to do on the FX thread once the cells are moved or moving
+         *                   them is stopped
+         */
+        CellMover(Cell[] cells, int[] columns, int[] rows, boolean animate, Runnable onFinished) {
+            this.cells = cells;
+            this.columns = columns;
+            this.rows = rows;
+            this.animate = animate;
+            this.onFinished = onFinished;
+            this.progress = new SimpleDoubleProperty(0);
+        }
+
+        /**
+         * Starts moving the cells, finishing the mover that was running first. Must be
+         * called on the FX thread
+         */
+        void begin() {
+            if (current != null) current.finish();
+            current = this;
             movingCells = true;
+            start();
         }
 
-        public void setCurrentCell(int currentCell) { this.currentCell = currentCell; }
-
-        protected synchronized Task createTask() {
-            return new Task() {
-                @Override
-                protected Object call() throws Exception {
-                    // Try/catch is just in for debugging purposes, left because any
-                    // errors here are very hard to find without it
-                    try {
-                        for (int i = currentCell; i < currentCell + 10; i++) {
-                            if (i > allCellsSortedByTime.size() - 1) {
-                                percent.set(100);
-                                return null;
-                            }
-                            moveCell(allCellsSortedByTime.get(i));
-
-                            // Update progress if need be
-                            if (i * 100.0 / max > percent.get() && percent.get() < 100) {
-                                percent.set(i * 100 / max);
-                            }
-                        }
-                        this.succeeded();
-                    }catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                    return null;
-                }
-            };
+        @Override
+        public void handle(long now) {
+            // Always move at least one cell, so a frame that is already over budget still
+            // makes progress
+            long deadline = System.nanoTime() + frameBudgetNanos;
+            while (movingCells && !Main.isAppClosed && next < cells.length) {
+                moveCell(cells[next], columns[next], rows[next], animate);
+                next++;
+                if (System.nanoTime() >= deadline) break;
+            }
+            progress.set(next / (double) cells.length);
+            if (!movingCells || Main.isAppClosed || next == cells.length) finish();
+        }
+
+        private void finish() {
+            if (finished) return;
+            finished = true;
+            stop();
+            if (current == this) current = null;
+            onFinished.run();
         }
     }
 
 
     /**
      * Returns a task that will take care of laying out the given
-     * graph into a tree. Uses a combination of recursion and
-     * iteration to pack cells as far up as possible with each
+     * graph into a tree. Packs cells as far up as possible with each
      * cell being arranged horizontally based on time
      * @param g the graph to layout
      * @return a task that, when executed, does the layout of g
@@ -92,38 +115,74 @@ public class TreeLayout{
 
         return new Task<Void>(){
 
-            private List<Cell> allCells;
-            private List<Integer> minRowUsedInCol;
-            private List<Integer> movedCells;
-            private boolean isInitialSetupFinished;
-
             /**
-             * Extracts the TreeGraphModel, sorts its cells by time, then relocates
-             * every cell. When complete, updates the model if necessary to show
-             * it has been through the layout process at least once already
+             * Extracts the TreeGraphModel, sorts its cells by time and works out where
+             * every cell goes without touching the scene, then hands the cells that moved to
+             * the FX thread to be relocated a frame at a time. When complete, updates the
+             * model if necessary to show it has been through the layout process at least
+             * once already
              */
             @Override
             protected Void call() throws Exception{
                 try {
                     TreeGraphModel treeGraphModel = g.treeGraphModel;
-                    isInitialSetupFinished = treeGraphModel.isInitialSetupFinished;
+                    boolean isInitialSetupFinished = treeGraphModel.isInitialSetupFinished;
 
-                    allCells = treeGraphModel.allCells;
+                    // Sort a copy, so layouts running at the same time don't trip over each other
+                    List<Cell> allCells = new ArrayList<>(treeGraphModel.allCells);
                     if (commitSortTopological)
                         topologicalSortListOfCells(allCells);
                     else
                         sortListOfCells(allCells);
 
-                    // Initialize variables
-                    minRowUsedInCol = new ArrayList<>();
-                    movedCells = new ArrayList<>();
+                    // Compute the positions of cells, then pick out the ones that changed. Rows count
+                    // up from the oldest commit, so new commits at the top leave the rows below them be
+                    int[] columns = computeColumns(getParentRows(allCells));
+                    int size = columns.length;
+
+                    // A page of older commits moves every row above it up by the size of the page. The
+                    // cells that were placed are shifted by that much in one step, without animation,
+                    // so only the ones that moved relative to the others are moved one by one
+                    int rowShift = 0;
+                    for (int row = 0; row < size; row++) {
+                        Cell c = allCells.get(size - 1 - row);
+                        if (c.placedRow >= 0) {
+                            rowShift = row - c.placedRow;
+                            break;
+                        }
+                    }
 
-                    // Compute the positions of cells recursively
-                    for (int i = allCells.size() - 1; i >= 0; i--) {
-                        computeCellPosition(i);
+                    Cell[] cellsByRow = new Cell[size];
+                    Cell[] cellsToShift = new Cell[size];
+                    Cell[] cellsToMove = new Cell[size];
+                    int[] moveColumns = new int[size];
+                    int[] moveRows = new int[size];
+                    int numToShift = 0;
+                    int numToMove = 0;
+                    for (int row = 0; row < size; row++) {
+                        Cell c = allCells.get(size - 1 - row);
+                        cellsByRow[row] = c;
+                        if (c.placedRow >= 0 && rowShift != 0) {
+                            cellsToShift[numToShift++] = c;
+                        }
+                        if (c.placedRow < 0 || c.placedColumn != columns[row] || c.placedRow + rowShift != row) {
+                            cellsToMove[numToMove] = c;
+                            moveColumns[numToMove] = columns[row];
+                            moveRows[numToMove] = row;
+                            numToMove++;
+                        }
+                    }
+                    if (isCancelled()) return null;
+                    Cell[] shifted = Arrays.copyOf(cellsToShift, numToShift);
+                    int shift = rowShift;
+                    Platform.runLater(() -> {
+                        shiftCells(shifted, shift);
+                        g.setRows(cellsByRow, columns, shift);
+                    });
+                    if (numToMove == 0) {
+                        treeGraphModel.isInitialSetupFinished = true;
+                        return null;
                     }
-                    // Once all cell's positions have been set, move them in a service
-                    MoveCellService mover = new MoveCellService(allCells);
 
                     //********************* Loading Bar Start *********************
                     Pane cellLayer = g.getCellLayerPane();
@@ -161,84 +220,123 @@ public class TreeLayout{
                     }));
                     //********************** Loading Bar End **********************
 
-                    mover.setOnSucceeded(event1 -> {
-                        if (!Main.isAppClosed && movingCells && mover.currentCell < allCells.size() - 1) {
-                            mover.setCurrentCell(mover.currentCell + 10);
-                            progressBar.setProgress(mover.percent.get() / 100.0);
-                            mover.restart();
-                        } else {
-                            treeGraphModel.isInitialSetupFinished = true;
-                            loadingCommits.setVisible(false);
-                            progressBar.setVisible(false);
-                        }
+                    // Once all cells' positions have been computed, apply them a frame's worth at a time
+                    CellMover mover = new CellMover(Arrays.copyOf(cellsToMove, numToMove),
+                                                    Arrays.copyOf(moveColumns, numToMove),
+                                                    Arrays.copyOf(moveRows, numToMove),
+                                                    isInitialSetupFinished, () -> {
+                        treeGraphModel.isInitialSetupFinished = true;
+                        loadingCommits.setVisible(false);
+                        progressBar.setVisible(false);
                     });
-
-                    mover.reset();
-                    mover.start();
+                    progressBar.progressProperty().bind(mover.progress);
+                    Platform.runLater(mover::begin);
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
                 return null;
             }
+        };
+    }
 
-            /**
-             * Helper method that computes the cell position for a given cell and its parents (oldest to newest), recursively
-             * @param cellPosition position of cell to compute position for
-             */
-            private void computeCellPosition(int cellPosition) {
-                // Don't try to compute a new position if the cell has already been moved
-                if (movedCells.contains(cellPosition))
-                    return;
-
-                // Get cell at the inputted position
-                Cell c = allCells.get(allCells.size()-1-cellPosition);
+    /**
+     * Finds the row of the parent each cell is placed after. Rows count up from the oldest
+     * cell, i.e. the last one in the sorted list. A cell is followed by its oldest parent, as long
+     * as that parent is in the list and isn't newer than the cell. Sorts the parents of each
+     * cell oldest first along the way, which also makes the oldest one the cell moves in from.
+     *
+     * @param sortedCells the cells, sorted newest first
+     * @return the row of the parent to place after the cell in each row, or -1 if there isn't one
+     */
+    static int[] getParentRows(List<Cell> sortedCells) {
+        int size = sortedCells.size();
+        Map<Cell, Integer> rows = new IdentityHashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            rows.put(sortedCells.get(i), size - 1 - i);
+        }
 
-                setCellPosition(c, getColumnOfCellInRow(minRowUsedInCol, cellPosition), cellPosition);
+        int[] parentRows = new int[size];
+        for (int row = 0; row < size; row++) {
+            Cell c = sortedCells.get(size - 1 - row);
+            List<Cell> parents = c.getCellParents();
+            parents.sort((c1, c2) -> Long.compare(c1.getTime(), c2.getTime()));
 
-                // Update the reserved columns in rows with the cells parents, oldest to newest
-                List<Cell> list = c.getCellParents();
-                list.sort((c1, c2) -> Long.compare(c1.getTime(), c2.getTime()));
+            Integer parentRow = parents.isEmpty() || parents.get(0).getTime() > c.getTime() ? null : rows.get(parents.get(0));
+            parentRows[row] = parentRow == null ? -1 : parentRow;
+        }
+        return parentRows;
+    }
 
-                // For each parent, oldest to newest, place it in the highest row possible recursively
-                for(Cell parent : list){
-                    if (parent.getTime()>c.getTime() || allCells.indexOf(parent)<0) break;
-                    computeCellPosition(allCells.size()-1- allCells.indexOf(parent));
-                    break;
-                }
+    /**
+     * Works out the column of every row. Going from the newest row down, each cell that hasn't
+     * been placed yet is put in the leftmost column with nothing placed below its row, then its
+     * parent is placed the same way, then that one's parent, and so on, so that the chain of
+     * oldest parents below a cell packs up into as few columns as possible.
+     *
+     * Columns are kept in a segment tree of the lowest row used in each, so finding the leftmost
+     * free column takes logarithmic time and laying out n rows takes O(n log n).
+     *
+     * @param parentRows the row of the parent to place after the cell in each row, or -1
+     * @return the column of the cell in each row
+     */
+    public static int[] computeColumns(int[] parentRows) {
+        int size = parentRows.length;
+        int[] columns = new int[size];
+        boolean[] placed = new boolean[size];
+        ColumnOccupancy occupancy = new ColumnOccupancy(size);
+
+        for (int i = size - 1; i >= 0; i--) {
+            // Follow the chain of parents iteratively so long histories can't overflow the stack
+            for (int row = i; row >= 0 && !placed[row]; row = parentRows[row]) {
+                int column = occupancy.getLeftmostFreeColumn(row);
+                occupancy.use(column, row);
+                columns[row] = column;
+                placed[row] = true;
             }
+        }
+        return columns;
+    }
 
-            /**
-             * Helper method to set the position of a cell and update various
-             * parameters for the cell
-             *
-             * @param c the cell to set the position of
-             * @param x the new column of the cell
-             * @param y the new row of the cell
-             */
-            private void setCellPosition(Cell c, int x, int y) {
-                // See whether or not this cell will move
-                int oldColumnLocation = c.columnLocationProperty.get();
-                int oldRowLocation = c.rowLocationProperty.get();
-
-                c.columnLocationProperty.set(x);
-                c.rowLocationProperty.set(y);
-
-                boolean hasCellMoved = oldColumnLocation >= 0 && oldRowLocation >= 0;
-                boolean willCellMove = oldColumnLocation != x || oldRowLocation != y;
-
-                // Update where the cell has been placed
-                if (x >= minRowUsedInCol.size())
-                    minRowUsedInCol.add(y);
-                else
-                    minRowUsedInCol.set(x, y);
+    /**
+     * The lowest row used in each column so far, as a max segment tree over the columns.
+     * Columns that haven't been used yet count as free all the way down
+     */
+    private static class ColumnOccupancy {
+        private final int leaves;
+        private final int[] lowestRows;
+
+        ColumnOccupancy(int columns) {
+            int leaves = 1;
+            while (leaves < columns) leaves <<= 1;
+            this.leaves = leaves;
+            this.lowestRows = new int[2 * leaves];
+            Arrays.fill(this.lowestRows, Integer.MAX_VALUE);
+        }
 
-                // Set the animation and use parent properties of the cell
-                c.setAnimate(isInitialSetupFinished && willCellMove);
-                c.setUseParentAsSource(!hasCellMoved);
+        /**
+         * @param row the row to place a cell in
+         * @return the leftmost column with nothing placed below the given row
+         */
+        int getLeftmostFreeColumn(int row) {
+            int node = 1;
+            while (node < this.leaves) {
+                node = this.lowestRows[2 * node] >= row ? 2 * node : 2 * node + 1;
+            }
+            return node - this.leaves;
+        }
 
-                this.movedCells.add(y);
+        /**
+         * Marks the given column as used down to the given row
+         * @param column the column a cell was placed in
+         * @param row the row the cell was placed in, below any row used in the column before
+         */
+        void use(int column, int row) {
+            int node = column + this.leaves;
+            this.lowestRows[node] = row;
+            for (node >>= 1; node > 0; node >>= 1) {
+                this.lowestRows[node] = Math.max(this.lowestRows[2 * node], this.lowestRows[2 * node + 1]);
             }
-        };
+        }
     }
 
     /**
@@ -248,9 +346,10 @@ public class TreeLayout{
         cellsToSort.sort((c1, c2) -> {
             int i = Long.compare(c2.getTime(), c1.getTime());
             if(i == 0){
-                if(c2.getCellChildren().contains(c1)){
+                // Parent lists are much shorter than child lists can be
+                if(c1.getCellParents().contains(c2)){
                     return -1;
-                }else if(c1.getCellChildren().contains(c2)){
+                }else if(c2.getCellParents().contains(c1)){
                     return 1;
                 }
             }
@@ -268,7 +367,7 @@ public class TreeLayout{
      */
     public static void topologicalSortListOfCells(List<Cell> cellsToSort) {
 
-        Map<String,Integer> visitCount = new HashMap<>();
+        Map<Cell,Integer> visitCount = new IdentityHashMap<>();
 
         // Queue to maintain which nodes are available next for exploring. Done as a priority queue so that the one
         // with the most recent is done first.
@@ -293,10 +392,9 @@ public class TreeLayout{
             Cell current = pq.poll();
             cellsToSort.add(current);
             for (Cell parent : current.getCellParents()) {
-                String parentId = parent.getCellId();
-                visitCount.put(parentId, 1 + visitCount.getOrDefault(parentId, 0));
-                int maxPossibleVisits = parent.getCellChildren().size();
-                if (visitCount.get(parentId) == maxPossibleVisits) {
+                int visits = 1 + visitCount.getOrDefault(parent, 0);
+                visitCount.put(parent, visits);
+                if (visits == parent.getCellChildren().size()) {
                     pq.add(parent);
                 }
             }
@@ -307,45 +405,61 @@ public class TreeLayout{
 
 
     /**
-     * Calculates the column closest to the left of the screen to place the
-     * given cell based on the cell's row and the heights of each column so far
-     * @param minRowUsedInCol the map of max rows used in each column
-     * @param cellRow the row the cell to examine is in
-     * @return the lowest indexed row in which to place c
+     * Helper method that puts the given cell in the given row and column, and updates its
+     * position to the matching coordinates. Must be called on the FX thread
+     * @param c the cell to move
+     * @param column the new column of the cell
+     * @param row the new row of the cell
+     * @param animateIfMoved whether to animate the cell if it was already somewhere else
      */
-    private static int getColumnOfCellInRow(List<Integer> minRowUsedInCol, int cellRow){
-        int col = 0;
-        while(minRowUsedInCol.size() > col && (cellRow > minRowUsedInCol.get(col))){
-            col++;
+    public static void moveCell(Cell c, int column, int row, boolean animateIfMoved){
+        // See whether or not this cell will move
+        int oldColumnLocation = c.columnLocationProperty.get();
+        int oldRowLocation = c.rowLocationProperty.get();
+
+        c.columnLocationProperty.set(column);
+        c.rowLocationProperty.set(row);
+
+        boolean hasCellMoved = oldColumnLocation >= 0 && oldRowLocation >= 0;
+        boolean willCellMove = oldColumnLocation != column || oldRowLocation != row;
+
+        // Set the animation and use parent properties of the cell
+        c.setAnimate(animateIfMoved && willCellMove);
+        c.setUseParentAsSource(!hasCellMoved);
+
+        boolean animate = c.getAnimate();
+        boolean useParentPosAsSource = c.getUseParentAsSource();
+        c.placedColumn = c.columnLocationProperty.get();
+        c.placedRow = c.rowLocationProperty.get();
+        if(animate && useParentPosAsSource && c.getCellParents().size()>0){
+            double px = c.getCellParents().get(0).columnLocationProperty.get() * H_SPACING + H_PAD;
+            double py = c.getCellParents().get(0).rowLocationProperty.get() * V_SPACING + V_PAD;
+            c.moveTo(px, py, false, false);
+        }
+
+        double x = c.columnLocationProperty.get() * H_SPACING + H_PAD;
+        double y = c.rowLocationProperty.get() * V_SPACING + V_PAD;
+
+        c.moveTo(x, y, animate, animate && useParentPosAsSource);
+        // The edges in view follow the cell, or are hidden until it gets there
+        for (Edge e : c.edges) {
+            e.reroute();
         }
-        return col;
     }
 
     /**
-     * Helper method that updates the given cell's position to the coordinates corresponding
-     * to its stored row and column locations
-     * @param c the cell to move
+     * Moves the given cells up or down by the same number of rows at once, without animating
+     * them. Stops the cells of an earlier layout from being moved any further first, as they
+     * would be moved to rows that are no longer theirs. Must be called on the FX thread
+     * @param cells the cells to shift
+     * @param rowShift how many rows to move them up by
      */
-    public static void moveCell(Cell c){
-        Platform.runLater(new Task<Void>(){
-            @Override
-            protected Void call(){
-                boolean animate = c.getAnimate();
-                boolean useParentPosAsSource = c.getUseParentAsSource();
-                if(animate && useParentPosAsSource && c.getCellParents().size()>0){
-                    double px = c.getCellParents().get(0).columnLocationProperty.get() * H_SPACING + H_PAD;
-                    double py = c.getCellParents().get(0).rowLocationProperty.get() * V_SPACING + V_PAD;
-                    c.moveTo(px, py, false, false);
-                }
-
-                    double x = c.columnLocationProperty.get() * H_SPACING + H_PAD;
-                    double y = c.rowLocationProperty.get() * V_SPACING + V_PAD;
-
-                c.moveTo(x, y, animate, animate && useParentPosAsSource);
-
-                return null;
-            }
-        });
+    private static void shiftCells(Cell[] cells, int rowShift){
+        if (cells.length == 0) return;
+        if (CellMover.current != null) CellMover.current.finish();
+        for (Cell c : cells) {
+            moveCell(c, c.placedColumn, c.placedRow + rowShift, false);
+        }
     }
 
     public static synchronized void stopMovingCells(){
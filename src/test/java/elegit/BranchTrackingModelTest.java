@@ -0,0 +1,132 @@
+package elegit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.BranchTrackingStatus;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the ahead and behind counts of local branches against JGit's, and that they are
+ * only recounted when a branch moves
+ */
+public class BranchTrackingModelTest {
+    private Path directoryPath;
+    Path logPath;
+
+    @Before
+    public void setUp() throws Exception {
+        initializeLogger();
+        this.directoryPath = Files.createTempDirectory("unitTestRepos");
+        directoryPath.toFile().deleteOnExit();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        removeAllFilesFromDirectory(this.logPath.toFile());
+        removeAllFilesFromDirectory(this.directoryPath.toFile());
+    }
+
+    // Helper method to avoid annoying traces from logger
+    void initializeLogger() {
+        // Create a temp directory for the files to be placed in
+        try {
+            this.logPath = Files.createTempDirectory("elegitLogs");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        this.logPath.toFile().deleteOnExit();
+        System.setProperty("logFolder", logPath.toString());
+    }
+
+    // Helper tear-down method:
+    void removeAllFilesFromDirectory(File dir) {
+        for (File file: dir.listFiles()) {
+            if (file.isDirectory()) removeAllFilesFromDirectory(file);
+            file.delete();
+        }
+    }
+
+    private void setRemoteRef(Git git, String branch, ObjectId commit) throws IOException {
+        RefUpdate update = git.getRepository().updateRef("refs/remotes/origin/" + branch);
+        update.setNewObjectId(commit);
+        update.forceUpdate();
+    }
+
+    private void track(Git git, String branch) throws IOException {
+        StoredConfig config = git.getRepository().getConfig();
+        config.setString("remote", "origin", "url", "https://example.com/repo.git");
+        config.setString("remote", "origin", "fetch", "+refs/heads/*:refs/remotes/origin/*");
+        config.setString("branch", branch, "remote", "origin");
+        config.setString("branch", branch, "merge", "refs/heads/" + branch);
+        config.save();
+    }
+
+    private void assertMatchesJGit(RepoHelper helper, String branch) throws IOException {
+        BranchTrackingStatus expected = BranchTrackingStatus.of(helper.getRepo(), branch);
+        BranchTrackingModel.TrackingStatus actual = helper.getBranchModel().getTrackingStatus(branch);
+        assertEquals(expected.getRemoteTrackingBranch(), actual.getRemoteTrackingBranch());
+        assertEquals(expected.getAheadCount(), actual.getAheadCount());
+        assertEquals(expected.getBehindCount(), actual.getBehindCount());
+    }
+
+    @Test
+    public void testAheadBehind() throws Exception {
+        Path repoPath = directoryPath.resolve("repo");
+        Git git = Git.init().setDirectory(repoPath.toFile()).call();
+        RevCommit first = git.commit().setMessage("first").call();
+        git.commit().setMessage("second").call();
+        git.commit().setMessage("third").call();
+
+        // 'side' has a remote commit that isn't local, master has local ones that aren't pushed
+        git.checkout().setCreateBranch(true).setName("side").setStartPoint(first).call();
+        RevCommit sideRemote = git.commit().setMessage("side remote").call();
+        git.reset().setRef(first.getName()).call();
+        git.commit().setMessage("side local").call();
+        git.checkout().setName("master").call();
+        setRemoteRef(git, "master", first);
+        setRemoteRef(git, "side", sideRemote);
+        track(git, "master");
+        track(git, "side");
+        git.branchCreate().setName("untracked").call();
+
+        ExistingRepoHelper helper = new ExistingRepoHelper(repoPath);
+        assertMatchesJGit(helper, "master");
+        assertMatchesJGit(helper, "side");
+        assertEquals(2, helper.getAheadCount());
+        assertEquals(0, helper.getBehindCount());
+        assertEquals(3, helper.getAheadCountAll());
+        assertNull(helper.getBranchModel().getTrackingStatus("untracked"));
+        assertEquals("origin/master", helper.getBranchModel().getCurrentRemoteBranch());
+
+        // Nothing moved, so the same counts are handed back
+        BranchTrackingModel.TrackingStatus sideStatus = helper.getBranchModel().getTrackingStatus("refs/heads/side");
+        assertEquals(1, sideStatus.getBehindCount());
+        assertSame(sideStatus, helper.getBranchModel().getTrackingStatus("side"));
+
+        // Pushing master only recounts master, even before the commit graph catches up
+        setRemoteRef(git, "master", git.getRepository().resolve("master"));
+        assertEquals(0, helper.getAheadCount());
+        assertSame(sideStatus, helper.getBranchModel().getTrackingStatus("side"));
+
+        git.checkout().setName("side").call();
+        git.commit().setMessage("another side commit").call();
+        helper.updateModel();
+        assertMatchesJGit(helper, "side");
+        assertEquals(2, helper.getBranchModel().getTrackingStatus("side").getAheadCount());
+
+        helper.closeRepo();
+        git.close();
+    }
+}
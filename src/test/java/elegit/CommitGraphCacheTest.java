@@ -0,0 +1,131 @@
+package elegit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that repositories reopened from the commit graph cache end up with the same
+ * commits as when they are parsed from scratch
+ */
+public class CommitGraphCacheTest {
+    private Path directoryPath;
+    Path logPath;
+
+    @Before
+    public void setUp() throws Exception {
+        initializeLogger();
+        this.directoryPath = Files.createTempDirectory("unitTestRepos");
+        directoryPath.toFile().deleteOnExit();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        removeAllFilesFromDirectory(this.logPath.toFile());
+        removeAllFilesFromDirectory(this.directoryPath.toFile());
+    }
+
+    // Helper method to avoid annoying traces from logger
+    void initializeLogger() {
+        // Create a temp directory for the files to be placed in
+        try {
+            this.logPath = Files.createTempDirectory("elegitLogs");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        this.logPath.toFile().deleteOnExit();
+        System.setProperty("logFolder", logPath.toString());
+    }
+
+    // Helper tear-down method:
+    void removeAllFilesFromDirectory(File dir) {
+        for (File file: dir.listFiles()) {
+            if (file.isDirectory()) removeAllFilesFromDirectory(file);
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testReopenFromCache() throws Exception {
+        Path repoPath = directoryPath.resolve("repo");
+        Git git = Git.init().setDirectory(repoPath.toFile()).call();
+        RevCommit first = git.commit().setMessage("first").call();
+        RevCommit second = git.commit().setMessage("second").call();
+
+        ExistingRepoHelper helper = new ExistingRepoHelper(repoPath);
+        helper.closeRepo();
+        File cacheDirectory = repoPath.resolve(".git").resolve("elegit").toFile();
+        assertTrue(new File(cacheDirectory, "commits").isFile());
+        assertTrue(new File(cacheDirectory, "refs").isFile());
+
+        // Nothing changed, so everything comes from the cache and nothing is parsed up front
+        helper = new ExistingRepoHelper(repoPath);
+        assertEquals(2, helper.getLocalCommits().size());
+        CommitHelper firstHelper = helper.getCommit(first.getId());
+        CommitHelper secondHelper = helper.getCommit(second.getId());
+        assertNull(firstHelper.commit);
+        assertEquals(firstHelper, secondHelper.getParents().get(0));
+        assertTrue(firstHelper.getChildren().contains(secondHelper));
+        assertEquals(first.getAuthorIdent().getWhen(), firstHelper.getWhen());
+
+        // Details are parsed the first time they are needed
+        assertEquals("first", firstHelper.getMessage(false));
+        assertEquals(first, firstHelper.getCommit());
+        helper.closeRepo();
+
+        // New commits are walked on top of the cached ones
+        git.branchCreate().setName("side").call();
+        RevCommit third = git.commit().setMessage("third").call();
+        helper = new ExistingRepoHelper(repoPath);
+        assertEquals(3, helper.getLocalCommits().size());
+        assertNull(helper.getCommit(second.getId()).commit);
+        assertEquals(helper.getCommit(second.getId()), helper.getCommit(third.getId()).getParents().get(0));
+        helper.closeRepo();
+
+        // Dropping commits rewrites the cache without them
+        git.reset().setMode(ResetCommand.ResetType.HARD).setRef(first.getName()).call();
+        git.branchDelete().setBranchNames("side").setForce(true).call();
+        helper = new ExistingRepoHelper(repoPath);
+        assertEquals(1, helper.getLocalCommits().size());
+        assertNull(helper.getCommit(third.getId()));
+        helper.closeRepo();
+
+        helper = new ExistingRepoHelper(repoPath);
+        assertEquals(1, helper.getLocalCommits().size());
+        assertNull(helper.getCommit(second.getId()));
+        helper.closeRepo();
+
+        git.close();
+    }
+
+    @Test
+    public void testUnreadableCacheIsIgnored() throws Exception {
+        Path repoPath = directoryPath.resolve("repo");
+        Git git = Git.init().setDirectory(repoPath.toFile()).call();
+        RevCommit first = git.commit().setMessage("first").call();
+        new ExistingRepoHelper(repoPath).closeRepo();
+
+        File refsFile = repoPath.resolve(".git").resolve("elegit").resolve("refs").toFile();
+        Files.write(refsFile.toPath(), new byte[]{1, 2, 3});
+
+        ExistingRepoHelper helper = new ExistingRepoHelper(repoPath);
+        assertEquals(1, helper.getLocalCommits().size());
+        assertEquals("first", helper.getCommit(first.getId()).getMessage(false));
+
+        // The walk from scratch saved a good cache over the bad one
+        assertNotNull(new CommitGraphCache(helper.getRepo()).load());
+        helper.closeRepo();
+
+        git.close();
+    }
+}
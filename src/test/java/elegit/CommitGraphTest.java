@@ -0,0 +1,134 @@
+package elegit;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the links between commits in a CommitGraph as commits are added and dropped
+ */
+public class CommitGraphTest {
+    Path logPath;
+    CommitGraph graph;
+
+    @Before
+    public void setUp() throws Exception {
+        this.logPath = Files.createTempDirectory("elegitLogs");
+        this.logPath.toFile().deleteOnExit();
+        System.setProperty("logFolder", logPath.toString());
+        this.graph = new CommitGraph(new RepoHelper(logPath));
+    }
+
+    private CommitHelper add(int n, int... parents) {
+        return graph.add(ObjectId.fromString(String.format("%040x", n)), n * 1000L, parents);
+    }
+
+    @Test
+    public void testLinks() throws Exception {
+        // 0 <- 1 <- 3
+        //   <- 2 <-/  <- 4
+        CommitHelper root = add(0);
+        CommitHelper left = add(1, 0);
+        CommitHelper right = add(2, 0);
+        CommitHelper merge = add(3, 1, 2);
+        CommitHelper tip = add(4, 3);
+
+        assertEquals(Arrays.asList(left, right), root.getChildren());
+        assertEquals(Arrays.asList(left, right), merge.getParents());
+        assertEquals(2, merge.getParentCount());
+        assertEquals(3000L, merge.getWhen().getTime());
+        assertSame(merge, graph.get(ObjectId.fromString(String.format("%040x", 3))));
+
+        assertTrue(root.isChild(left, 1));
+        assertFalse(root.isChild(merge, 1));
+        assertTrue(root.isChild(merge, 2));
+        assertTrue(root.isChild(tip, 0));
+        assertFalse(left.isChild(right, 0));
+        assertFalse(tip.isChild(root, 0));
+
+        // Children added later show up on older commits
+        CommitHelper side = add(5, 1);
+        assertEquals(Arrays.asList(merge, side), left.getChildren());
+    }
+
+    @Test
+    public void testAncestry() throws Exception {
+        // 0 <- 1 <- 2 <- 3 <- 5
+        //   <------------ 4 <-/
+        CommitHelper root = add(0);
+        CommitHelper first = add(1, 0);
+        CommitHelper second = add(2, 1);
+        CommitHelper third = add(3, 2);
+        CommitHelper side = add(4, 0);
+        CommitHelper merge = add(5, 3, 4);
+
+        assertEquals(1, graph.getGeneration(root.getIndex()));
+        assertEquals(2, graph.getGeneration(side.getIndex()));
+        assertEquals(5, graph.getGeneration(merge.getIndex()));
+
+        // The shortest path counts for the depth, not the longest
+        assertTrue(root.isChild(merge, 2));
+        assertFalse(first.isChild(merge, 2));
+        assertTrue(first.isChild(merge, 3));
+        assertFalse(side.isChild(third, 0));
+        assertFalse(merge.isChild(root, 0));
+
+        assertEquals(Arrays.asList(third, side), merge.getAncestors(false));
+        assertEquals(Arrays.asList(root, first, second, third, side), merge.getAncestors(true));
+        assertEquals(Arrays.asList(first, side), root.getDescendants(false));
+        assertEquals(Arrays.asList(third, merge), second.getDescendants(true));
+        assertTrue(merge.getDescendants(true).isEmpty());
+    }
+
+    @Test
+    public void testRetain() throws Exception {
+        CommitHelper root = add(0);
+        CommitHelper left = add(1, 0);
+        CommitHelper right = add(2, 0);
+        CommitHelper tip = add(3, 2);
+
+        BitSet local = new BitSet();
+        local.set(root.getIndex());
+        local.set(left.getIndex());
+        BitSet remote = new BitSet();
+        remote.set(root.getIndex());
+        remote.set(right.getIndex());
+        remote.set(tip.getIndex());
+        graph.setReachable(local, remote);
+
+        BitSet keep = new BitSet();
+        keep.set(root.getIndex());
+        keep.set(right.getIndex());
+        keep.set(tip.getIndex());
+        List<CommitHelper> dropped = graph.retain(keep);
+
+        assertEquals(Arrays.asList(left), dropped);
+        assertNull(left.getGraph());
+        assertNull(graph.get(left.getObjectId()));
+        assertEquals(3, graph.size());
+
+        // The others keep their order and links under their new indices
+        assertEquals(1, right.getIndex());
+        assertEquals(2, tip.getIndex());
+        assertSame(right, graph.get(1));
+        assertEquals(Arrays.asList(right), root.getChildren());
+        assertEquals(Arrays.asList(right), tip.getParents());
+        assertEquals(3000L, tip.getWhen().getTime());
+        assertEquals(3, graph.getGeneration(tip.getIndex()));
+        assertTrue(root.isChild(tip, 0));
+
+        // So do the reachability flags
+        assertTrue(graph.isLocal(0) && graph.isRemote(0));
+        assertFalse(graph.isLocal(right.getIndex()));
+        assertTrue(graph.isRemote(right.getIndex()) && graph.isRemote(tip.getIndex()));
+        assertEquals(3, graph.getRemote().cardinality());
+    }
+}
@@ -6,6 +6,7 @@ import javafx.scene.Node;
 import javafx.scene.control.Label;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
 import org.junit.After;
 import org.junit.Before;
@@ -159,8 +160,8 @@ public class CommitLabelTest {
      */
     private void testCellLabelContainsMaster(CommitTreeModel commitTreeModel, String cellID, boolean matchLocal, boolean matchRemote) {
         // Get the cell from the tree
-        assertTrue(commitTreeModel.containsID(cellID));
-        Cell cell = commitTreeModel.treeGraph.treeGraphModel.cellMap.get(cellID);
+        assertTrue(commitTreeModel.containsID(ObjectId.fromString(cellID)));
+        Cell cell = commitTreeModel.treeGraph.treeGraphModel.cellMap.get(ObjectId.fromString(cellID));
         assertNotNull(cell);
 
         // Pull the labels from the cell
@@ -0,0 +1,88 @@
+package elegit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that commit details are only read from the repository once they are asked for
+ */
+public class CommitMetadataTest {
+    private Path directoryPath;
+    Path logPath;
+
+    @Before
+    public void setUp() throws Exception {
+        initializeLogger();
+        this.directoryPath = Files.createTempDirectory("unitTestRepos");
+        directoryPath.toFile().deleteOnExit();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        removeAllFilesFromDirectory(this.logPath.toFile());
+        removeAllFilesFromDirectory(this.directoryPath.toFile());
+    }
+
+    // Helper method to avoid annoying traces from logger
+    void initializeLogger() {
+        // Create a temp directory for the files to be placed in
+        try {
+            this.logPath = Files.createTempDirectory("elegitLogs");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        this.logPath.toFile().deleteOnExit();
+        System.setProperty("logFolder", logPath.toString());
+    }
+
+    // Helper tear-down method:
+    void removeAllFilesFromDirectory(File dir) {
+        for (File file: dir.listFiles()) {
+            if (file.isDirectory()) removeAllFilesFromDirectory(file);
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testLazyMetadata() throws Exception {
+        Path repoPath = directoryPath.resolve("repo");
+        Git git = Git.init().setDirectory(repoPath.toFile()).call();
+        PersonIdent author = new PersonIdent("Some Author", "author@example.com");
+        RevCommit first = git.commit().setAuthor(author).setMessage("first\n\nwith a body").call();
+        RevCommit second = git.commit().setAuthor(author).setMessage("second").call();
+
+        ExistingRepoHelper helper = new ExistingRepoHelper(repoPath);
+        CommitHelper firstHelper = helper.getCommit(first.getId());
+        CommitHelper secondHelper = helper.getCommit(second.getId());
+
+        // Walking the history doesn't read any details
+        assertNull(firstHelper.author);
+        assertNull(secondHelper.author);
+        assertEquals(first.getAuthorIdent().getWhen(), firstHelper.getWhen());
+        assertNull(firstHelper.author);
+
+        assertEquals("first\n\nwith a body", firstHelper.getMessage(true));
+        assertEquals("first", firstHelper.getMessage(false));
+        assertEquals("Some Author", firstHelper.getAuthorName());
+        assertEquals("author@example.com", secondHelper.getAuthorEmail());
+
+        // Authors are shared between commits, and the commit bodies aren't kept
+        assertSame(firstHelper.getAuthorName(), secondHelper.getAuthorName());
+        assertNull(firstHelper.commit);
+        assertTrue(helper.getCommitDescriptorString(secondHelper, true).endsWith("Message: second"));
+
+        helper.closeRepo();
+        git.close();
+    }
+}
@@ -0,0 +1,127 @@
+package elegit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that commits are found by id prefix and by the words in their author and message
+ */
+public class CommitSearchIndexTest {
+    private static final String EMPTY_TREE = "4b825dc642cb6eb9a060e54bf8d69288fbee4904";
+
+    private Path directoryPath;
+    Path logPath;
+    CommitGraph graph;
+    CommitSearchIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        this.logPath = Files.createTempDirectory("elegitLogs");
+        this.logPath.toFile().deleteOnExit();
+        System.setProperty("logFolder", logPath.toString());
+        this.directoryPath = Files.createTempDirectory("unitTestRepos");
+        this.directoryPath.toFile().deleteOnExit();
+        this.graph = new CommitGraph(new RepoHelper(logPath));
+        this.index = new CommitSearchIndex();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        removeAllFilesFromDirectory(this.logPath.toFile());
+        removeAllFilesFromDirectory(this.directoryPath.toFile());
+    }
+
+    void removeAllFilesFromDirectory(File dir) {
+        for (File file: dir.listFiles()) {
+            if (file.isDirectory()) removeAllFilesFromDirectory(file);
+            file.delete();
+        }
+    }
+
+    private CommitHelper add(String id, String author, String message) throws IOException {
+        String raw = "tree " + EMPTY_TREE + "\n"
+                + "author " + author + " 1400000000 +0000\n"
+                + "committer " + author + " 1400000000 +0000\n"
+                + "\n" + message + "\n";
+        RevCommit rawCommit = RevCommit.parse(new RevWalk((ObjectReader) null), Constants.encode(raw));
+        CommitHelper commit = graph.add(ObjectId.fromString(id), 1400000000000L, new int[0]);
+        index.add(commit, rawCommit);
+        return commit;
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        CommitHelper first = add("abcd000000000000000000000000000000000001", "Ada Lovelace <ada@example.com>", "Add the engine");
+        CommitHelper second = add("abcd100000000000000000000000000000000002", "Alan Turing <alan@example.com>", "Fix the engine's tape");
+        CommitHelper third = add("1234500000000000000000000000000000000003", "Ada Lovelace <ada@example.com>", "Write notes");
+
+        assertEquals(Arrays.asList(first, second), index.findByIdPrefix("abcd"));
+        assertEquals(Collections.singletonList(second), index.findByIdPrefix("abcd1"));
+        assertTrue(index.findByIdPrefix("abc").isEmpty());
+
+        // Words match by their beginnings, newest first, and every word has to match
+        assertEquals(Arrays.asList(third, first), index.search("ada", 10));
+        assertEquals(Arrays.asList(second, first), index.search("eng", 10));
+        assertEquals(Collections.singletonList(first), index.search("Ada engine", 10));
+        assertEquals(Collections.singletonList(second), index.search("tape abcd1", 10));
+        assertEquals(Collections.singletonList(third), index.search("example.com 12345", 10));
+        assertEquals(Collections.singletonList(third), index.search("ada", 1));
+        assertTrue(index.search("ada tape", 10).isEmpty());
+        assertTrue(index.search("  ", 10).isEmpty());
+
+        // Commits added later are found by id as well
+        CommitHelper fourth = add("abcd200000000000000000000000000000000004", "Grace Hopper <grace@example.com>", "Add a compiler");
+        assertEquals(Arrays.asList(first, second, fourth), index.findByIdPrefix("abcd"));
+
+        // Dropped commits aren't found anymore, before or after the index is compacted
+        BitSet keep = new BitSet();
+        keep.set(fourth.getIndex());
+        List<CommitHelper> dropped = graph.retain(keep);
+        assertEquals(Collections.singletonList(fourth), index.search("add", 10));
+        index.removed(dropped);
+        assertEquals(Collections.singletonList(fourth), index.search("add", 10));
+        assertEquals(Collections.singletonList(fourth), index.findByIdPrefix("abcd"));
+        assertFalse(index.isMissingText());
+    }
+
+    @Test
+    public void testRepoHelperSearch() throws Exception {
+        Path repoPath = directoryPath.resolve("repo");
+        Git git = Git.init().setDirectory(repoPath.toFile()).call();
+        RevCommit first = git.commit().setMessage("Add the readme").call();
+        RevCommit second = git.commit().setMessage("Fix a typo").call();
+        new ExistingRepoHelper(repoPath).closeRepo();
+
+        // Reopened from the commit graph cache, so the text is read in the background
+        ExistingRepoHelper helper = new ExistingRepoHelper(repoPath);
+        assertEquals(second.getName(), helper.getCommit(second.getName().substring(0, 10)).getName());
+        helper.searchCommits("readme", 10);
+        for (int i = 0; i < 100 && helper.searchCommits("readme", 10).isEmpty(); i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(Collections.singletonList(helper.getCommit(first.getId())), helper.searchCommits("readme", 10));
+        assertEquals(Collections.singletonList(helper.getCommit(second.getId())),
+                     helper.searchCommits(second.getName().substring(0, 7) + " typo", 10));
+        helper.closeRepo();
+
+        git.close();
+    }
+}
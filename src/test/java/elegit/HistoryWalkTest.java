@@ -0,0 +1,76 @@
+package elegit;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a HistoryWalk hands out a commit graph newest first, a page at a time
+ */
+public class HistoryWalkTest {
+    Path logPath;
+    CommitGraph graph;
+
+    @Before
+    public void setUp() throws Exception {
+        this.logPath = Files.createTempDirectory("elegitLogs");
+        this.logPath.toFile().deleteOnExit();
+        System.setProperty("logFolder", logPath.toString());
+        this.graph = new CommitGraph(new RepoHelper(logPath));
+    }
+
+    private CommitHelper add(int n, long time, int... parents) {
+        return graph.add(ObjectId.fromString(String.format("%040x", n)), time, parents);
+    }
+
+    @Test
+    public void testPages() throws Exception {
+        // 0 <- 1 <- 3 <- 4
+        //   <- 2 <-/
+        // where 2 claims to be newer than the merge that brought it in
+        CommitHelper root = add(0, 0);
+        CommitHelper left = add(1, 1000, 0);
+        CommitHelper right = add(2, 5000, 0);
+        CommitHelper merge = add(3, 3000, 1, 2);
+        CommitHelper tip = add(4, 4000, 3);
+        // An old branch that nothing was built on
+        CommitHelper old = add(5, 500, 0);
+
+        HistoryWalk walk = new HistoryWalk(graph);
+        assertEquals(Arrays.asList(tip, merge), walk.next(2));
+        assertEquals(Arrays.asList(right, left, old), walk.next(3));
+        assertFalse(walk.isDone());
+        assertEquals(Arrays.asList(root), walk.next(3));
+        assertTrue(walk.isDone());
+        assertTrue(walk.next(3).isEmpty());
+    }
+
+    @Test
+    public void testStale() throws Exception {
+        CommitHelper root = add(0, 0);
+        add(1, 1000, 0);
+
+        HistoryWalk walk = new HistoryWalk(graph);
+        walk.next(1);
+        assertFalse(walk.isStale());
+
+        CommitHelper tip = add(2, 2000, 0);
+        assertTrue(walk.isStale());
+
+        // A new walk starts from the new commits
+        List<CommitHelper> all = new ArrayList<>();
+        walk = new HistoryWalk(graph);
+        while (!walk.isDone()) all.addAll(walk.next(2));
+        assertEquals(3, all.size());
+        assertSame(tip, all.get(0));
+        assertSame(root, all.get(2));
+    }
+}
@@ -0,0 +1,89 @@
+package elegit;
+
+import org.eclipse.jgit.api.Git;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that ignore rules only apply below their .gitignore, and that an edit to one
+ * .gitignore only has the directories below it matched again
+ */
+public class IgnoreRuleCacheTest {
+    private Path directoryPath;
+    Path logPath;
+
+    @Before
+    public void setUp() throws Exception {
+        this.logPath = Files.createTempDirectory("elegitLogs");
+        this.logPath.toFile().deleteOnExit();
+        System.setProperty("logFolder", logPath.toString());
+        this.directoryPath = Files.createTempDirectory("unitTestRepos");
+        this.directoryPath.toFile().deleteOnExit();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        removeAllFilesFromDirectory(this.logPath.toFile());
+        removeAllFilesFromDirectory(this.directoryPath.toFile());
+    }
+
+    void removeAllFilesFromDirectory(File dir) {
+        for (File file: dir.listFiles()) {
+            if (file.isDirectory()) removeAllFilesFromDirectory(file);
+            file.delete();
+        }
+    }
+
+    private void write(Path file, String text) throws Exception {
+        Files.createDirectories(file.getParent());
+        Files.write(file, text.getBytes());
+    }
+
+    @Test
+    public void testScopedRulesAndInvalidation() throws Exception {
+        Path repoPath = directoryPath.resolve("repo");
+        Git git = Git.init().setDirectory(repoPath.toFile()).call();
+        for (String path : Arrays.asList("a.log", "readme.txt", "sub/b.log", "sub/notes.txt", "sub/deep/c.txt",
+                                         "other/d.txt", "build/out.class")) {
+            write(repoPath.resolve(path), path);
+        }
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage("Add files").call();
+
+        write(repoPath.resolve(".gitignore"), "*.log\nbuild/\n");
+        write(repoPath.resolve("sub/.gitignore"), "*.txt\n");
+
+        ExistingRepoHelper helper = new ExistingRepoHelper(repoPath);
+        IgnoreRuleCache cache = helper.getIgnoreRules();
+
+        // The rules in sub/ don't reach other/ or the root
+        assertEquals(new HashSet<>(Arrays.asList("a.log", "build", "build/out.class", "sub/b.log", "sub/notes.txt",
+                                                 "sub/deep/c.txt")),
+                     helper.getTrackedIgnoredFiles());
+        long matched = cache.getDirectoriesMatched();
+        assertEquals(5, matched);
+
+        // Nothing changed, so nothing is matched again
+        assertEquals(6, helper.getTrackedIgnoredFiles().size());
+        assertEquals(matched, cache.getDirectoriesMatched());
+
+        // Only sub/ and the directory below it are matched again after sub/.gitignore changes
+        write(repoPath.resolve("sub/.gitignore"), "*.txt\n!notes.txt\n");
+        helper.invalidateIgnoreRules(repoPath.resolve("sub/.gitignore"));
+        assertEquals(new HashSet<>(Arrays.asList("a.log", "build", "build/out.class", "sub/b.log", "sub/deep/c.txt")),
+                     helper.getTrackedIgnoredFiles());
+        assertEquals(matched + 2, cache.getDirectoriesMatched());
+
+        helper.closeRepo();
+        git.close();
+    }
+}
@@ -0,0 +1,142 @@
+package elegit;
+
+import elegit.treefx.Cell;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that RepoHelper.updateModel only walks what changed, and prunes commits
+ * that are no longer reachable
+ */
+public class IncrementalUpdateTest {
+    private Path directoryPath;
+    Path logPath;
+
+    @Before
+    public void setUp() throws Exception {
+        initializeLogger();
+        this.directoryPath = Files.createTempDirectory("unitTestRepos");
+        directoryPath.toFile().deleteOnExit();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        removeAllFilesFromDirectory(this.logPath.toFile());
+        removeAllFilesFromDirectory(this.directoryPath.toFile());
+    }
+
+    // Helper method to avoid annoying traces from logger
+    void initializeLogger() {
+        // Create a temp directory for the files to be placed in
+        try {
+            this.logPath = Files.createTempDirectory("elegitLogs");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        this.logPath.toFile().deleteOnExit();
+        System.setProperty("logFolder", logPath.toString());
+    }
+
+    // Helper tear-down method:
+    void removeAllFilesFromDirectory(File dir) {
+        for (File file: dir.listFiles()) {
+            if (file.isDirectory()) removeAllFilesFromDirectory(file);
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testIncrementalUpdate() throws Exception {
+        Path repoPath = directoryPath.resolve("repo");
+        Git git = Git.init().setDirectory(repoPath.toFile()).call();
+        RevCommit first = git.commit().setMessage("first").call();
+        RevCommit second = git.commit().setMessage("second").call();
+
+        ExistingRepoHelper helper = new ExistingRepoHelper(repoPath);
+        assertEquals(2, helper.getLocalCommits().size());
+        assertEquals(0, helper.getRemoteCommits().size());
+
+        // Nothing moved, so the commit lists should be left alone
+        List<CommitHelper> before = helper.getLocalCommits();
+        helper.updateModel();
+        assertSame(before, helper.getLocalCommits());
+
+        // New commits get wrapped and linked to the ones already known
+        RevCommit third = git.commit().setMessage("third").call();
+        git.branchCreate().setName("side").call();
+        RevCommit fourth = git.commit().setMessage("fourth").call();
+        helper.updateModel();
+        assertEquals(4, helper.getLocalCommits().size());
+        CommitHelper thirdHelper = helper.getCommit(third.getId());
+        assertNotNull(thirdHelper);
+        assertEquals(helper.getCommit(second.getId()), thirdHelper.getParents().get(0));
+        assertTrue(thirdHelper.getChildren().contains(helper.getCommit(fourth.getId())));
+
+        // Parents come before their children
+        assertEquals(helper.getCommit(first.getId()), helper.getLocalCommits().get(0));
+
+        // Rewinding master keeps 'third' alive through 'side', but drops 'fourth'
+        git.reset().setMode(ResetCommand.ResetType.HARD).setRef(second.getName()).call();
+        helper.updateModel();
+        assertEquals(3, helper.getLocalCommits().size());
+        assertNull(helper.getCommit(fourth.getId()));
+        assertTrue(thirdHelper.getChildren().isEmpty());
+
+        // Deleting the branch drops 'third' as well
+        git.branchDelete().setBranchNames("side").setForce(true).call();
+        helper.updateModel();
+        assertEquals(2, helper.getLocalCommits().size());
+        assertNull(helper.getCommit(third.getId()));
+
+        git.close();
+        helper.closeRepo();
+    }
+
+    @Test
+    public void testCommitTypes() throws Exception {
+        Path repoPath = directoryPath.resolve("repo");
+        Git git = Git.init().setDirectory(repoPath.toFile()).call();
+        RevCommit first = git.commit().setMessage("first").call();
+        RevCommit second = git.commit().setMessage("second").call();
+
+        // A remote branch on 'first', as if 'second' hadn't been pushed yet
+        RefUpdate remoteUpdate = git.getRepository().updateRef("refs/remotes/origin/master");
+        remoteUpdate.setNewObjectId(first);
+        remoteUpdate.forceUpdate();
+
+        ExistingRepoHelper helper = new ExistingRepoHelper(repoPath);
+        CommitHelper firstHelper = helper.getCommit(first.getId());
+        CommitHelper secondHelper = helper.getCommit(second.getId());
+        assertEquals(Cell.CellType.BOTH, helper.getCommitType(firstHelper));
+        assertEquals(Cell.CellType.LOCAL, helper.getCommitType(secondHelper));
+
+        // After a push, 'second' is on both
+        remoteUpdate = git.getRepository().updateRef("refs/remotes/origin/master");
+        remoteUpdate.setNewObjectId(second);
+        remoteUpdate.forceUpdate();
+        helper.updateModel();
+        assertEquals(Cell.CellType.BOTH, helper.getCommitType(secondHelper));
+
+        // Rewinding master leaves 'second' only on the remote
+        git.reset().setMode(ResetCommand.ResetType.HARD).setRef(first.getName()).call();
+        helper.updateModel();
+        assertEquals(Cell.CellType.BOTH, helper.getCommitType(firstHelper));
+        assertEquals(Cell.CellType.REMOTE, helper.getCommitType(secondHelper));
+
+        git.close();
+        helper.closeRepo();
+    }
+}
@@ -0,0 +1,115 @@
+package elegit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that readers and walks are handed out to one lease at a time and reused afterwards
+ */
+public class ObjectAccessPoolTest {
+    private Path directoryPath;
+    Path logPath;
+
+    @Before
+    public void setUp() throws Exception {
+        this.logPath = Files.createTempDirectory("elegitLogs");
+        this.logPath.toFile().deleteOnExit();
+        System.setProperty("logFolder", logPath.toString());
+        this.directoryPath = Files.createTempDirectory("unitTestRepos");
+        this.directoryPath.toFile().deleteOnExit();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        removeAllFilesFromDirectory(this.logPath.toFile());
+        removeAllFilesFromDirectory(this.directoryPath.toFile());
+    }
+
+    void removeAllFilesFromDirectory(File dir) {
+        for (File file: dir.listFiles()) {
+            if (file.isDirectory()) removeAllFilesFromDirectory(file);
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        Path repoPath = directoryPath.resolve("repo");
+        Git git = Git.init().setDirectory(repoPath.toFile()).call();
+        RevCommit first = git.commit().setMessage("first").call();
+        RevCommit second = git.commit().setMessage("second").call();
+        ObjectAccessPool pool = new ObjectAccessPool(git.getRepository());
+
+        ObjectReader reader;
+        RevWalk walk;
+        try (ObjectAccessPool.Lease lease = pool.borrow()) {
+            reader = lease.getReader();
+            walk = lease.getWalk();
+            assertEquals("first", walk.parseCommit(first).getFullMessage());
+
+            // Leases that overlap never share a reader
+            try (ObjectAccessPool.Lease other = pool.borrow()) {
+                assertNotSame(reader, other.getReader());
+            }
+        }
+        assertEquals(2, pool.getReadersCreated());
+        assertEquals(1, pool.getWalksCreated());
+
+        // Later leases get the same reader and walk back
+        try (ObjectAccessPool.Lease lease = pool.borrow()) {
+            assertSame(reader, lease.getReader());
+            assertSame(walk, lease.getWalk());
+            assertEquals("second", lease.getWalk().parseCommit(second).getFullMessage());
+        }
+        assertEquals(2, pool.getReadersCreated());
+        assertEquals(1, pool.getReadersReused());
+        assertEquals(1, pool.getWalksReused());
+
+        // Walks that need a clean start don't touch the shared one
+        try (ObjectAccessPool.Lease lease = pool.borrow(); RevWalk w = lease.newWalk()) {
+            w.markStart(w.parseCommit(second));
+            assertEquals(second, w.next());
+            assertEquals(first, w.next());
+            assertSame(walk, lease.getWalk());
+        }
+        assertEquals(2, pool.getWalksCreated());
+
+        pool.close();
+        git.close();
+    }
+
+    @Test
+    public void testRepoHelperParsesThroughPool() throws Exception {
+        Path repoPath = directoryPath.resolve("repo");
+        Git git = Git.init().setDirectory(repoPath.toFile()).call();
+        RevCommit first = git.commit().setMessage("first").call();
+
+        ExistingRepoHelper helper = new ExistingRepoHelper(repoPath);
+        ObjectAccessPool pool = helper.getObjectAccess();
+        long created = pool.getReadersCreated();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(first, helper.parseRawCommit(first));
+        }
+        // Parsing one commit after another doesn't open a reader each time
+        assertEquals(created, pool.getReadersCreated());
+        assertTrue(pool.getReadersReused() >= 3);
+        // Each commit handed out belongs to a walk of its own, not to the walk shared by the leases
+        RevCommit parsed = helper.parseRawCommit(first);
+        assertNotSame(parsed, helper.parseRawCommit(first));
+        assertEquals("first", parsed.getFullMessage());
+        helper.closeRepo();
+
+        git.close();
+    }
+}
@@ -0,0 +1,94 @@
+package elegit;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that recent repositories aren't built until they are asked for
+ */
+public class RecentRepoTest {
+    private Path directoryPath;
+    Path logPath;
+
+    @Before
+    public void setUp() throws Exception {
+        this.logPath = Files.createTempDirectory("elegitLogs");
+        this.logPath.toFile().deleteOnExit();
+        System.setProperty("logFolder", logPath.toString());
+        this.directoryPath = Files.createTempDirectory("unitTestRepos");
+        this.directoryPath.toFile().deleteOnExit();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        removeAllFilesFromDirectory(this.logPath.toFile());
+        removeAllFilesFromDirectory(this.directoryPath.toFile());
+    }
+
+    void removeAllFilesFromDirectory(File dir) {
+        for (File file: dir.listFiles()) {
+            if (file.isDirectory()) removeAllFilesFromDirectory(file);
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testLazyRepoHelper() throws Exception {
+        Path repoPath = directoryPath.resolve("repo");
+        Git git = Git.init().setDirectory(repoPath.toFile()).call();
+        git.commit().setMessage("first").call();
+
+        RecentRepo recentRepo = new RecentRepo(repoPath, "side");
+        assertTrue(recentRepo.exists());
+        assertFalse(recentRepo.isLoaded());
+        assertEquals("repo", recentRepo.toString());
+        assertEquals("side", recentRepo.getLastHead());
+
+        RepoHelper repoHelper = recentRepo.getRepoHelper();
+        assertTrue(recentRepo.isLoaded());
+        assertSame(repoHelper, recentRepo.getRepoHelper());
+        RepoHelper otherRepoHelper = new ExistingRepoHelper(repoPath);
+        assertSame(repoHelper, recentRepo.adoptRepoHelper(otherRepoHelper));
+        otherRepoHelper.closeRepo();
+        assertEquals("master", recentRepo.getLastHead());
+        repoHelper.closeRepo();
+
+        assertFalse(new RecentRepo(directoryPath.resolve("moved"), null).exists());
+        git.close();
+    }
+
+    @Test
+    public void testEvictAndReload() throws Exception {
+        Path repoPath = directoryPath.resolve("repo");
+        Git git = Git.init().setDirectory(repoPath.toFile()).call();
+        RevCommit first = git.commit().setMessage("first").call();
+
+        RecentRepo recentRepo = new RecentRepo(repoPath, null);
+        RepoHelper repoHelper = recentRepo.getRepoHelper();
+        assertTrue(recentRepo.getEstimatedHeapSize() > 0);
+
+        assertTrue(recentRepo.evict());
+        assertFalse(recentRepo.isLoaded());
+        assertEquals(0, recentRepo.getEstimatedHeapSize());
+        assertEquals("master", recentRepo.getLastHead());
+        assertFalse(recentRepo.evict());
+
+        // Coming back builds a new RepoHelper from the commit graph cache
+        RepoHelper reloaded = recentRepo.getRepoHelper();
+        assertNotSame(repoHelper, reloaded);
+        assertNull(reloaded.getCommit(first.getId()).commit);
+        assertEquals("first", reloaded.getCommit(first.getId()).getMessage(false));
+        reloaded.closeRepo();
+
+        git.close();
+    }
+}
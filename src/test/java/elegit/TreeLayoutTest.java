@@ -4,6 +4,7 @@ import elegit.treefx.Cell;
 import elegit.treefx.CellShape;
 import elegit.treefx.TreeLayout;
 import javafx.application.Application;
+import org.eclipse.jgit.lib.ObjectId;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -18,6 +19,10 @@ public class TreeLayoutTest {
 
     private static ArrayList<Cell> allCells = new ArrayList<>();
 
+    private static ObjectId cellId(int n) {
+        return ObjectId.fromRaw(new int[] {0, 0, 0, 0, n});
+    }
+
     @BeforeClass
     public static void setUpJFX() throws Exception{
         // Launch the Elegit application in a thread so we get control back
@@ -47,39 +52,39 @@ public class TreeLayoutTest {
     public void setUp() {
         allCells.clear();
 
-        Cell cell4 = new Cell("cell4", 10, new ArrayList<Cell>(), Cell.CellType.LOCAL);
+        Cell cell4 = new Cell(cellId(4), 10, new ArrayList<Cell>(), Cell.CellType.LOCAL);
         allCells.add(cell4);
 
         ArrayList<Cell> cell3Parents = new ArrayList<>();
         cell3Parents.add(cell4);
-        Cell cell3 = new Cell("cell3", 20, cell3Parents, Cell.CellType.LOCAL);
+        Cell cell3 = new Cell(cellId(3), 20, cell3Parents, Cell.CellType.LOCAL);
         allCells.add(cell3);
 
         ArrayList<Cell> cell1Parents = new ArrayList<>();
         cell1Parents.add(cell3);
-        Cell cell1 = new Cell("cell1", 30, cell1Parents, Cell.CellType.LOCAL);
+        Cell cell1 = new Cell(cellId(1), 30, cell1Parents, Cell.CellType.LOCAL);
         allCells.add(cell1);
 
         ArrayList<Cell> cell2Parents = new ArrayList<>();
         cell2Parents.add(cell3);
-        Cell cell2 = new Cell("cell2", 40, cell2Parents, Cell.CellType.LOCAL);
+        Cell cell2 = new Cell(cellId(2), 40, cell2Parents, Cell.CellType.LOCAL);
         allCells.add(cell2);
 
         ArrayList<Cell> cell6Parents = new ArrayList<>();
         cell6Parents.add(cell4);
-        Cell cell6 = new Cell("cell6", 50, cell6Parents, Cell.CellType.LOCAL);
+        Cell cell6 = new Cell(cellId(6), 50, cell6Parents, Cell.CellType.LOCAL);
         allCells.add(cell6);
 
         ArrayList<Cell> cell0Parents = new ArrayList<>();
         cell0Parents.add(cell1);
         cell0Parents.add(cell2);
-        Cell cell0 = new Cell("cell0", 60, cell0Parents, Cell.CellType.LOCAL);
+        Cell cell0 = new Cell(cellId(0), 60, cell0Parents, Cell.CellType.LOCAL);
         allCells.add(cell0);
 
         ArrayList<Cell> cell5Parents = new ArrayList<>();
         cell5Parents.add(cell2);
         cell5Parents.add(cell6);
-        Cell cell5 = new Cell("cell5", 70, cell5Parents, Cell.CellType.LOCAL);
+        Cell cell5 = new Cell(cellId(5), 70, cell5Parents, Cell.CellType.LOCAL);
         allCells.add(cell5);
     }
 
@@ -90,13 +95,13 @@ public class TreeLayoutTest {
             System.out.print(cell.getCellId() + " ");
         }
         System.out.println();
-        assertEquals(allCells.get(0).getCellId(),"cell5");
-        assertEquals(allCells.get(1).getCellId(),"cell0");
-        assertEquals(allCells.get(2).getCellId(),"cell6");
-        assertEquals(allCells.get(3).getCellId(),"cell2");
-        assertEquals(allCells.get(4).getCellId(),"cell1");
-        assertEquals(allCells.get(5).getCellId(),"cell3");
-        assertEquals(allCells.get(6).getCellId(),"cell4");
+        assertEquals(allCells.get(0).getCellId(),cellId(5));
+        assertEquals(allCells.get(1).getCellId(),cellId(0));
+        assertEquals(allCells.get(2).getCellId(),cellId(6));
+        assertEquals(allCells.get(3).getCellId(),cellId(2));
+        assertEquals(allCells.get(4).getCellId(),cellId(1));
+        assertEquals(allCells.get(5).getCellId(),cellId(3));
+        assertEquals(allCells.get(6).getCellId(),cellId(4));
     }
 
     @Test
@@ -106,14 +111,26 @@ public class TreeLayoutTest {
             System.out.print(cell.getCellId() + " ");
         }
         System.out.println();
-        assertEquals(allCells.get(0).getCellId(),"cell5");
-        assertEquals(allCells.get(1).getCellId(),"cell0");
-        assertEquals(allCells.get(2).getCellId(),"cell6");
-        assertEquals(allCells.get(3).getCellId(),"cell2");
-        assertEquals(allCells.get(4).getCellId(),"cell1");
-        assertEquals(allCells.get(5).getCellId(),"cell3");
-        assertEquals(allCells.get(6).getCellId(),"cell4");
+        assertEquals(allCells.get(0).getCellId(),cellId(5));
+        assertEquals(allCells.get(1).getCellId(),cellId(0));
+        assertEquals(allCells.get(2).getCellId(),cellId(6));
+        assertEquals(allCells.get(3).getCellId(),cellId(2));
+        assertEquals(allCells.get(4).getCellId(),cellId(1));
+        assertEquals(allCells.get(5).getCellId(),cellId(3));
+        assertEquals(allCells.get(6).getCellId(),cellId(4));
     }
 
-
+    @Test
+    public void testComputeColumns() throws Exception {
+        // Rows count up from the oldest: 0 <- 1 <- 3 and 0 <- 2, with 4 following 2
+        int[] columns = TreeLayout.computeColumns(new int[] {-1, 0, 0, 1, 2});
+        assertArrayEquals(new int[] {0, 1, 0, 1, 0}, columns);
+
+        // A long history is placed without recursing once per commit
+        int[] chain = new int[200000];
+        for (int row = 0; row < chain.length; row++) chain[row] = row - 1;
+        for (int column : TreeLayout.computeColumns(chain)) {
+            assertEquals(0, column);
+        }
+    }
 }
@@ -0,0 +1,129 @@
+package elegit;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that RepoHelper.wrapRawCommits turns synthetic histories into helpers with the
+ * right parents and children, and that every helper can be looked up by its id afterwards
+ */
+public class WrapRawCommitsTest {
+    private static final String EMPTY_TREE = "4b825dc642cb6eb9a060e54bf8d69288fbee4904";
+
+    Path logPath;
+
+    @Before
+    public void setUp() throws Exception {
+        this.logPath = Files.createTempDirectory("elegitLogs");
+        this.logPath.toFile().deleteOnExit();
+        System.setProperty("logFolder", logPath.toString());
+    }
+
+    /**
+     * Builds a history of the given size in memory, children before parents like the
+     * walks in RepoHelper return it. Every tenth commit merges in a side commit.
+     */
+    private List<RevCommit> buildHistory(int size) throws IOException {
+        RevWalk w = new RevWalk((ObjectReader) null);
+        List<RevCommit> commits = new ArrayList<>(size);
+        RevCommit head = null;
+        RevCommit side = null;
+        for (int i = 0; i < size; i++) {
+            List<RevCommit> parents = new ArrayList<>();
+            if (head != null) parents.add(head);
+            if (side != null && i % 10 == 0) {
+                parents.add(side);
+                side = null;
+            }
+            RevCommit commit = RevCommit.parse(w, rawCommit(parents, i));
+            commits.add(commit);
+            if (i % 10 == 5) {
+                side = commit;
+            } else {
+                head = commit;
+            }
+        }
+        Collections.reverse(commits);
+        return commits;
+    }
+
+    private byte[] rawCommit(List<RevCommit> parents, int i) {
+        StringBuilder raw = new StringBuilder();
+        raw.append("tree ").append(EMPTY_TREE).append('\n');
+        for (RevCommit parent : parents) {
+            raw.append("parent ").append(parent.getName()).append('\n');
+        }
+        raw.append("author Author <author@example.com> ").append(1400000000 + i).append(" +0000\n");
+        raw.append("committer Author <author@example.com> ").append(1400000000 + i).append(" +0000\n");
+        raw.append('\n').append("commit ").append(i).append('\n');
+        return Constants.encode(raw.toString());
+    }
+
+    @Test
+    public void testWrapLinksParentsAndChildren() throws Exception {
+        List<RevCommit> history = buildHistory(100);
+        RepoHelper helper = new RepoHelper(logPath);
+        List<CommitHelper> wrapped = helper.wrapRawCommits(history);
+
+        // Parents come out before their children
+        assertEquals(history.get(history.size() - 1).getName(), wrapped.get(0).getName());
+        for (RevCommit commit : history) {
+            CommitHelper commitHelper = helper.getCommit(commit.getId());
+            assertNotNull(commitHelper);
+            assertEquals(commit.getParentCount(), commitHelper.getParentCount());
+            for (CommitHelper parent : commitHelper.getParents()) {
+                assertTrue(parent.getChildren().contains(commitHelper));
+            }
+        }
+
+        // Wrapping again reuses the existing helpers
+        List<CommitHelper> rewrapped = helper.wrapRawCommits(history.subList(0, 10));
+        assertSame(helper.getCommit(history.get(0).getId()), rewrapped.get(9));
+        assertEquals(1, helper.getCommit(history.get(0).getId()).getParentCount());
+    }
+
+    @Test
+    public void testWrapLargeHistory() throws Exception {
+        List<RevCommit> history = buildHistory(20000);
+        RepoHelper helper = new RepoHelper(logPath);
+        List<CommitHelper> wrapped = helper.wrapRawCommits(history);
+
+        assertEquals(history.size(), wrapped.size());
+        Set<CommitHelper> wrappedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        wrappedSet.addAll(wrapped);
+        assertEquals(history.size(), wrappedSet.size());
+
+        int parentLinks = 0, childLinks = 0;
+        for (RevCommit commit : history) {
+            // Each commit is wrapped once, by the helper its id looks up
+            CommitHelper commitHelper = helper.getCommit(commit.getId());
+            assertTrue(wrappedSet.contains(commitHelper));
+
+            Set<String> parentNames = new HashSet<>();
+            for (RevCommit parent : commit.getParents()) parentNames.add(parent.getName());
+            Set<String> helperParentNames = new HashSet<>();
+            for (CommitHelper parent : commitHelper.getParents()) helperParentNames.add(parent.getName());
+            assertEquals(parentNames, helperParentNames);
+
+            parentLinks += commitHelper.getParentCount();
+            childLinks += commitHelper.getChildren().size();
+        }
+        assertEquals(parentLinks, childLinks);
+    }
+}